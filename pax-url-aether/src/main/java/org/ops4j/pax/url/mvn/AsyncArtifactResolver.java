@@ -0,0 +1,55 @@
+/*
+ * Copyright 2012 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn;
+
+import java.io.File;
+import java.util.concurrent.Future;
+
+/**
+ * Resolves maven artifacts asynchronously, using the same configuration (repositories, proxies, mirrors) and caches
+ * as the mvn: protocol handler. Resolutions run on a bounded pool of threads, so callers do not have to block their
+ * own threads on network I/O.<br/>
+ * The service is registered by the mvn: protocol handler bundle.
+ *
+ * @since 1.4.3
+ */
+public interface AsyncArtifactResolver
+{
+
+    /**
+     * Starts the resolution of an artifact. The artifact can be specified as a mvn: url or as the path part of a mvn:
+     * url (coordinates without the protocol), for example mvn:org.ops4j.pax.web/pax-web-api/0.7.2 or
+     * org.ops4j.pax.web/pax-web-api/0.7.2.
+     *
+     * @param url mvn: url or coordinates of the artifact to resolve; cannot be null
+     *
+     * @return pending resolution; fails with an IOException if the artifact cannot be resolved
+     */
+    Future<File> resolve( String url );
+
+    /**
+     * Starts the resolution of an artifact and notifies the listener once it completes (successfully or not).
+     *
+     * @param url      mvn: url or coordinates of the artifact to resolve; cannot be null
+     * @param listener notified of the result, on a resolver thread; can be null
+     *
+     * @return pending resolution; fails with an IOException if the artifact cannot be resolved
+     */
+    Future<File> resolve( String url, ResolutionListener listener );
+
+}
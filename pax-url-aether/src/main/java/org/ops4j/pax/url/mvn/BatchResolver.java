@@ -0,0 +1,60 @@
+/*
+ * Copyright 2012 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Resolves many maven artifacts at once. Artifacts are resolved concurrently, using the same configuration
+ * (repositories, proxies, mirrors) as the mvn: protocol handler.<br/>
+ * The service is registered by the mvn: protocol handler bundle.
+ *
+ * @since 1.4.3
+ */
+public interface BatchResolver
+{
+
+    /**
+     * Resolves the given artifacts. Each artifact can be specified as a mvn: url or as the path part of a mvn: url
+     * (coordinates without the protocol), for example mvn:org.ops4j.pax.web/pax-web-api/0.7.2 or
+     * org.ops4j.pax.web/pax-web-api/0.7.2.
+     * An artifact that cannot be resolved does not fail the whole batch; its error is reported in its result.
+     *
+     * @param urls mvn: urls or coordinates of the artifacts to resolve; cannot be null
+     *
+     * @return one result per requested artifact, in the same order as requested
+     */
+    List<ResolutionResult> resolve( Collection<String> urls );
+
+    /**
+     * Resolves an artifact and its transitive dependencies. The dependency graph is collected first (versions and
+     * conflicts are resolved as by Maven), then all artifacts of the graph are resolved concurrently.
+     * An artifact that cannot be resolved does not fail the others; its error is reported in its result.
+     *
+     * @param url   mvn: url or coordinates of the artifact; cannot be null. If it names a repository, the graph is
+     *              collected from, and its artifacts resolved from, that repository
+     * @param scope dependencies to include: compile (compile scope), runtime (compile and runtime scopes) or test
+     *              (compile, runtime, provided and test scopes)
+     *
+     * @return one result per artifact of the dependency graph, the requested artifact first. If the graph cannot be
+     *         collected, a single failed result for the requested artifact
+     */
+    List<ResolutionResult> resolveTransitively( String url, String scope );
+
+}
@@ -22,13 +22,11 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLStreamHandler;
 
-import org.ops4j.pax.url.maven.commons.MavenConfigurationImpl;
-import org.ops4j.pax.url.maven.commons.MavenSettingsImpl;
-import org.ops4j.pax.url.mvn.internal.Connection;
-import org.ops4j.util.property.PropertiesPropertyResolver;
+import org.ops4j.pax.url.mvn.internal.StandaloneConnections;
 
 /**
  * {@link URLStreamHandler} implementation for "mvn:" protocol.
+ * Connections share one resolver, configured out of the system properties.
  *
  * @author Alin Dreghiciu (adreghiciu@gmail.com)
  * @author Toni Menzel (adreghiciu@gmail.com)
@@ -46,12 +44,7 @@ public class Handler
     protected URLConnection openConnection( final URL url )
         throws IOException
     {
-        final MavenConfigurationImpl config = new MavenConfigurationImpl(
-            new PropertiesPropertyResolver( System.getProperties() ), ServiceConstants.PID
-        );
-        
-        config.setSettings( new MavenSettingsImpl( config.getSettingsFileUrl(), config.useFallbackRepositories() ) );
-        return new Connection( url, config );
+        return StandaloneConnections.open( url );
     }
 
 }
\ No newline at end of file
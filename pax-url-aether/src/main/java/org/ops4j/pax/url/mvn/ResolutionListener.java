@@ -0,0 +1,38 @@
+/*
+ * Copyright 2012 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn;
+
+/**
+ * Notified when an asynchronous resolution completes.
+ *
+ * @see AsyncArtifactResolver
+ * @since 1.4.3
+ */
+public interface ResolutionListener
+{
+
+    /**
+     * Called once the resolution of an artifact completed. Called on a resolver thread, so it should not block.
+     * Not called if the resolution was cancelled by the caller. Resolutions cancelled because the resolver stopped
+     * are reported as failed, from the stopping thread.
+     *
+     * @param result resolution result
+     */
+    void resolutionCompleted( ResolutionResult result );
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2012 OPS4J.
+ *
+ * Licensed  under the  Apache License,  Version 2.0  (the "License");
+ * you may not use  this file  except in  compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed  under the  License is distributed on an "AS IS" BASIS,
+ * WITHOUT  WARRANTIES OR CONDITIONS  OF ANY KIND, either  express  or
+ * implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Result of resolving one artifact. Either holds the resolved file or the reason the artifact could not be resolved.
+ *
+ * @since 1.4.3
+ */
+public class ResolutionResult
+{
+
+    /**
+     * Requested url / coordinates.
+     */
+    private final String m_url;
+    /**
+     * Resolved file. Null if resolution failed.
+     */
+    private final File m_file;
+    /**
+     * Resolution error. Null if resolution succeeded.
+     */
+    private final IOException m_exception;
+
+    /**
+     * Creates a new result.
+     *
+     * @param url       requested url / coordinates
+     * @param file      resolved file or null if the artifact could not be resolved
+     * @param exception resolution error or null if the artifact was resolved
+     */
+    public ResolutionResult( final String url, final File file, final IOException exception )
+    {
+        m_url = url;
+        m_file = file;
+        m_exception = exception;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return requested url / coordinates
+     */
+    public String getUrl()
+    {
+        return m_url;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return resolved file; null if the artifact could not be resolved
+     */
+    public File getFile()
+    {
+        return m_file;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return resolution error; null if the artifact was resolved
+     */
+    public IOException getException()
+    {
+        return m_exception;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return true if the artifact was resolved
+     */
+    public boolean isResolved()
+    {
+        return m_file != null;
+    }
+
+    @Override
+    public String toString()
+    {
+        return new StringBuilder()
+            .append( m_url )
+            .append( isResolved() ? " -> " + m_file : " failed: " + m_exception )
+            .toString();
+    }
+
+}
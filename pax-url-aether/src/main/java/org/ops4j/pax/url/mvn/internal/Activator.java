@@ -20,12 +20,21 @@ package org.ops4j.pax.url.mvn.internal;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.concurrent.atomic.AtomicReference;
+import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
 import org.ops4j.pax.url.commons.handler.ConnectionFactory;
 import org.ops4j.pax.url.commons.handler.HandlerActivator;
 import org.ops4j.pax.url.maven.commons.MavenConfiguration;
 import org.ops4j.pax.url.maven.commons.MavenConfigurationImpl;
-import org.ops4j.pax.url.maven.commons.MavenSettingsImpl;
+import org.ops4j.pax.url.maven.commons.MavenConfigurationSnapshot;
+import org.ops4j.pax.url.maven.commons.MavenConstants;
+import org.ops4j.pax.url.maven.commons.SettingsChange;
+import org.ops4j.pax.url.maven.commons.SettingsListener;
+import org.ops4j.pax.url.maven.commons.SettingsWatcher;
+import org.ops4j.pax.url.mvn.AsyncArtifactResolver;
+import org.ops4j.pax.url.mvn.BatchResolver;
 import org.ops4j.pax.url.mvn.ServiceConstants;
 import org.ops4j.util.property.PropertyResolver;
 
@@ -33,15 +42,42 @@ import org.ops4j.util.property.PropertyResolver;
  * Bundle activator for mvn: protocol handler
  */
 public final class Activator
-    extends HandlerActivator<MavenConfiguration>
+    implements BundleActivator
 {
 
+    /**
+     * Delegate.
+     */
+    private HandlerActivator<MavenConfiguration> m_activatorDelegate;
+    /**
+     * Resolver shared by connections and services. Rebuilt only when a new configuration is pushed.
+     */
+    private final ResolverHolder m_resolverHolder;
+    /**
+     * Asynchronous resolver service. Valid only after start method has been called. Its number of threads follows
+     * the configuration.
+     */
+    private volatile AsyncArtifactResolverImpl m_asyncResolver;
+    /**
+     * Asynchronous resolver service registration. Used for cleanup.
+     */
+    private ServiceRegistration m_asyncResolverReg;
+    /**
+     * Batch resolver service registration. Used for cleanup.
+     */
+    private ServiceRegistration m_batchResolverReg;
+    /**
+     * Watcher of the settings of the current configuration. Null if not configured.
+     */
+    private SettingsWatcher m_settingsWatcher;
+
     /**
      * @see HandlerActivator#HandlerActivator(String[], String, org.ops4j.pax.url.commons.handler.ConnectionFactory)
      */
     public Activator()
     {
-        super(
+        m_resolverHolder = new ResolverHolder();
+        m_activatorDelegate = new HandlerActivator<MavenConfiguration>(
             new String[]{ ServiceConstants.PROTOCOL },
             ServiceConstants.PID,
             new ConnectionFactory<MavenConfiguration>()
@@ -55,7 +91,7 @@ public final class Activator
                                                       final MavenConfiguration config )
                     throws MalformedURLException
                 {
-                    return new Connection( url, config );
+                    return new Connection( url, m_resolverHolder );
                 }
 
                 /**
@@ -67,12 +103,38 @@ public final class Activator
                         new MavenConfigurationImpl( propertyResolver, ServiceConstants.PID );
                     if (!config.isValid())
                     {
+                        watchSettings( null, 0 );
+                        m_resolverHolder.setConfiguration( null );
                         return null;
                     }
-                    config.setSettings(
-                        new MavenSettingsImpl( config.getSettingsFileUrl(), config.useFallbackRepositories() )
+                    // the snapshot connections share is built from the settings the watcher reads first
+                    final AtomicReference<MavenConfiguration> origin = new AtomicReference<MavenConfiguration>();
+                    final SettingsWatcher watcher = new SettingsWatcher(
+                        config.getSettingsFileUrl(), config.useFallbackRepositories(), new SettingsListener()
+                        {
+
+                            public void settingsChanged( final SettingsChange change )
+                            {
+                                config.setSettings( change.getSettings() );
+                                m_resolverHolder.settingsChanged(
+                                    origin.get(), new MavenConfigurationSnapshot( config ), change
+                                );
+                            }
+
+                        }
                     );
-                    return config;
+                    config.setSettings( watcher.getSettings() );
+                    // connections share an immutable copy, replaced by a new one when the settings change
+                    final MavenConfigurationSnapshot snapshot = new MavenConfigurationSnapshot( config );
+                    origin.set( snapshot );
+                    m_resolverHolder.setConfiguration( snapshot );
+                    final AsyncArtifactResolverImpl asyncResolver = m_asyncResolver;
+                    if( asyncResolver != null )
+                    {
+                        asyncResolver.setThreads( snapshot.getResolverThreads() );
+                    }
+                    watchSettings( watcher, snapshot.getSettingsCheckInterval() );
+                    return snapshot;
                 }
 
 
@@ -80,4 +142,79 @@ public final class Activator
         );
     }
 
-}
\ No newline at end of file
+    /**
+     * Delegates to HandlerActivator and registers the resolver services.
+     *
+     * @see org.osgi.framework.BundleActivator#start(BundleContext)
+     */
+    public void start( final BundleContext bundleContext )
+        throws Exception
+    {
+        m_activatorDelegate.start( bundleContext );
+        final MavenConfiguration config = m_resolverHolder.getConfiguration();
+        m_asyncResolver = new AsyncArtifactResolverImpl(
+            m_resolverHolder,
+            config == null
+            ? MavenConstants.PROPERTY_RESOLVER_THREADS_DEFAULT
+            : AetherBasedResolver.getResolverConfiguration( config ).getResolverThreads()
+        );
+        if( config != null )
+        {
+            m_asyncResolver.warmUp();
+        }
+        m_asyncResolverReg = bundleContext.registerService(
+            AsyncArtifactResolver.class.getName(), m_asyncResolver, null
+        );
+        m_batchResolverReg = bundleContext.registerService(
+            BatchResolver.class.getName(), new BatchResolverImpl( m_asyncResolver ), null
+        );
+    }
+
+    /**
+     * Unregisters the resolver services and delegates to HandlerActivator.
+     *
+     * @see org.osgi.framework.BundleActivator#stop(BundleContext)
+     */
+    public void stop( final BundleContext bundleContext )
+        throws Exception
+    {
+        if( m_batchResolverReg != null )
+        {
+            m_batchResolverReg.unregister();
+            m_batchResolverReg = null;
+        }
+        if( m_asyncResolverReg != null )
+        {
+            m_asyncResolverReg.unregister();
+            m_asyncResolverReg = null;
+        }
+        if( m_asyncResolver != null )
+        {
+            m_asyncResolver.shutdown();
+            m_asyncResolver = null;
+        }
+        m_activatorDelegate.stop( bundleContext );
+        watchSettings( null, 0 );
+        m_resolverHolder.close();
+    }
+
+    /**
+     * Replaces the watcher of the settings of the current configuration.
+     *
+     * @param watcher  new watcher; null to stop watching
+     * @param interval interval between checks in milliseconds
+     */
+    private synchronized void watchSettings( final SettingsWatcher watcher, final long interval )
+    {
+        if( m_settingsWatcher != null )
+        {
+            m_settingsWatcher.stop();
+        }
+        m_settingsWatcher = watcher;
+        if( watcher != null )
+        {
+            watcher.start( interval );
+        }
+    }
+
+}
@@ -24,20 +24,35 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.maven.repository.internal.MavenRepositorySystemSession;
 import org.apache.maven.repository.internal.MavenServiceLocator;
 import org.ops4j.pax.url.maven.commons.MavenConfiguration;
+import org.ops4j.pax.url.maven.commons.MavenConfigurationSnapshot;
 import org.ops4j.pax.url.maven.commons.MavenRepositoryURL;
+import org.ops4j.pax.url.maven.commons.ResolverConfiguration;
+import org.ops4j.pax.url.maven.commons.SettingsChange;
 import org.slf4j.LoggerFactory;
 import org.sonatype.aether.RepositoryException;
 import org.sonatype.aether.RepositorySystem;
 import org.sonatype.aether.RepositorySystemSession;
 import org.sonatype.aether.artifact.Artifact;
+import org.sonatype.aether.collection.CollectRequest;
 import org.sonatype.aether.connector.wagon.WagonProvider;
 import org.sonatype.aether.connector.wagon.WagonRepositoryConnectorFactory;
+import org.sonatype.aether.graph.Dependency;
+import org.sonatype.aether.graph.DependencyNode;
 import org.sonatype.aether.impl.internal.SimpleLocalRepositoryManagerFactory;
 import org.sonatype.aether.repository.Authentication;
 import org.sonatype.aether.repository.LocalRepository;
@@ -45,31 +60,105 @@ import org.sonatype.aether.repository.MirrorSelector;
 import org.sonatype.aether.repository.Proxy;
 import org.sonatype.aether.repository.ProxySelector;
 import org.sonatype.aether.repository.RemoteRepository;
+import org.sonatype.aether.repository.RepositoryPolicy;
 import org.sonatype.aether.resolution.ArtifactRequest;
+import org.sonatype.aether.resolution.ArtifactResolutionException;
+import org.sonatype.aether.resolution.ArtifactResult;
 import org.sonatype.aether.resolution.VersionRangeRequest;
 import org.sonatype.aether.resolution.VersionRangeResolutionException;
 import org.sonatype.aether.resolution.VersionRangeResult;
 import org.sonatype.aether.spi.connector.RepositoryConnectorFactory;
 import org.sonatype.aether.spi.localrepo.LocalRepositoryManagerFactory;
 import org.sonatype.aether.spi.log.Logger;
+import org.sonatype.aether.util.DefaultRepositorySystemSession;
+import org.sonatype.aether.util.DefaultSessionData;
 import org.sonatype.aether.util.artifact.DefaultArtifact;
+import org.sonatype.aether.util.artifact.JavaScopes;
 import org.sonatype.aether.util.repository.DefaultMirrorSelector;
 import org.sonatype.aether.util.repository.DefaultProxySelector;
 import org.sonatype.aether.version.Version;
 
 /**
- * Aether based, drop in replacement for mvn protocol
+ * Aether based, drop in replacement for mvn protocol.
+ * Instances are thread safe and are meant to be shared by all connections using the same configuration.
  */
 public class AetherBasedResolver {
 
     private static final org.slf4j.Logger LOG = LoggerFactory.getLogger( AetherBasedResolver.class );
     private static final String LATEST_VERSION_RANGE = "(0.0,]";
     private static final String REPO_TYPE = "default";
+    /**
+     * Maximum number of repositories named by mvn: urls kept with the proxy and mirror rules applied.
+     */
+    private static final int MAX_EXPLICIT_REPOSITORIES = 64;
 
+    final private RepositoryHealth m_health;
+    final private ManualWagonProvider m_wagonProvider;
     final private RepositorySystem m_repoSystem;
-    final private MavenConfiguration m_config;
-    final private MirrorSelector m_mirrorSelector;
-    final private ProxySelector m_proxySelector;
+    /**
+     * Configuration. Replaced by one with the new settings when the settings change.
+     */
+    private volatile MavenConfiguration m_config;
+    /**
+     * Mirrors and proxies of the settings. Replaced when the settings change.
+     */
+    private volatile MirrorSelector m_mirrorSelector;
+    private volatile ProxySelector m_proxySelector;
+    final private ArtifactCache m_cache;
+    final private NegativeCache m_negativeCache;
+    final private RepositoryRoutes m_routes;
+    final private InFlightResolutions m_inFlight;
+    final private ArtifactLocks m_locks;
+    final private LocalRepositoryIndex m_index;
+    final private VersionCache m_versions;
+    /**
+     * True if remote repositories must not be accessed.
+     */
+    final private boolean m_offline;
+    /**
+     * True if released artifacts found in the local repository are used without setting up remote access.
+     */
+    final private boolean m_localFirst;
+    /**
+     * Expanded @multi directories, by directory.
+     */
+    final private ConcurrentMap<File, MultiRepositoryDirectory> m_multiDirs;
+    /**
+     * Repositories named explicitly by mvn: urls (with proxies and mirrors applied), by repository url. Access
+     * ordered and bounded, as the urls come from callers. Guarded by this, like the selectors they are built with.
+     */
+    final private Map<String, List<RemoteRepository>> m_explicitRepos;
+    /**
+     * Executor resolving artifacts streamed to the caller. Null if streaming is disabled.
+     */
+    final private ExecutorService m_streamingExecutor;
+    /**
+     * Template of the sessions of the resolutions: each resolution copies it, sharing its local repository manager and
+     * selectors. Replaced when mirrors or proxies change.
+     */
+    private volatile RepositorySystemSession m_session;
+    /**
+     * Repositories, proxies and mirrors of the configuration. Built on first use.
+     */
+    private volatile RepositoryTopology m_topology;
+    /**
+     * Last time repositories or mirrors of the settings changed. Versions journaled before were resolved from other
+     * repositories.
+     */
+    private volatile long m_repositoriesChanged;
+    /**
+     * Number of resolutions in progress. Guarded by m_lifecycle.
+     */
+    private int m_active;
+    /**
+     * True if the resolver is closed once no resolution is in progress. Guarded by m_lifecycle.
+     */
+    private boolean m_retired;
+    /**
+     * True if the resolver is closed. Guarded by m_lifecycle.
+     */
+    private boolean m_closed;
+    private final Object m_lifecycle = new Object();
 
     /**
      * Create a AetherBasedResolver
@@ -82,55 +171,168 @@ public class AetherBasedResolver {
         throws MalformedURLException
     {
         m_config = configuration;
+        final ResolverConfiguration resolverConfig = getResolverConfiguration( configuration );
+        m_offline = resolverConfig.getOffline();
+        m_localFirst = resolverConfig.getLocalFirst();
+        m_health = new RepositoryHealth(
+            resolverConfig.getCircuitBreakerFailures(), resolverConfig.getCircuitBreakerTimeout()
+        );
+        m_wagonProvider = new ManualWagonProvider(
+            resolverConfig.getMaxConnectionsPerHost(), resolverConfig.getMaxConnections(),
+            resolverConfig.getConnectTimeout(), resolverConfig.getReadTimeout(), m_health,
+            newTransferScheduler( resolverConfig ), resolverConfig.getRangeDownloadThreshold(),
+            resolverConfig.getRangeDownloadParts()
+        );
         m_repoSystem = newRepositorySystem();
         m_proxySelector = selectProxies();
         m_mirrorSelector = selectMirrors();
+        m_cache = new ArtifactCache( resolverConfig.getResolvedCacheSize(), resolverConfig.getResolvedCacheTTL() );
+        // artifacts missing while offline may be available remotely once online again
+        m_negativeCache = new NegativeCache(
+            m_offline ? 0 : resolverConfig.getNegativeCacheTTL(), getLocalRepositoryDir()
+        );
+        m_routes = new RepositoryRoutes( resolverConfig.getRoutes() );
+        m_inFlight = new InFlightResolutions();
+        m_locks = new ArtifactLocks( m_config.getLocalRepository().getFile() );
+        m_index = new LocalRepositoryIndex( getLocalRepositoryDir() );
+        m_versions = new VersionCache();
+        m_multiDirs = new ConcurrentHashMap<File, MultiRepositoryDirectory>();
+        m_explicitRepos = new LinkedHashMap<String, List<RemoteRepository>>( 16, 0.75f, true )
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry( final Map.Entry<String, List<RemoteRepository>> eldest )
+            {
+                return size() > MAX_EXPLICIT_REPOSITORIES;
+            }
+        };
+        m_streamingExecutor = resolverConfig.getStreaming()
+                              ? Executors.newCachedThreadPool( new ResolverThreadFactory( "pax-url-mvn-download-" ) )
+                              : null;
+        m_session = newSession();
     }
 
-    private void assignProxyAndMirrors(List<RemoteRepository> remoteRepos)
+    /**
+     * Returns the resolver part of a configuration. Configurations without one get the defaults.
+     *
+     * @param configuration configuration; cannot be null
+     *
+     * @return the configuration itself if it implements {@link ResolverConfiguration}, else the defaults
+     */
+    static ResolverConfiguration getResolverConfiguration( final MavenConfiguration configuration )
     {
-        Map<String, List<String>> map = new HashMap<String, List<String>>();
-        Map<String, RemoteRepository> naming = new HashMap<String, RemoteRepository>();
-
-        for( RemoteRepository r : remoteRepos ) {
-            naming.put( r.getId(), r );
+        return configuration instanceof ResolverConfiguration
+               ? (ResolverConfiguration) configuration
+               : new MavenConfigurationSnapshot( configuration );
+    }
 
-            r.setProxy( m_proxySelector.getProxy( r ) );
+    /**
+     * Closes the pooled connections to remote repositories and writes pending missing artifacts. The resolver must
+     * not be used afterwards.
+     */
+    public void close()
+    {
+        synchronized( m_lifecycle ) {
+            if( m_closed ) {
+                return;
+            }
+            m_closed = true;
+        }
+        shutdown();
+    }
 
-            RemoteRepository mirror = m_mirrorSelector.getMirror( r );
-            if( mirror != null ) {
-                String key = mirror.getId();
-                naming.put( key, mirror );
-                if( !map.containsKey( key ) ) {
-                    map.put( key, new ArrayList<String>() );
-                }
-                List<String> mirrored = map.get( key );
-                mirrored.add( r.getId() );
+    /**
+     * Closes the resolver once the resolutions in progress are done. Used when the resolver is replaced, so
+     * connections still using it complete. Resolutions started afterwards fail.
+     */
+    public void retire()
+    {
+        synchronized( m_lifecycle ) {
+            m_retired = true;
+            if( m_active > 0 || m_closed ) {
+                return;
             }
+            m_closed = true;
         }
+        shutdown();
+    }
 
-        for( String mirrorId : map.keySet() ) {
-            RemoteRepository mirror = naming.get( mirrorId );
-            List<RemoteRepository> mirroedRepos = new ArrayList<RemoteRepository>();
+    /**
+     * Registers a resolution in progress.
+     *
+     * @throws IOException if the resolver is closed
+     */
+    private void enter()
+        throws IOException
+    {
+        synchronized( m_lifecycle ) {
+            if( m_closed ) {
+                throw new IOException( "Resolver is closed" );
+            }
+            m_active++;
+        }
+    }
 
-            for( String rep : map.get( mirrorId ) ) {
-                mirroedRepos.add( naming.get( rep ) );
+    /**
+     * Unregisters a resolution in progress, closing a retired resolver after the last one.
+     */
+    private void leave()
+    {
+        synchronized( m_lifecycle ) {
+            if( --m_active > 0 || !m_retired || m_closed ) {
+                return;
             }
-            mirror.setMirroredRepositories( mirroedRepos );
-            remoteRepos.removeAll(mirroedRepos);
-            remoteRepos.add( 0, mirror );
+            m_closed = true;
         }
+        shutdown();
+    }
 
+    private void shutdown()
+    {
+        m_negativeCache.flush();
+        if( m_streamingExecutor != null ) {
+            m_streamingExecutor.shutdownNow();
+        }
+        m_wagonProvider.shutdown();
     }
 
-    private List<MavenRepositoryURL> getRemoteRepositories( MavenConfiguration configuration )
-        throws MalformedURLException
+    /**
+     * Applies a change of the settings the configuration uses. Only state depending on what changed is dropped:
+     * the resolved artifacts stay cached, and so do the versions and missing artifacts if repositories and mirrors
+     * did not change. A change of the local repository is not handled here, as it requires a new resolver.
+     *
+     * @param configuration configuration with the new settings (must be not null)
+     * @param change        what changed in the settings
+     */
+    public void settingsChanged( final MavenConfiguration configuration, final SettingsChange change )
     {
-        List<MavenRepositoryURL> r = new ArrayList<MavenRepositoryURL>();
-        for( MavenRepositoryURL s : configuration.getRepositories() ) {
-            r.add( s );
+        final boolean mirrors = change.isMirrorsChanged();
+        final boolean proxies = change.isProxiesChanged();
+        final boolean repositories = change.isRepositoriesChanged();
+        synchronized( this ) {
+            m_config = configuration;
+            if( proxies ) {
+                m_proxySelector = selectProxies();
+            }
+            if( mirrors ) {
+                m_mirrorSelector = selectMirrors();
+            }
+            if( mirrors || proxies ) {
+                m_session = newSession();
+            }
+            if( mirrors || proxies || repositories ) {
+                m_topology = null;
+                m_explicitRepos.clear();
+            }
         }
-        return r;
+        if( mirrors || repositories ) {
+            // versions and missing artifacts were found in repositories that may no longer be used
+            m_repositoriesChanged = System.currentTimeMillis();
+            m_versions.clear();
+            m_negativeCache.clear();
+        }
+        LOG.debug( "Applied " + change );
     }
 
     private ProxySelector selectProxies()
@@ -178,61 +380,439 @@ public class AetherBasedResolver {
          **/
     }
 
-    private List<RemoteRepository> selectRepositories( List<MavenRepositoryURL> repos )
+    /**
+     * Returns the repositories, proxies and mirrors of the configuration. The topology is built once and built again
+     * only when a @multi directory changed.
+     */
+    private RepositoryTopology getTopology()
+        throws MalformedURLException
     {
-        List<RemoteRepository> list = new ArrayList<RemoteRepository>();
-        for( MavenRepositoryURL r : repos ) {
-            if (r.isMulti()) {
-                addSubDirs(list, r.getFile());
-            } else {
-                addRepo(list, r);
+        RepositoryTopology topology = m_topology;
+        if( topology == null || topology.isStale() ) {
+            synchronized( this ) {
+                topology = m_topology;
+                if( topology == null || topology.isStale() ) {
+                    topology = buildTopology();
+                    m_topology = topology;
+                }
             }
         }
-        return list;
+        return topology;
     }
 
-    private void addSubDirs(List<RemoteRepository> list, File parentDir) {
-        if (!parentDir.isDirectory()) {
-            LOG.debug("Repository marked with @multi does not resolve to a directory: " + parentDir);
-            return;
+    private RepositoryTopology buildTopology()
+        throws MalformedURLException
+    {
+        final List<RemoteRepository> list = new ArrayList<RemoteRepository>();
+        final Map<MultiRepositoryDirectory, List<RemoteRepository>> multiDirs =
+            new HashMap<MultiRepositoryDirectory, List<RemoteRepository>>();
+        final List<MavenRepositoryURL> repositories = m_config.getRepositories();
+        for( MavenRepositoryURL r : repositories == null ? new ArrayList<MavenRepositoryURL>() : repositories ) {
+            if( r.isMulti() ) {
+                addSubDirs( list, multiDirs, r.getFile() );
+            }
+            else {
+                addRepo( list, r );
+            }
         }
-        for (File repo : parentDir.listFiles()) {
-            if (repo.isDirectory()) {
-                try {
-                    String repoURI = repo.toURI().toString() + "@id=" + repo.getName();
-                    LOG.debug("Adding repo from inside multi dir: " + repoURI);
-                    addRepo(list, new MavenRepositoryURL(repoURI));
-                } catch (MalformedURLException e) {
-                    LOG.error("Error resolving repo url of a multi repo " + repo.toURI());
-                }
+        return new RepositoryTopology( list, multiDirs, m_routes, m_mirrorSelector, m_proxySelector );
+    }
+
+    private void addSubDirs( List<RemoteRepository> list, Map<MultiRepositoryDirectory, List<RemoteRepository>> multiDirs,
+                             File parentDir )
+    {
+        MultiRepositoryDirectory multi = m_multiDirs.get( parentDir );
+        if( multi == null ) {
+            multi = new MultiRepositoryDirectory( parentDir, REPO_TYPE );
+            final MultiRepositoryDirectory existing = m_multiDirs.putIfAbsent( parentDir, multi );
+            if( existing != null ) {
+                multi = existing;
             }
         }
+        final List<RemoteRepository> repositories = multi.getRepositories();
+        multiDirs.put( multi, repositories );
+        list.addAll( repositories );
+    }
+
+    /**
+     * Returns the repository named explicitly by an mvn: url, with the proxy and mirror rules of the configuration
+     * applied.
+     */
+    private synchronized List<RemoteRepository> getExplicitRepositories( final MavenRepositoryURL repository )
+    {
+        // built under the lock the selectors are replaced with, so no repository of old selectors is cached
+        final String url = repository.getURL().toExternalForm();
+        List<RemoteRepository> repositories = m_explicitRepos.get( url );
+        if( repositories == null ) {
+            final List<RemoteRepository> list = new ArrayList<RemoteRepository>( 1 );
+            addRepo( list, repository );
+            repositories = RepositoryTopology.assignProxyAndMirrors( list, m_mirrorSelector, m_proxySelector );
+            m_explicitRepos.put( url, repositories );
+        }
+        return repositories;
     }
 
     private void addRepo(List<RemoteRepository> list, MavenRepositoryURL repoUrl) {
-        list.add( new RemoteRepository( repoUrl.getId(), REPO_TYPE, repoUrl.getURL().toExternalForm() ) );
+        RemoteRepository repository =
+            new RemoteRepository( repoUrl.getId(), REPO_TYPE, repoUrl.getURL().toExternalForm() );
+        String updatePolicy = repoUrl.getUpdatePolicy();
+        String checksumPolicy = repoUrl.getChecksumPolicy();
+        if( updatePolicy != null || checksumPolicy != null ) {
+            // ignore skips the download of remote checksums. Otherwise the connector computes the digest from the
+            // transfer events of the wagon while downloading, so the file is not read again
+            RepositoryPolicy policy = new RepositoryPolicy(
+                true,
+                updatePolicy == null ? RepositoryPolicy.UPDATE_POLICY_DAILY : updatePolicy,
+                checksumPolicy == null ? RepositoryPolicy.CHECKSUM_POLICY_WARN : checksumPolicy
+            );
+            repository.setPolicy( true, policy );
+            repository.setPolicy( false, policy );
+        }
+        list.add( repository );
     }
-    public InputStream resolve( String groupId, String artifactId, String classifier, String extension, String version )
+
+    /**
+     * Resolves an artifact and returns its content. In streaming mode, content being downloaded is returned while
+     * the download is in progress.
+     *
+     * @return artifact content
+     *
+     * @throws IOException if the artifact cannot be resolved
+     */
+    public InputStream resolve( final String groupId, final String artifactId, final String classifier,
+                                final String extension, final String version )
+        throws IOException
+    {
+        return resolve( null, groupId, artifactId, classifier, extension, version );
+    }
+
+    /**
+     * Resolves an artifact from a given repository and returns its content.
+     *
+     * @param repository repository named by the mvn: url; null to use the configured repositories
+     *
+     * @return artifact content
+     *
+     * @throws IOException if the artifact cannot be resolved
+     *
+     * @see #resolveFile(MavenRepositoryURL, String, String, String, String, String)
+     */
+    public InputStream resolve( final MavenRepositoryURL repository, final String groupId, final String artifactId,
+                                final String classifier, final String extension, final String version )
+        throws IOException
+    {
+        if( m_streamingExecutor == null ) {
+            return new FileInputStream( resolveFile( repository, groupId, artifactId, classifier, extension, version ) );
+        }
+        final File cached = m_cache.get( ArtifactCache.key( groupId, artifactId, classifier, extension, version ) );
+        if( cached != null ) {
+            return new FileInputStream( cached );
+        }
+        // the resolution in background keeps a retired resolver open until it is done
+        enter();
+        final DownloadTaps taps = m_wagonProvider.getDownloadTaps();
+        final DownloadTaps.Tap tap = taps.open( DownloadTaps.path( groupId, artifactId, classifier, extension, version ) );
+        // the pooled thread downloads with the priority of the caller
+        final boolean background = TransferScheduler.isBackground();
+        try {
+            final Future<File> resolution = m_streamingExecutor.submit( new Callable<File>()
+            {
+                public File call()
+                    throws IOException
+                {
+                    TransferScheduler.setBackground( background );
+                    try {
+                        return resolveFile( repository, groupId, artifactId, classifier, extension, version );
+                    } finally {
+                        TransferScheduler.setBackground( false );
+                        leave();
+                    }
+                }
+            }
+            );
+            return new StreamingArtifactInputStream( taps, tap, resolution );
+        } catch( RuntimeException e ) {
+            taps.close( tap );
+            leave();
+            throw e;
+        }
+    }
+
+    /**
+     * Resolves an artifact to a file in the local repository. Already resolved artifacts are served from an in
+     * memory cache, and concurrent requests for the same artifact share one resolution.
+     *
+     * @return the resolved file
+     *
+     * @throws IOException if the artifact cannot be resolved
+     */
+    public File resolveFile( final String groupId, final String artifactId, final String classifier,
+                             final String extension, final String version )
         throws IOException
     {
-        List<RemoteRepository> remoteRepos = selectRepositories( getRemoteRepositories( m_config ) );
-        assignProxyAndMirrors(remoteRepos);
+        return resolveFile( null, groupId, artifactId, classifier, extension, version );
+    }
+
+    /**
+     * Resolves an artifact to a file in the local repository. If the mvn: url names a repository, only that
+     * repository is asked (with the proxy and mirror rules of the configuration applied) instead of the configured
+     * ones. The local repository and the in memory cache are used in both cases, as they hold the same artifact.
+     *
+     * @param repository repository named by the mvn: url; null to use the configured repositories
+     *
+     * @return the resolved file
+     *
+     * @throws IOException if the artifact cannot be resolved
+     */
+    public File resolveFile( final MavenRepositoryURL repository, final String groupId, final String artifactId,
+                             final String classifier, final String extension, final String version )
+        throws IOException
+    {
+        final String key = ArtifactCache.key( groupId, artifactId, classifier, extension, version );
+        File resolved = m_cache.get( key );
+        if( resolved != null ) {
+            LOG.debug( "Resolved ({}) from cache as {}", key, resolved.getAbsolutePath() );
+            return resolved;
+        }
+        // a resolution from one repository does not wait for one walking all repositories, and the other way round
+        final String resolutionKey = repository == null ? key : repository.getURL().toExternalForm() + "!" + key;
+        enter();
+        try {
+            return m_inFlight.resolve( resolutionKey, new Callable<File>()
+            {
+                public File call()
+                    throws IOException
+                {
+                    return resolveFile( key, repository, groupId, artifactId, classifier, extension, version );
+                }
+            }
+            );
+        } finally {
+            leave();
+        }
+    }
+
+    private File resolveFile( String key, MavenRepositoryURL repository, String groupId, String artifactId,
+                              String classifier, String extension, String version )
+        throws IOException
+    {
+        // may have been resolved by a concurrent request that completed in the meantime
+        File resolved = m_cache.get( key );
+        if( resolved != null ) {
+            return resolved;
+        }
+        if( LocalRepositoryIndex.isIndexed( version ) ) {
+            resolved = m_index.find( key );
+            if( resolved == null && ( m_localFirst || m_offline ) ) {
+                resolved = findInLocalRepository( groupId, artifactId, classifier, extension, version );
+            }
+            if( resolved != null ) {
+                m_cache.put( key, version, resolved );
+                LOG.debug( "Resolved ({}) from local repository as {}", key, resolved.getAbsolutePath() );
+                return resolved;
+            }
+        }
+
+        final List<RemoteRepository> remoteRepos = repository == null
+                                                   ? m_health.select( getTopology().getRepositories( groupId ) )
+                                                   : getExplicitRepositories( repository );
+        if( !LocalRepositoryIndex.isIndexed( version ) && LocalRepositoryIndex.isJournaled( version ) ) {
+            resolved = findInJournal( key, remoteRepos );
+            if( resolved != null ) {
+                m_cache.put( key, version, resolved );
+                LOG.debug( "Resolved ({}) from journal as {}", key, resolved.getAbsolutePath() );
+                return resolved;
+            }
+        }
         // version = mapLatestToRange( version );
-        RepositorySystemSession session = newSession();
 
         Artifact artifact = new DefaultArtifact( groupId, artifactId, classifier, extension, version );
-        File resolved = resolve( session, remoteRepos, artifact );
+        resolved = resolve( newResolutionSession(), remoteRepos, artifact );
+        m_cache.put( key, version, resolved );
 
         LOG.debug( "Resolved ({}) as {}", artifact.toString(), resolved.getAbsolutePath() );
-        return new FileInputStream( resolved );
+        return resolved;
+    }
+
+    /**
+     * Collects the transitive dependencies of an artifact. Only the dependency graph is resolved (versions and
+     * conflicts), artifacts themselves are not downloaded, so they can be resolved in parallel afterwards.
+     *
+     * @param scope compile (compile scope only), runtime (compile and runtime scopes) or test (all but system scope)
+     *
+     * @return the artifact and its dependencies, in graph preorder, each artifact once
+     *
+     * @throws IOException if the dependency graph cannot be collected
+     */
+    public List<Artifact> collectDependencies( final String groupId, final String artifactId,
+                                               final String classifier, final String extension,
+                                               final String version, final String scope )
+        throws IOException
+    {
+        return collectDependencies( null, groupId, artifactId, classifier, extension, version, scope );
+    }
+
+    /**
+     * Collects the transitive dependencies of an artifact. If the mvn: url names a repository, the graph is
+     * collected from that repository only (and the repositories declared by the poms), as the artifact is resolved.
+     *
+     * @param repository repository named by the mvn: url; null to use the configured repositories
+     * @param scope      compile (compile scope only), runtime (compile and runtime scopes) or test (all but system
+     *                   scope)
+     *
+     * @return the artifact and its dependencies, in graph preorder, each artifact once
+     *
+     * @throws IOException if the dependency graph cannot be collected
+     */
+    public List<Artifact> collectDependencies( final MavenRepositoryURL repository, final String groupId,
+                                               final String artifactId, final String classifier,
+                                               final String extension, final String version, final String scope )
+        throws IOException
+    {
+        final Set<String> scopes = getIncludedScopes( scope );
+        enter();
+        try {
+            return collectDependencies( scopes, repository, groupId, artifactId, classifier, extension, version );
+        } finally {
+            leave();
+        }
+    }
+
+    private List<Artifact> collectDependencies( final Set<String> scopes, final MavenRepositoryURL repository,
+                                                final String groupId, final String artifactId,
+                                                final String classifier, final String extension,
+                                                final String version )
+        throws IOException
+    {
+        final List<RemoteRepository> remoteRepos = repository == null
+                                                   ? m_health.select( getTopology().getRepositories( groupId ) )
+                                                   : getExplicitRepositories( repository );
+        Artifact artifact = new DefaultArtifact( groupId, artifactId, classifier, extension, version );
+        final RepositorySystemSession session = newResolutionSession();
+        try {
+            artifact = resolveLatestVersionRange( session, remoteRepos, artifact );
+            final CollectRequest request = new CollectRequest();
+            request.setRoot( new Dependency( artifact, JavaScopes.COMPILE ) );
+            request.setRepositories( remoteRepos );
+            final DependencyNode root = m_repoSystem.collectDependencies( session, request ).getRoot();
+
+            final List<Artifact> artifacts = new ArrayList<Artifact>();
+            final Set<String> visited = new HashSet<String>();
+            collect( root, scopes, visited, artifacts );
+            LOG.debug( "Collected {} artifacts for {}", artifacts.size(), artifact );
+            return artifacts;
+        } catch( RepositoryException e ) {
+            throw new IOException( "Error collecting dependencies of " + artifact.toString(), e );
+        }
+    }
+
+    private static Set<String> getIncludedScopes( final String scope )
+        throws IOException
+    {
+        final Set<String> scopes = new HashSet<String>();
+        scopes.add( JavaScopes.COMPILE );
+        if( JavaScopes.COMPILE.equals( scope ) ) {
+            return scopes;
+        }
+        scopes.add( JavaScopes.RUNTIME );
+        if( JavaScopes.RUNTIME.equals( scope ) ) {
+            return scopes;
+        }
+        scopes.add( JavaScopes.PROVIDED );
+        scopes.add( JavaScopes.TEST );
+        if( JavaScopes.TEST.equals( scope ) ) {
+            return scopes;
+        }
+        throw new IOException( "Unsupported scope " + scope + " (supported: compile, runtime, test)" );
+    }
+
+    private static void collect( final DependencyNode node, final Set<String> scopes, final Set<String> visited,
+                                 final List<Artifact> artifacts )
+    {
+        final Dependency dependency = node.getDependency();
+        if( dependency != null ) {
+            // the root is always included; dependencies out of scope are not walked
+            if( !artifacts.isEmpty() && !scopes.contains( dependency.getScope() ) ) {
+                return;
+            }
+            final Artifact artifact = dependency.getArtifact();
+            if( !visited.add( artifact.toString() ) ) {
+                return;
+            }
+            artifacts.add( artifact );
+        }
+        for( DependencyNode child : node.getChildren() ) {
+            collect( child, scopes, visited, artifacts );
+        }
+    }
+
+    /**
+     * Returns the file a SNAPSHOT or LATEST artifact was resolved to earlier, also before a restart, if the update
+     * policies of the repositories do not require a new check yet.
+     */
+    private File findInJournal( final String key, final List<RemoteRepository> remoteRepos )
+    {
+        final long lastCheck = m_index.getLastCheck( key );
+        if( lastCheck <= 0 || lastCheck < m_repositoriesChanged ) {
+            return null;
+        }
+        for( RemoteRepository repository : remoteRepos ) {
+            if( VersionCache.nextCheck( repository, lastCheck ) <= System.currentTimeMillis() ) {
+                return null;
+            }
+        }
+        final File file = m_index.find( key );
+        final String version = m_index.getVersion( key );
+        if( file != null && version != null && key.endsWith( ":" + VERSION_LATEST ) ) {
+            // dependency collection maps LATEST the same way
+            m_versions.put( key, version, remoteRepos, lastCheck );
+        }
+        return file;
     }
 
     private File resolve( RepositorySystemSession session, List<RemoteRepository> remoteRepos, Artifact artifact )
         throws IOException
     {
+        final String requested = artifact.getVersion();
+        final String requestedKey = ArtifactCache.key(
+            artifact.getGroupId(), artifact.getArtifactId(), artifact.getClassifier(), artifact.getExtension(),
+            requested
+        );
         try {
             artifact = resolveLatestVersionRange( session, remoteRepos, artifact );
-            return m_repoSystem.resolveArtifact( session, new ArtifactRequest( artifact, remoteRepos, null ) ).getArtifact().getFile();
+            // other processes sharing the local repository wait for this one to download the artifact
+            final ArtifactLocks.Lock lock = m_locks.lock( artifact );
+            try {
+                ArtifactResult result = m_repoSystem.resolveArtifact(
+                    session, new ArtifactRequest( artifact, m_negativeCache.filter( remoteRepos, artifact ), null )
+                );
+                m_negativeCache.record( result.getExceptions() );
+                final Artifact resolved = result.getArtifact();
+                final String repositoryId = result.getRepository() == null ? null : result.getRepository().getId();
+                if( LocalRepositoryIndex.isIndexed( resolved.getVersion() ) ) {
+                    m_index.add(
+                        ArtifactCache.key( resolved.getGroupId(), resolved.getArtifactId(), resolved.getClassifier(),
+                                           resolved.getExtension(), resolved.getVersion()
+                        ),
+                        resolved.getFile(),
+                        repositoryId
+                    );
+                }
+                if( !LocalRepositoryIndex.isIndexed( requested ) && LocalRepositoryIndex.isJournaled( requested ) ) {
+                    m_index.add(
+                        requestedKey, resolved.getVersion(), resolved.getFile(), repositoryId,
+                        getLastCheck( remoteRepos, artifact.getGroupId(), artifact.getArtifactId(), requested )
+                    );
+                }
+                return resolved.getFile();
+            } finally {
+                lock.release();
+            }
+        } catch( ArtifactResolutionException e ) {
+            for( ArtifactResult result : e.getResults() ) {
+                m_negativeCache.record( result.getExceptions() );
+            }
+            throw new IOException( "Error resolving artifact " + artifact.toString(), e );
         } catch( RepositoryException e ) {
             throw new IOException( "Error resolving artifact " + artifact.toString(), e );
         }
@@ -240,7 +820,8 @@ public class AetherBasedResolver {
 
     /**
      * Tries to resolve versions = LATEST using an open range version query.
-     * If it succeeds, version of artifact is set to the highest available version.
+     * If it succeeds, version of artifact is set to the highest available version. The version is cached until the
+     * update policy of one of the repositories requires a new check.
      *
      * @param session  to be used.
      * @param artifact to be used
@@ -254,6 +835,15 @@ public class AetherBasedResolver {
         throws VersionRangeResolutionException
     {
         if( artifact.getVersion().equals( VERSION_LATEST ) ) {
+            final String key = ArtifactCache.key(
+                artifact.getGroupId(), artifact.getArtifactId(), artifact.getClassifier(), artifact.getExtension(),
+                VERSION_LATEST
+            );
+            final String cached = m_versions.get( key );
+            if( cached != null ) {
+                LOG.debug( "Resolved ({}) from version cache as {}", key, cached );
+                return artifact.setVersion( cached );
+            }
             artifact = artifact.setVersion( LATEST_VERSION_RANGE );
 
             VersionRangeResult versionResult = m_repoSystem.resolveVersionRange( session, new VersionRangeRequest( artifact, remoteRepos, null ) );
@@ -262,6 +852,10 @@ public class AetherBasedResolver {
                 if( v != null ) {
 
                     artifact = artifact.setVersion( v.toString() );
+                    m_versions.put(
+                        key, v.toString(), remoteRepos,
+                        getLastCheck( remoteRepos, artifact.getGroupId(), artifact.getArtifactId(), VERSION_LATEST )
+                    );
                 }
                 else {
                     throw new VersionRangeResolutionException( versionResult, "Not highest version found for " + artifact );
@@ -271,6 +865,85 @@ public class AetherBasedResolver {
         return artifact;
     }
 
+    /**
+     * Returns when the remote repositories were last checked for the metadata a SNAPSHOT or LATEST version is
+     * resolved with, that is when the oldest local copy of the metadata was written. The time of the resolution would
+     * not do, as Aether skips checks its update policies or the session do not require. Repositories the metadata was
+     * never downloaded from are left out.
+     *
+     * @return time of the last check; 0 if unknown
+     */
+    private long getLastCheck( final List<RemoteRepository> remoteRepos, final String groupId,
+                               final String artifactId, final String version )
+    {
+        final File localRepository = getLocalRepositoryDir();
+        if( localRepository == null ) {
+            return 0;
+        }
+        final StringBuilder dir = new StringBuilder( 128 )
+            .append( groupId.replace( '.', '/' ) ).append( '/' )
+            .append( artifactId ).append( '/' );
+        if( !VERSION_LATEST.equals( version ) ) {
+            dir.append( version ).append( '/' );
+        }
+        long lastCheck = 0;
+        for( RemoteRepository repository : remoteRepos ) {
+            final long written =
+                new File( localRepository, dir + "maven-metadata-" + repository.getId() + ".xml" ).lastModified();
+            if( written > 0 && ( lastCheck == 0 || written < lastCheck ) ) {
+                lastCheck = written;
+            }
+        }
+        return lastCheck;
+    }
+
+    /**
+     * Looks up a released artifact in the local repository, without any repository system session.
+     *
+     * @return artifact file or null if not present in the local repository
+     */
+    private File findInLocalRepository( String groupId, String artifactId, String classifier, String extension,
+                                        String version )
+    {
+        File localRepository = getLocalRepositoryDir();
+        if( localRepository == null ) {
+            return null;
+        }
+        StringBuilder path = new StringBuilder( 128 )
+            .append( groupId.replace( '.', '/' ) ).append( '/' )
+            .append( artifactId ).append( '/' )
+            .append( version ).append( '/' )
+            .append( artifactId ).append( '-' ).append( version );
+        if( classifier != null && classifier.length() > 0 ) {
+            path.append( '-' ).append( classifier );
+        }
+        path.append( '.' ).append( extension );
+        File file = new File( localRepository, path.toString() );
+        return file.isFile() ? file : null;
+    }
+
+    /**
+     * @return local repository directory or null if there is no file based local repository
+     */
+    private File getLocalRepositoryDir()
+    {
+        MavenRepositoryURL localRepository = m_config.getLocalRepository();
+        return localRepository == null ? null : localRepository.getFile();
+    }
+
+    /**
+     * Creates the scheduler of downloads. Unless set, the number of downloads per host is limited to the number of
+     * connections per host, so interactive downloads waiting for a connection are started first.
+     */
+    private static TransferScheduler newTransferScheduler( final ResolverConfiguration configuration )
+    {
+        final int maxDownloadsPerHost = configuration.getMaxDownloadsPerHost();
+        return new TransferScheduler(
+            maxDownloadsPerHost > 0 ? maxDownloadsPerHost : configuration.getMaxConnectionsPerHost(),
+            configuration.getMaxDownloadRate()
+        );
+    }
+
     private RepositorySystemSession newSession()
     {
         assert m_config != null : "local repository cannot be null";
@@ -283,9 +956,20 @@ public class AetherBasedResolver {
         session.setLocalRepositoryManager( m_repoSystem.newLocalRepositoryManager( localRepo ) );
         session.setMirrorSelector( m_mirrorSelector );
         session.setProxySelector( m_proxySelector );
+        session.setOffline( m_offline );
         return session;
     }
 
+    /**
+     * Creates the session of one resolution out of the template session. The session data is not shared: Aether
+     * records in it the metadata and artifacts it already checked, so data shared by all resolutions would stop
+     * SNAPSHOT and LATEST versions from being checked again whatever the update policy says.
+     */
+    private RepositorySystemSession newResolutionSession()
+    {
+        return new DefaultRepositorySystemSession( m_session ).setData( new DefaultSessionData() );
+    }
+
     private Authentication getAuthentication( Map<String, String> proxy )
     {
         // user, pass
@@ -304,7 +988,7 @@ public class AetherBasedResolver {
     {
         MavenServiceLocator locator = new MavenServiceLocator();
 
-        locator.setServices( WagonProvider.class, new ManualWagonProvider() );
+        locator.setServices( WagonProvider.class, m_wagonProvider );
         locator.addService( RepositoryConnectorFactory.class, WagonRepositoryConnectorFactory.class );
 
         locator.setService( LocalRepositoryManagerFactory.class, SimpleLocalRepositoryManagerFactory.class );
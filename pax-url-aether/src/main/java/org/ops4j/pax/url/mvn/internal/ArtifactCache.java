@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import static org.ops4j.pax.url.mvn.Parser.VERSION_LATEST;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded in memory cache of resolved artifacts, keyed by artifact coordinates.
+ * Least recently used entries are evicted once the cache is full. Released artifacts never expire while SNAPSHOT
+ * and LATEST artifacts expire after a configurable time to live.
+ */
+class ArtifactCache
+{
+
+    private static final String SNAPSHOT = "SNAPSHOT";
+
+    /**
+     * Maximum number of entries.
+     */
+    private final int m_maxSize;
+    /**
+     * Time to live of SNAPSHOT / LATEST entries in milliseconds.
+     */
+    private final long m_ttl;
+    /**
+     * Access ordered map of cached entries. Guarded by itself.
+     */
+    private final Map<String, Entry> m_entries;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxSize maximum number of entries; 0 or less disables the cache
+     * @param ttl     time to live in milliseconds of SNAPSHOT / LATEST entries; 0 or less disables caching of them
+     */
+    ArtifactCache( final int maxSize, final long ttl )
+    {
+        m_maxSize = maxSize;
+        m_ttl = ttl;
+        m_entries = new LinkedHashMap<String, Entry>( 16, 0.75f, true )
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry( final Map.Entry<String, Entry> eldest )
+            {
+                return size() > m_maxSize;
+            }
+        };
+    }
+
+    /**
+     * Builds the cache key out of artifact coordinates.
+     *
+     * @return cache key
+     */
+    static String key( String groupId, String artifactId, String classifier, String extension, String version )
+    {
+        return new StringBuilder()
+            .append( groupId ).append( ':' )
+            .append( artifactId ).append( ':' )
+            .append( extension ).append( ':' )
+            .append( classifier == null ? "" : classifier ).append( ':' )
+            .append( version )
+            .toString();
+    }
+
+    /**
+     * Returns the cached file for the key. Expired entries and entries whose file vanished are discarded.
+     *
+     * @param key artifact key
+     *
+     * @return cached file or null if not cached
+     */
+    File get( final String key )
+    {
+        if( m_maxSize <= 0 ) {
+            return null;
+        }
+        final Entry entry;
+        synchronized( m_entries ) {
+            entry = m_entries.get( key );
+            if( entry == null ) {
+                return null;
+            }
+            if( entry.expires < System.currentTimeMillis() ) {
+                m_entries.remove( key );
+                return null;
+            }
+        }
+        if( !entry.file.isFile() ) {
+            remove( key );
+            return null;
+        }
+        return entry.file;
+    }
+
+    /**
+     * Caches the resolved file.
+     *
+     * @param key     artifact key
+     * @param version requested version (used to decide if the entry expires)
+     * @param file    resolved file
+     */
+    void put( final String key, final String version, final File file )
+    {
+        if( m_maxSize <= 0 ) {
+            return;
+        }
+        long expires = Long.MAX_VALUE;
+        if( isVolatile( version ) ) {
+            if( m_ttl <= 0 ) {
+                return;
+            }
+            expires = System.currentTimeMillis() + m_ttl;
+        }
+        synchronized( m_entries ) {
+            m_entries.put( key, new Entry( file, expires ) );
+        }
+    }
+
+    /**
+     * Removes an entry from cache.
+     *
+     * @param key artifact key
+     */
+    void remove( final String key )
+    {
+        synchronized( m_entries ) {
+            m_entries.remove( key );
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    void clear()
+    {
+        synchronized( m_entries ) {
+            m_entries.clear();
+        }
+    }
+
+    /**
+     * @return true if the version can point to a different artifact over time.
+     */
+    private static boolean isVolatile( final String version )
+    {
+        return version == null || version.equals( VERSION_LATEST ) || version.endsWith( SNAPSHOT );
+    }
+
+    private static class Entry
+    {
+
+        final File file;
+        final long expires;
+
+        Entry( final File file, final long expires )
+        {
+            this.file = file;
+            this.expires = expires;
+        }
+    }
+
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonatype.aether.artifact.Artifact;
+
+/**
+ * Per artifact locks, shared by all processes using the same local repository, so only one of them downloads an
+ * artifact while the others wait and then find it in the local repository.<br/>
+ * Locks are held on lock files in the .locks directory of the local repository. As file locks are held on behalf of
+ * the whole JVM, threads of the same JVM are serialized by an in memory lock before locking the file.<br/>
+ * All versions and files of an artifact (group id and artifact id) share one lock, so there is one lock file per
+ * artifact instead of one per version. Lock files are never deleted: a process waiting for a lock has the file open,
+ * and would lock a deleted file while another process locks the one created again in its place.
+ */
+class ArtifactLocks
+{
+
+    private static final Logger LOG = LoggerFactory.getLogger( ArtifactLocks.class );
+
+    /**
+     * Directory (inside local repository) containing the lock files.
+     */
+    static final String LOCKS_DIR = ".locks";
+
+    /**
+     * Time to wait for another process to release a lock before going on without it.
+     */
+    private static final long LOCK_TIMEOUT = 5 * 60 * 1000;
+    /**
+     * Time between attempts to get a lock held by another process.
+     */
+    private static final long LOCK_RETRY_INTERVAL = 100;
+
+    /**
+     * In memory locks by lock file path, shared by all instances in this JVM. Guarded by itself.
+     */
+    private static final Map<String, JvmLock> JVM_LOCKS = new HashMap<String, JvmLock>();
+
+    /**
+     * Directory containing the lock files.
+     */
+    private final File m_locksDir;
+
+    /**
+     * Creates locks for a local repository.
+     *
+     * @param localRepository local repository directory
+     */
+    ArtifactLocks( final File localRepository )
+    {
+        m_locksDir = new File( localRepository, LOCKS_DIR );
+    }
+
+    /**
+     * Locks an artifact (all its versions), waiting for other threads or processes holding the lock.
+     * If the lock cannot be acquired in a reasonable time, a lock that holds nothing is returned.
+     *
+     * @param artifact artifact to lock
+     *
+     * @return acquired lock, to be released once the artifact is resolved
+     *
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    Lock lock( final Artifact artifact )
+        throws InterruptedIOException
+    {
+        final File file = new File( m_locksDir, fileName( artifact ) );
+        final JvmLock jvmLock = acquireJvmLock( file.getAbsolutePath() );
+        try {
+            jvmLock.m_lock.lockInterruptibly();
+        } catch( InterruptedException e ) {
+            releaseJvmLock( file.getAbsolutePath(), jvmLock );
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Interrupted while waiting for lock on " + artifact );
+        }
+        final FileLock fileLock;
+        try {
+            fileLock = lockFile( file );
+        } catch( InterruptedIOException e ) {
+            jvmLock.m_lock.unlock();
+            releaseJvmLock( file.getAbsolutePath(), jvmLock );
+            throw e;
+        }
+        if( fileLock == null ) {
+            LOG.warn( "Could not lock " + file + ". Resolving " + artifact + " without a lock" );
+        }
+        return new Lock( file.getAbsolutePath(), jvmLock, fileLock );
+    }
+
+    private FileLock lockFile( final File file )
+        throws InterruptedIOException
+    {
+        if( !m_locksDir.isDirectory() && !m_locksDir.mkdirs() && !m_locksDir.isDirectory() ) {
+            return null;
+        }
+        final long timeout = System.currentTimeMillis() + LOCK_TIMEOUT;
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile( file, "rw" );
+            final FileChannel channel = raf.getChannel();
+            boolean waiting = false;
+            while( true ) {
+                final FileLock fileLock = channel.tryLock();
+                if( fileLock != null ) {
+                    raf = null;
+                    return fileLock;
+                }
+                if( System.currentTimeMillis() > timeout ) {
+                    return null;
+                }
+                if( !waiting ) {
+                    LOG.debug( "Waiting for another process to release {}", file );
+                    waiting = true;
+                }
+                Thread.sleep( LOCK_RETRY_INTERVAL );
+            }
+        } catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Interrupted while waiting for lock " + file );
+        } catch( IOException e ) {
+            LOG.debug( "Could not lock " + file, e );
+            return null;
+        } finally {
+            close( raf );
+        }
+    }
+
+    /**
+     * @return name of the lock file of an artifact, the same for all its versions, classifiers and extensions
+     */
+    private static String fileName( final Artifact artifact )
+    {
+        return new StringBuilder()
+            .append( artifact.getGroupId() ).append( '~' )
+            .append( artifact.getArtifactId() )
+            .append( ".lock" )
+            .toString()
+            .replaceAll( "[^\\w.~-]", "_" );
+    }
+
+    private static JvmLock acquireJvmLock( final String path )
+    {
+        synchronized( JVM_LOCKS ) {
+            JvmLock jvmLock = JVM_LOCKS.get( path );
+            if( jvmLock == null ) {
+                jvmLock = new JvmLock();
+                JVM_LOCKS.put( path, jvmLock );
+            }
+            jvmLock.m_users++;
+            return jvmLock;
+        }
+    }
+
+    private static void releaseJvmLock( final String path, final JvmLock jvmLock )
+    {
+        synchronized( JVM_LOCKS ) {
+            if( --jvmLock.m_users == 0 ) {
+                JVM_LOCKS.remove( path );
+            }
+        }
+    }
+
+    private static void close( final RandomAccessFile raf )
+    {
+        if( raf != null ) {
+            try {
+                raf.close();
+            } catch( IOException ignore ) {
+                // nothing to do
+            }
+        }
+    }
+
+    /**
+     * In memory lock with the number of threads using or waiting for it. Users are guarded by JVM_LOCKS.
+     */
+    private static class JvmLock
+    {
+
+        private final ReentrantLock m_lock = new ReentrantLock();
+        private int m_users;
+
+    }
+
+    /**
+     * An acquired artifact lock.
+     */
+    static class Lock
+    {
+
+        private final String m_path;
+        private final JvmLock m_jvmLock;
+        private final FileLock m_fileLock;
+
+        private Lock( final String path, final JvmLock jvmLock, final FileLock fileLock )
+        {
+            m_path = path;
+            m_jvmLock = jvmLock;
+            m_fileLock = fileLock;
+        }
+
+        /**
+         * Releases the lock. The lock file is kept, as another process may be waiting on it.
+         */
+        void release()
+        {
+            try {
+                if( m_fileLock != null ) {
+                    try {
+                        m_fileLock.release();
+                    } finally {
+                        m_fileLock.channel().close();
+                    }
+                }
+            } catch( IOException e ) {
+                LOG.debug( "Could not release lock " + m_path, e );
+            } finally {
+                m_jvmLock.m_lock.unlock();
+                releaseJvmLock( m_path, m_jvmLock );
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.ops4j.lang.NullArgumentException;
+import org.ops4j.pax.url.mvn.AsyncArtifactResolver;
+import org.ops4j.pax.url.mvn.Parser;
+import org.ops4j.pax.url.mvn.ResolutionListener;
+import org.ops4j.pax.url.mvn.ResolutionResult;
+import org.ops4j.pax.url.mvn.ServiceConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonatype.aether.artifact.Artifact;
+
+/**
+ * {@link AsyncArtifactResolver} that resolves artifacts on a bounded pool of threads, using the resolver shared with
+ * the mvn: connections (and so its caches).
+ */
+class AsyncArtifactResolverImpl
+    implements AsyncArtifactResolver
+{
+
+    private static final Logger LOG = LoggerFactory.getLogger( AsyncArtifactResolverImpl.class );
+
+    /**
+     * Protocol prefix, stripped from requested urls.
+     */
+    private static final String PROTOCOL_PREFIX = ServiceConstants.PROTOCOL + ":";
+    /**
+     * Separator of the repository named by an mvn: url and the artifact coordinates.
+     */
+    private static final String REPOSITORY_SEPARATOR = "!";
+
+    /**
+     * Source of shared resolver.
+     */
+    private final ResolverHolder m_holder;
+    /**
+     * Executor resolving the artifacts.
+     */
+    private final ThreadPoolExecutor m_executor;
+
+    /**
+     * Creates a new asynchronous resolver.
+     *
+     * @param holder  source of shared resolver; cannot be null
+     * @param threads maximum number of artifacts resolved at the same time
+     */
+    AsyncArtifactResolverImpl( final ResolverHolder holder, final int threads )
+    {
+        NullArgumentException.validateNotNull( holder, "Resolver holder" );
+        m_holder = holder;
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            Math.max( 1, threads ), Math.max( 1, threads ), 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ResolverThreadFactory( "pax-url-mvn-resolver-" )
+        );
+        executor.allowCoreThreadTimeOut( true );
+        m_executor = executor;
+    }
+
+    /**
+     * Changes the maximum number of artifacts resolved at the same time. Resolutions in progress are not affected.
+     *
+     * @param threads maximum number of artifacts resolved at the same time
+     */
+    synchronized void setThreads( final int threads )
+    {
+        final int size = Math.max( 1, threads );
+        if( size > m_executor.getMaximumPoolSize() ) {
+            m_executor.setMaximumPoolSize( size );
+            m_executor.setCorePoolSize( size );
+        }
+        else {
+            m_executor.setCorePoolSize( size );
+            m_executor.setMaximumPoolSize( size );
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Future<File> resolve( final String url )
+    {
+        return resolve( url, null );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Future<File> resolve( final String url, final ResolutionListener listener )
+    {
+        NullArgumentException.validateNotNull( url, "Url" );
+        final FutureTask<File> task = new FutureTask<File>( new Callable<File>()
+        {
+            public File call()
+                throws IOException
+            {
+                // resolutions requested ahead of use give way to the ones a caller is blocked on
+                TransferScheduler.setBackground( true );
+                try {
+                    return resolveFile( url );
+                } finally {
+                    TransferScheduler.setBackground( false );
+                }
+            }
+        }
+        )
+        {
+            @Override
+            protected void done()
+            {
+                if( listener != null && ( !isCancelled() || m_executor.isShutdown() ) ) {
+                    notifyListener( listener, getResult( url, this ) );
+                }
+            }
+        };
+        m_executor.execute( task );
+        return task;
+    }
+
+    /**
+     * Builds the resolver of the current configuration in the background, so the local repository index and the
+     * resolution journal are loaded before the first artifact is requested.
+     */
+    void warmUp()
+    {
+        m_executor.execute( new Runnable()
+        {
+            public void run()
+            {
+                try {
+                    m_holder.getResolver();
+                } catch( IOException e ) {
+                    LOG.debug( "Resolver not built at start: " + e.getMessage() );
+                }
+            }
+        }
+        );
+    }
+
+    /**
+     * Stops the resolver threads. Resolutions not started yet are cancelled, so callers waiting for them return and
+     * their listeners are notified.
+     */
+    void shutdown()
+    {
+        for( Runnable pending : m_executor.shutdownNow() ) {
+            if( pending instanceof Future ) {
+                ( (Future<?>) pending ).cancel( true );
+            }
+        }
+    }
+
+    /**
+     * Waits for a resolution.
+     *
+     * @param url    requested url
+     * @param future pending resolution
+     *
+     * @return resolution result
+     */
+    static ResolutionResult getResult( final String url, final Future<File> future )
+    {
+        try {
+            return new ResolutionResult( url, future.get(), null );
+        } catch( InterruptedException e ) {
+            future.cancel( true );
+            Thread.currentThread().interrupt();
+            return new ResolutionResult( url, null, new InterruptedIOException( "Interrupted while resolving " + url ) );
+        } catch( CancellationException e ) {
+            return new ResolutionResult( url, null, new InterruptedIOException( "Resolution of " + url + " cancelled" ) );
+        } catch( ExecutionException e ) {
+            if( e.getCause() instanceof IOException ) {
+                return new ResolutionResult( url, null, (IOException) e.getCause() );
+            }
+            return new ResolutionResult( url, null, new IOException( "Error resolving artifact " + url, e.getCause() ) );
+        }
+    }
+
+    /**
+     * Collects the transitive dependencies of an artifact (on the calling thread).
+     *
+     * @param url   mvn: url or coordinates
+     * @param scope dependency scope
+     *
+     * @return mvn: urls of the artifact and its dependencies, naming the repository named by the url if any
+     *
+     * @throws IOException if the dependency graph cannot be collected
+     */
+    List<String> collectDependencies( final String url, final String scope )
+        throws IOException
+    {
+        final Parser parser = parse( url );
+        final List<Artifact> artifacts = m_holder.getResolver().collectDependencies(
+            parser.getRepositoryURL(), parser.getGroup(), parser.getArtifact(), parser.getClassifier(),
+            parser.getType(), parser.getVersion(), scope
+        );
+        // dependencies are resolved from the repository named by the url as well
+        final String path = url.startsWith( PROTOCOL_PREFIX ) ? url.substring( PROTOCOL_PREFIX.length() ) : url;
+        final String repository = parser.getRepositoryURL() == null
+                                  ? ""
+                                  : path.substring( 0, path.lastIndexOf( REPOSITORY_SEPARATOR ) + 1 );
+        final List<String> urls = new ArrayList<String>( artifacts.size() );
+        for( Artifact artifact : artifacts ) {
+            final StringBuilder dependency = new StringBuilder( PROTOCOL_PREFIX )
+                .append( repository )
+                .append( artifact.getGroupId() ).append( '/' )
+                .append( artifact.getArtifactId() ).append( '/' )
+                .append( artifact.getVersion() ).append( '/' )
+                .append( artifact.getExtension() );
+            if( artifact.getClassifier().length() > 0 ) {
+                dependency.append( '/' ).append( artifact.getClassifier() );
+            }
+            urls.add( dependency.toString() );
+        }
+        return urls;
+    }
+
+    /**
+     * Resolves one artifact.
+     *
+     * @param url mvn: url or coordinates
+     *
+     * @return resolved file
+     *
+     * @throws IOException if the artifact cannot be resolved
+     */
+    private File resolveFile( final String url )
+        throws IOException
+    {
+        final Parser parser = parse( url );
+        return m_holder.getResolver().resolveFile(
+            parser.getRepositoryURL(), parser.getGroup(), parser.getArtifact(), parser.getClassifier(),
+            parser.getType(), parser.getVersion()
+        );
+    }
+
+    private static Parser parse( final String url )
+        throws MalformedURLException
+    {
+        String path = url;
+        if( path.startsWith( PROTOCOL_PREFIX ) ) {
+            path = path.substring( PROTOCOL_PREFIX.length() );
+        }
+        return new Parser( path );
+    }
+
+    private static void notifyListener( final ResolutionListener listener, final ResolutionResult result )
+    {
+        try {
+            listener.resolutionCompleted( result );
+        } catch( RuntimeException e ) {
+            LOG.warn( "Resolution listener failed for " + result.getUrl(), e );
+        }
+    }
+
+}
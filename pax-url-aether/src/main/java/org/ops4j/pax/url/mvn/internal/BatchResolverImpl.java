@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import org.ops4j.lang.NullArgumentException;
+import org.ops4j.pax.url.mvn.BatchResolver;
+import org.ops4j.pax.url.mvn.ResolutionResult;
+
+/**
+ * {@link BatchResolver} that resolves artifacts concurrently on the threads of the asynchronous resolver, using the
+ * resolver shared with the mvn: connections.
+ */
+class BatchResolverImpl
+    implements BatchResolver
+{
+
+    /**
+     * Resolver the artifacts are resolved with.
+     */
+    private final AsyncArtifactResolverImpl m_asyncResolver;
+
+    /**
+     * Creates a new batch resolver sharing the threads of an asynchronous resolver.
+     *
+     * @param asyncResolver resolver the artifacts are resolved with; cannot be null
+     */
+    BatchResolverImpl( final AsyncArtifactResolverImpl asyncResolver )
+    {
+        NullArgumentException.validateNotNull( asyncResolver, "Asynchronous resolver" );
+        m_asyncResolver = asyncResolver;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<ResolutionResult> resolve( final Collection<String> urls )
+    {
+        NullArgumentException.validateNotNull( urls, "Urls" );
+        final List<Future<File>> futures = new ArrayList<Future<File>>( urls.size() );
+        for( final String url : urls ) {
+            futures.add( m_asyncResolver.resolve( url ) );
+        }
+        final List<ResolutionResult> results = new ArrayList<ResolutionResult>( urls.size() );
+        int index = 0;
+        for( String url : urls ) {
+            results.add( AsyncArtifactResolverImpl.getResult( url, futures.get( index++ ) ) );
+        }
+        return results;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<ResolutionResult> resolveTransitively( final String url, final String scope )
+    {
+        NullArgumentException.validateNotNull( url, "Url" );
+        final List<String> urls;
+        try {
+            urls = m_asyncResolver.collectDependencies( url, scope );
+        } catch( IOException e ) {
+            return Collections.singletonList( new ResolutionResult( url, null, e ) );
+        }
+        return resolve( urls );
+    }
+
+}
@@ -76,10 +76,18 @@ public class Connection
      * Parsed url.
      */
     private Parser m_parser;
-    private AetherBasedResolver m_aetherBasedResolver;
+    /**
+     * Source of the shared resolver. Null if the connection builds its own one.
+     */
+    private ResolverHolder m_holder;
+    /**
+     * Configuration an own resolver is built for.
+     */
+    private MavenConfiguration m_configuration;
 
     /**
-     * Creates a new connection.
+     * Creates a new connection that builds its own resolver when the content is requested, and retires it once the
+     * content is resolved.
      *
      * @param url           the url; cannot be null.
      * @param configuration service configuration; cannot be null
@@ -94,7 +102,26 @@ public class Connection
         NullArgumentException.validateNotNull( configuration, "Service configuration" );
 
         m_parser = new Parser( url.getPath() );
-        m_aetherBasedResolver = new AetherBasedResolver( configuration );
+        m_configuration = configuration;
+    }
+
+    /**
+     * Creates a new connection that uses the shared resolver current when the content is requested.
+     *
+     * @param url    the url; cannot be null.
+     * @param holder source of the shared resolver; cannot be null
+     *
+     * @throws MalformedURLException in case of a malformed url
+     */
+    Connection( final URL url, final ResolverHolder holder )
+        throws MalformedURLException
+    {
+        super( url );
+        NullArgumentException.validateNotNull( url, "URL cannot be null" );
+        NullArgumentException.validateNotNull( holder, "Resolver holder" );
+
+        m_parser = new Parser( url.getPath() );
+        m_holder = holder;
     }
 
 
@@ -111,7 +138,7 @@ public class Connection
     }
 
     /**
-     * TODO doc
+     * Resolves the artifact and returns its content. If the url names a repository, only that repository is asked.
      */
     @Override
     public InputStream getInputStream()
@@ -119,6 +146,21 @@ public class Connection
     {
         connect();
         LOG.debug( "Resolving [" + url.toExternalForm() + "]" );
-        return m_aetherBasedResolver.resolve( m_parser.getGroup(), m_parser.getArtifact(), m_parser.getClassifier(), m_parser.getType(), m_parser.getVersion() );
+        if( m_holder != null ) {
+            return resolve( m_holder.getResolver() );
+        }
+        final AetherBasedResolver resolver = new AetherBasedResolver( m_configuration );
+        try {
+            return resolve( resolver );
+        } finally {
+            // a download streamed to the caller keeps the resolver open until it is done
+            resolver.retire();
+        }
+    }
+
+    private InputStream resolve( final AetherBasedResolver resolver )
+        throws IOException
+    {
+        return resolver.resolve( m_parser.getRepositoryURL(), m_parser.getGroup(), m_parser.getArtifact(), m_parser.getClassifier(), m_parser.getType(), m_parser.getVersion() );
     }
 }
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Registry of downloads somebody wants to read while they are in progress.<br/>
+ * A reader opens a tap for the repository path of an artifact before resolving it. When a wagon downloads that path,
+ * it tells the tap which file the content is written to, so the reader can follow the file as it grows.
+ */
+class DownloadTaps
+{
+
+    /**
+     * Taps by repository path. Guarded by this.
+     */
+    private final Map<String, Tap> m_taps = new HashMap<String, Tap>();
+
+    /**
+     * Opens a tap for a repository path, sharing the one already open for the same path.
+     *
+     * @param path repository path (see {@link #path})
+     *
+     * @return tap, to be closed once reading is done
+     */
+    synchronized Tap open( final String path )
+    {
+        Tap tap = m_taps.get( path );
+        if( tap == null ) {
+            tap = new Tap( path );
+            m_taps.put( path, tap );
+        }
+        tap.m_readers++;
+        return tap;
+    }
+
+    /**
+     * Closes a tap opened by {@link #open}.
+     *
+     * @param tap tap to close
+     */
+    synchronized void close( final Tap tap )
+    {
+        if( --tap.m_readers == 0 ) {
+            m_taps.remove( tap.m_path );
+        }
+    }
+
+    /**
+     * Returns the tap open for a repository path.
+     *
+     * @param path repository path, as requested by the wagon
+     *
+     * @return open tap or null if nobody is reading the path
+     */
+    synchronized Tap get( final String path )
+    {
+        return m_taps.get( path.startsWith( "/" ) ? path.substring( 1 ) : path );
+    }
+
+    /**
+     * Returns the path of an artifact in a remote repository (default layout).
+     * For unique snapshots the path differs from the one downloaded, so they are never streamed.
+     */
+    static String path( final String groupId, final String artifactId, final String classifier,
+                        final String extension, final String version )
+    {
+        final StringBuilder path = new StringBuilder()
+            .append( groupId.replace( '.', '/' ) ).append( '/' )
+            .append( artifactId ).append( '/' )
+            .append( version ).append( '/' )
+            .append( artifactId ).append( '-' ).append( version );
+        if( classifier != null && classifier.length() > 0 ) {
+            path.append( '-' ).append( classifier );
+        }
+        return path.append( '.' ).append( extension ).toString();
+    }
+
+    /**
+     * A download followed by readers.
+     */
+    static class Tap
+    {
+
+        private final String m_path;
+        /**
+         * Number of readers. Guarded by the registry.
+         */
+        private int m_readers;
+        /**
+         * File the content is downloaded to. Guarded by this.
+         */
+        private File m_destination;
+        /**
+         * Number of times the download (re)started. Guarded by this.
+         */
+        private int m_attempts;
+
+        private Tap( final String path )
+        {
+            m_path = path;
+        }
+
+        /**
+         * Called by the wagon when it starts downloading the content to a file.
+         *
+         * @param destination file the content is written to
+         */
+        synchronized void started( final File destination )
+        {
+            m_destination = destination;
+            m_attempts++;
+            notifyAll();
+        }
+
+        /**
+         * Called by the wagon when the download is over, successfully or not.
+         */
+        synchronized void ended()
+        {
+            notifyAll();
+        }
+
+        /**
+         * @return file the content is downloaded to or null if download did not start
+         */
+        synchronized File getDestination()
+        {
+            return m_destination;
+        }
+
+        /**
+         * @return number of times the download (re)started
+         */
+        synchronized int getAttempts()
+        {
+            return m_attempts;
+        }
+
+        /**
+         * Waits for the download to start or end, at most the given time.
+         *
+         * @param timeout maximum time to wait in milliseconds
+         *
+         * @throws InterruptedException if interrupted while waiting
+         */
+        synchronized void await( final long timeout )
+            throws InterruptedException
+        {
+            wait( timeout );
+        }
+
+        String getPath()
+        {
+            return m_path;
+        }
+
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesces concurrent resolutions of the same artifact: the first caller resolves it, while callers asking for the
+ * same artifact in the meantime wait for and share its outcome (file or failure).
+ */
+class InFlightResolutions
+{
+
+    private static final Logger LOG = LoggerFactory.getLogger( InFlightResolutions.class );
+
+    /**
+     * Resolutions in progress, by artifact key.
+     */
+    private final ConcurrentMap<String, FutureTask<File>> m_inFlight;
+
+    InFlightResolutions()
+    {
+        m_inFlight = new ConcurrentHashMap<String, FutureTask<File>>();
+    }
+
+    /**
+     * Resolves an artifact, or waits for the resolution of the same artifact already in progress.
+     *
+     * @param key        artifact key (see {@link ArtifactCache#key})
+     * @param resolution resolution to perform if none is in progress
+     *
+     * @return resolved file
+     *
+     * @throws IOException if the resolution failed or the thread was interrupted while waiting
+     */
+    File resolve( final String key, final Callable<File> resolution )
+        throws IOException
+    {
+        final FutureTask<File> task = new FutureTask<File>( resolution );
+        FutureTask<File> inFlight = m_inFlight.putIfAbsent( key, task );
+        if( inFlight == null ) {
+            inFlight = task;
+            try {
+                task.run();
+            } finally {
+                m_inFlight.remove( key, task );
+            }
+        }
+        else {
+            LOG.debug( "Waiting for resolution of ({}) already in progress", key );
+        }
+        try {
+            return inFlight.get();
+        } catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Interrupted while waiting for resolution of " + key );
+        } catch( ExecutionException e ) {
+            final Throwable cause = e.getCause();
+            if( cause instanceof IOException ) {
+                throw (IOException) cause;
+            }
+            if( cause instanceof RuntimeException ) {
+                throw (RuntimeException) cause;
+            }
+            if( cause instanceof Error ) {
+                throw (Error) cause;
+            }
+            throw new IOException( "Error resolving artifact " + key, cause );
+        }
+    }
+
+}
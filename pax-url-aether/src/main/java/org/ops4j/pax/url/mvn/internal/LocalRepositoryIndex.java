@@ -0,0 +1,596 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import static org.ops4j.pax.url.mvn.Parser.VERSION_LATEST;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of the released artifacts the handler put in the local repository, so they can be found again (also after a
+ * restart) with a map lookup and a single file system probe instead of a full local repository lookup.<br/>
+ * The index is an append only file in the local repository: each artifact downloaded adds a record, later records
+ * win over earlier ones. The file is compacted when loaded if it holds many stale records. Appends and compactions
+ * hold a lock on a lock file next to the index, so processes sharing the local repository do not lose each other's
+ * records.<br/>
+ * The index is also a journal of the SNAPSHOT and LATEST resolutions: their records hold the resolved version and
+ * the time the remote repositories were checked, so after a restart the resolver can reuse them until the update
+ * policy of the repository requires a new check. Version ranges are never recorded.
+ */
+class LocalRepositoryIndex
+{
+
+    private static final Logger LOG = LoggerFactory.getLogger( LocalRepositoryIndex.class );
+
+    /**
+     * Name of the index file (inside local repository).
+     */
+    static final String FILE_NAME = ".pax-url-mvn-index";
+    /**
+     * Name of the file (inside local repository) locked while the index is written.
+     */
+    static final String LOCK_FILE_NAME = FILE_NAME + ".lock";
+
+    /**
+     * Index format version, first value of each record.
+     */
+    private static final int FORMAT = 2;
+    /**
+     * Previous index format, without resolved version, last modification and check times. Still read.
+     */
+    private static final int FORMAT_1 = 1;
+    /**
+     * Minimum time between two records of the same resolution that only differ by the time of the check, so
+     * resolutions of SNAPSHOT and LATEST versions do not grow the index with each check.
+     */
+    static final long CHECK_RECORD_INTERVAL = 10 * 60 * 1000;
+
+    /**
+     * In memory locks by lock file path, shared by all instances in this JVM, as file locks are held on behalf of the
+     * whole JVM.
+     */
+    private static final ConcurrentMap<String, ReentrantLock> JVM_LOCKS = new ConcurrentHashMap<String, ReentrantLock>();
+
+    /**
+     * Local repository directory.
+     */
+    private final File m_localRepository;
+    /**
+     * Index file. Null if the index is not persisted.
+     */
+    private final File m_file;
+    /**
+     * File locked while the index file is written. Null if the index is not persisted.
+     */
+    private final File m_lockFile;
+    /**
+     * Entries by artifact key (see {@link ArtifactCache#key}). Guarded by this.
+     */
+    private final Map<String, Entry> m_entries;
+
+    /**
+     * Creates the index of a local repository, loading the persisted entries.
+     *
+     * @param localRepository local repository directory; can be null, in which case nothing is indexed
+     */
+    LocalRepositoryIndex( final File localRepository )
+    {
+        m_localRepository = localRepository;
+        m_file = localRepository == null ? null : new File( localRepository, FILE_NAME );
+        m_lockFile = localRepository == null ? null : new File( localRepository, LOCK_FILE_NAME );
+        m_entries = new HashMap<String, Entry>();
+        load();
+    }
+
+    /**
+     * Returns true if artifacts of the version can be indexed.
+     *
+     * @param version artifact version
+     *
+     * @return true for released versions
+     */
+    static boolean isIndexed( final String version )
+    {
+        return version != null
+               && !version.endsWith( "SNAPSHOT" )
+               && !version.equals( VERSION_LATEST )
+               && version.indexOf( '[' ) < 0 && version.indexOf( '(' ) < 0 && version.indexOf( ',' ) < 0;
+    }
+
+    /**
+     * Returns true if resolutions of the version are recorded in the journal.
+     *
+     * @param version requested version
+     *
+     * @return true for released, SNAPSHOT and LATEST versions
+     */
+    static boolean isJournaled( final String version )
+    {
+        return isIndexed( version )
+               || ( version != null && ( version.endsWith( "SNAPSHOT" ) || version.equals( VERSION_LATEST ) ) );
+    }
+
+    /**
+     * Looks up an artifact. The entry is only returned if the file is still there with the same size and, if known,
+     * the same last modification time.
+     *
+     * @param key artifact key
+     *
+     * @return artifact file or null if the artifact is not indexed or its file changed
+     */
+    File find( final String key )
+    {
+        final Entry entry;
+        synchronized( this ) {
+            entry = m_entries.get( key );
+        }
+        if( entry == null ) {
+            return null;
+        }
+        final File file = new File( m_localRepository, entry.m_path );
+        if( file.length() != entry.m_length
+            || ( entry.m_lastModified != 0 && file.lastModified() != entry.m_lastModified ) ) {
+            synchronized( this ) {
+                m_entries.remove( key );
+            }
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * Adds an artifact to the index.
+     *
+     * @param key          artifact key
+     * @param file         artifact file; ignored if not inside the local repository
+     * @param repositoryId id of the repository the artifact comes from; can be null
+     */
+    void add( final String key, final File file, final String repositoryId )
+    {
+        add( key, null, file, repositoryId, 0 );
+    }
+
+    /**
+     * Records a resolution with the time the remote repositories were last checked for it. A record that neither
+     * changes the resolution nor has a later check is ignored, so resolutions served from a cache do not renew it.
+     *
+     * @param key          artifact key, with the requested version
+     * @param version      resolved version; null if the same as the requested one
+     * @param file         artifact file; ignored if not inside the local repository
+     * @param repositoryId id of the repository the artifact comes from; can be null
+     * @param checked      time the remote repositories were last checked; 0 if unknown
+     */
+    void add( final String key, final String version, final File file, final String repositoryId,
+              final long checked )
+    {
+        if( m_file == null ) {
+            return;
+        }
+        final String path = relativePath( file );
+        if( path == null ) {
+            return;
+        }
+        final Entry entry = new Entry(
+            path, repositoryId == null ? "" : repositoryId, file.length(), version == null ? "" : version,
+            file.lastModified(), checked
+        );
+        synchronized( this ) {
+            final Entry previous = m_entries.get( key );
+            if( entry.equals( previous ) && checked <= previous.m_checked ) {
+                return;
+            }
+            if( entry.equals( previous ) && entry.m_checked - previous.m_recorded < CHECK_RECORD_INTERVAL ) {
+                // the time of the check is recorded later; until then a restart checks a bit earlier than needed
+                m_entries.put( key, new Entry( entry, previous.m_recorded ) );
+                return;
+            }
+            m_entries.put( key, entry );
+        }
+        // written without holding this, so lookups do not wait for the disk or for other processes
+        append( key, entry );
+    }
+
+    /**
+     * Returns the id of the repository an indexed artifact comes from.
+     *
+     * @param key artifact key
+     *
+     * @return repository id or null if artifact is not indexed or origin is unknown
+     */
+    synchronized String getRepositoryId( final String key )
+    {
+        final Entry entry = m_entries.get( key );
+        return entry == null || entry.m_repositoryId.length() == 0 ? null : entry.m_repositoryId;
+    }
+
+    /**
+     * Returns the version a recorded resolution resolved to.
+     *
+     * @param key artifact key
+     *
+     * @return resolved version or null if not recorded or the same as the requested one
+     */
+    synchronized String getVersion( final String key )
+    {
+        final Entry entry = m_entries.get( key );
+        return entry == null || entry.m_version.length() == 0 ? null : entry.m_version;
+    }
+
+    /**
+     * Returns the time the remote repositories were last checked for a recorded resolution.
+     *
+     * @param key artifact key
+     *
+     * @return time of last check; 0 if not recorded
+     */
+    synchronized long getLastCheck( final String key )
+    {
+        final Entry entry = m_entries.get( key );
+        return entry == null ? 0 : entry.m_checked;
+    }
+
+    private String relativePath( final File file )
+    {
+        final String repository = m_localRepository.getAbsolutePath() + File.separator;
+        final String path = file.getAbsolutePath();
+        if( !path.startsWith( repository ) ) {
+            return null;
+        }
+        return path.substring( repository.length() );
+    }
+
+    /**
+     * Appends one record, in one write and holding the index lock, so records of processes sharing the local
+     * repository neither interleave nor get lost by a concurrent compaction. Called without holding this; the record
+     * is skipped if the entry was replaced by a newer one in the meantime, so records of a key stay in order.
+     */
+    private void append( final String key, final Entry entry )
+    {
+        if( !m_localRepository.isDirectory() ) {
+            return;
+        }
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream data = new DataOutputStream( bytes );
+            write( data, key, entry );
+            data.flush();
+            final IndexLock lock = lock();
+            try {
+                synchronized( this ) {
+                    if( !entry.equals( m_entries.get( key ) ) ) {
+                        // replaced meanwhile by another resolution, which appends its own record after this one
+                        return;
+                    }
+                }
+                final OutputStream out = new FileOutputStream( m_file, true );
+                try {
+                    out.write( bytes.toByteArray() );
+                } finally {
+                    out.close();
+                }
+            } finally {
+                lock.release();
+            }
+        } catch( IOException e ) {
+            LOG.warn( "Could not add " + key + " to local repository index " + m_file, e );
+        }
+    }
+
+    /**
+     * Loads the persisted records, compacting the file if it holds many stale records.
+     */
+    private synchronized void load()
+    {
+        if( m_file == null ) {
+            return;
+        }
+        if( needsCompaction( read() ) ) {
+            compact();
+        }
+    }
+
+    private boolean needsCompaction( final int records )
+    {
+        return records > 2 * m_entries.size() + 100;
+    }
+
+    /**
+     * Reads the persisted records. A truncated last record (from a crash while writing) is ignored.
+     *
+     * @return number of records read; {@link Integer#MAX_VALUE} if the file cannot be read and must be rebuilt
+     */
+    private int read()
+    {
+        int records = 0;
+        try {
+            final DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( m_file ) ) );
+            try {
+                while( true ) {
+                    final int format = in.readInt();
+                    if( format != FORMAT && format != FORMAT_1 ) {
+                        LOG.info( "Local repository index " + m_file + " has an unknown format and will be rebuilt" );
+                        m_entries.clear();
+                        records = Integer.MAX_VALUE;
+                        break;
+                    }
+                    final String key = in.readUTF();
+                    final Entry entry = format == FORMAT_1
+                                        ? new Entry( in.readUTF(), in.readUTF(), in.readLong(), "", 0, 0 )
+                                        : new Entry( in.readUTF(), in.readUTF(), in.readLong(), in.readUTF(),
+                                                     in.readLong(), in.readLong()
+                                        );
+                    m_entries.put( key, entry );
+                    records++;
+                }
+            } finally {
+                in.close();
+            }
+        } catch( FileNotFoundException ignore ) {
+            return 0;
+        } catch( EOFException ignore ) {
+            // end of index
+        } catch( IOException e ) {
+            LOG.warn( "Could not read local repository index " + m_file + ". It will be rebuilt", e );
+            records = Integer.MAX_VALUE;
+        }
+        return records;
+    }
+
+    /**
+     * Rewrites the index with the current entries only. The records are read again under the lock, so records
+     * appended by other processes since the index was loaded are kept; if another process compacted the index in the
+     * meantime, nothing is written.
+     */
+    private void compact()
+    {
+        if( !m_localRepository.isDirectory() ) {
+            return;
+        }
+        File tmp = null;
+        try {
+            final IndexLock lock = lock();
+            try {
+                m_entries.clear();
+                if( !needsCompaction( read() ) ) {
+                    return;
+                }
+                // a unique name, so a process that crashed while compacting does not get in the way
+                tmp = File.createTempFile( m_file.getName(), ".tmp", m_file.getParentFile() );
+                final DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tmp ) ) );
+                try {
+                    for( Map.Entry<String, Entry> entry : m_entries.entrySet() ) {
+                        write( out, entry.getKey(), entry.getValue() );
+                    }
+                } finally {
+                    out.close();
+                }
+                if( !tmp.renameTo( m_file ) ) {
+                    // the index cannot be replaced (e.g. on Windows); rewrite it in place, as the lock is held
+                    copy( tmp, m_file );
+                }
+            } finally {
+                lock.release();
+            }
+        } catch( IOException e ) {
+            LOG.warn( "Could not compact local repository index " + m_file, e );
+        } finally {
+            if( tmp != null ) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * Locks the index against writes of other threads and processes.
+     *
+     * @return acquired lock, to be released once the index is written
+     *
+     * @throws IOException if the lock file cannot be locked
+     */
+    private IndexLock lock()
+        throws IOException
+    {
+        final String path = m_lockFile.getAbsolutePath();
+        ReentrantLock jvmLock = JVM_LOCKS.get( path );
+        if( jvmLock == null ) {
+            final ReentrantLock created = new ReentrantLock();
+            jvmLock = JVM_LOCKS.putIfAbsent( path, created );
+            if( jvmLock == null ) {
+                jvmLock = created;
+            }
+        }
+        jvmLock.lock();
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile( m_lockFile, "rw" );
+            file.getChannel().lock();
+            return new IndexLock( jvmLock, file );
+        } catch( IOException e ) {
+            if( file != null ) {
+                file.close();
+            }
+            jvmLock.unlock();
+            throw e;
+        }
+    }
+
+    private static void copy( final File from, final File to )
+        throws IOException
+    {
+        final InputStream in = new FileInputStream( from );
+        try {
+            final OutputStream out = new FileOutputStream( to );
+            try {
+                final byte[] buffer = new byte[8192];
+                int read;
+                while( ( read = in.read( buffer ) ) >= 0 ) {
+                    out.write( buffer, 0, read );
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void write( final DataOutputStream out, final String key, final Entry entry )
+        throws IOException
+    {
+        out.writeInt( FORMAT );
+        out.writeUTF( key );
+        out.writeUTF( entry.m_path );
+        out.writeUTF( entry.m_repositoryId );
+        out.writeLong( entry.m_length );
+        out.writeUTF( entry.m_version );
+        out.writeLong( entry.m_lastModified );
+        out.writeLong( entry.m_checked );
+    }
+
+    /**
+     * Lock on the index, held in this JVM and on the lock file.
+     */
+    private static class IndexLock
+    {
+
+        private final ReentrantLock m_jvmLock;
+        private final RandomAccessFile m_file;
+
+        IndexLock( final ReentrantLock jvmLock, final RandomAccessFile file )
+        {
+            m_jvmLock = jvmLock;
+            m_file = file;
+        }
+
+        void release()
+        {
+            try {
+                // closing the file releases the lock as well
+                m_file.close();
+            } catch( IOException e ) {
+                LOG.warn( "Could not release lock on local repository index", e );
+            } finally {
+                m_jvmLock.unlock();
+            }
+        }
+
+    }
+
+    /**
+     * Indexed artifact.
+     */
+    private static class Entry
+    {
+
+        /**
+         * Path relative to local repository.
+         */
+        private final String m_path;
+        /**
+         * Origin repository id; empty if unknown.
+         */
+        private final String m_repositoryId;
+        /**
+         * File length when indexed.
+         */
+        private final long m_length;
+        /**
+         * Resolved version; empty if the same as the requested one.
+         */
+        private final String m_version;
+        /**
+         * File last modification time when indexed; 0 if unknown.
+         */
+        private final long m_lastModified;
+        /**
+         * Time the remote repositories were checked; 0 if unknown.
+         */
+        private final long m_checked;
+        /**
+         * Time of the check in the last record of the artifact written to the index file.
+         */
+        private final long m_recorded;
+
+        Entry( final String path, final String repositoryId, final long length, final String version,
+               final long lastModified, final long checked )
+        {
+            m_path = path;
+            m_repositoryId = repositoryId;
+            m_length = length;
+            m_version = version;
+            m_lastModified = lastModified;
+            m_checked = checked;
+            m_recorded = checked;
+        }
+
+        Entry( final Entry entry, final long recorded )
+        {
+            m_path = entry.m_path;
+            m_repositoryId = entry.m_repositoryId;
+            m_length = entry.m_length;
+            m_version = entry.m_version;
+            m_lastModified = entry.m_lastModified;
+            m_checked = entry.m_checked;
+            m_recorded = recorded;
+        }
+
+        /**
+         * Compares the indexed artifacts, not the time they were checked.
+         */
+        @Override
+        public boolean equals( final Object o )
+        {
+            if( !( o instanceof Entry ) ) {
+                return false;
+            }
+            final Entry entry = (Entry) o;
+            return m_path.equals( entry.m_path )
+                   && m_repositoryId.equals( entry.m_repositoryId )
+                   && m_length == entry.m_length
+                   && m_version.equals( entry.m_version )
+                   && m_lastModified == entry.m_lastModified;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return m_path.hashCode();
+        }
+
+    }
+
+}
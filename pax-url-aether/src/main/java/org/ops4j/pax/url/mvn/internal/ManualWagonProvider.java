@@ -15,28 +15,96 @@
  */
 package org.ops4j.pax.url.mvn.internal;
 
-import java.io.File;
-import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-import org.apache.maven.wagon.ConnectionException;
-import org.apache.maven.wagon.InputData;
-import org.apache.maven.wagon.ResourceDoesNotExistException;
-import org.apache.maven.wagon.TransferFailedException;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 import org.apache.maven.wagon.Wagon;
-import org.apache.maven.wagon.authentication.AuthenticationException;
-import org.apache.maven.wagon.authorization.AuthorizationException;
 import org.apache.maven.wagon.providers.file.FileWagon;
-import org.apache.maven.wagon.providers.http.LightweightHttpWagon;
-import org.apache.maven.wagon.providers.http.LightweightHttpsWagon;
 import org.sonatype.aether.connector.wagon.WagonProvider;
 
 /**
- * Simplistic wagon provider
+ * Simplistic wagon provider.<br/>
+ * Http(s) wagons share one pooled http client, so connections to repository hosts are kept alive between transfers.
  */
 public class ManualWagonProvider
     implements WagonProvider
 {
 
+    /**
+     * Connection pool shared by all http(s) wagons.
+     */
+    private final MultiThreadedHttpConnectionManager m_connectionManager;
+    /**
+     * Client shared by all http(s) wagons.
+     */
+    private final HttpClient m_client;
+    /**
+     * Downloads followed by readers while in progress.
+     */
+    private final DownloadTaps m_taps;
+    /**
+     * Health of the repositories accessed by http(s) wagons.
+     */
+    private final RepositoryHealth m_health;
+    /**
+     * Scheduler limiting the downloads per host and the download rate of http(s) wagons.
+     */
+    private final TransferScheduler m_scheduler;
+    /**
+     * Size from which artifacts are downloaded in parallel ranges; 0 if disabled.
+     */
+    private final long m_rangeThreshold;
+    /**
+     * Number of ranges downloaded in parallel.
+     */
+    private final int m_rangeParts;
+    /**
+     * Executor downloading ranges in parallel. Null if parallel downloads are disabled.
+     */
+    private final ExecutorService m_rangeExecutor;
+
+    /**
+     * Creates a provider whose http(s) wagons report the health of the repositories they access, are scheduled and
+     * can download large artifacts in parallel ranges.
+     *
+     * @param maxConnectionsPerHost maximum number of connections kept open to one host
+     * @param maxConnections        maximum number of connections kept open to all hosts
+     * @param connectTimeout        connect timeout in milliseconds (0 = no timeout)
+     * @param readTimeout           read timeout in milliseconds (0 = no timeout)
+     * @param health                repository health tracker
+     * @param scheduler             scheduler limiting the downloads per host and the download rate
+     * @param rangeThreshold        size in bytes from which artifacts are downloaded in parallel ranges; 0 disables
+     * @param rangeParts            number of ranges downloaded in parallel
+     */
+    ManualWagonProvider( final int maxConnectionsPerHost, final int maxConnections, final int connectTimeout,
+                         final int readTimeout, final RepositoryHealth health, final TransferScheduler scheduler,
+                         final long rangeThreshold, final int rangeParts )
+    {
+        m_connectionManager = new MultiThreadedHttpConnectionManager();
+        final HttpConnectionManagerParams params = m_connectionManager.getParams();
+        params.setDefaultMaxConnectionsPerHost( Math.max( 1, maxConnectionsPerHost ) );
+        params.setMaxTotalConnections( Math.max( 1, maxConnections ) );
+        params.setConnectionTimeout( Math.max( 0, connectTimeout ) );
+        params.setSoTimeout( Math.max( 0, readTimeout ) );
+        params.setStaleCheckingEnabled( true );
+        m_client = new HttpClient( m_connectionManager );
+        m_taps = new DownloadTaps();
+        m_health = health;
+        m_scheduler = scheduler;
+        m_rangeParts = rangeParts;
+        if( rangeThreshold > 0 && rangeParts > 1 ) {
+            m_rangeThreshold = rangeThreshold;
+            m_rangeExecutor = Executors.newCachedThreadPool( new ResolverThreadFactory( "pax-url-mvn-range-" ) );
+        }
+        else {
+            m_rangeThreshold = 0;
+            m_rangeExecutor = null;
+        }
+    }
+
     public Wagon lookup( String roleHint )
         throws Exception
     {
@@ -46,69 +114,75 @@ public class ManualWagonProvider
         }
         else if( "http".equals( roleHint ) )
         {
-            return new LightweightHttpWagon();
-        }else if( "https".equals( roleHint ) )
+            return newHttpWagon( false );
+        }
+        else if( "https".equals( roleHint ) )
         {
-            
-			return new LightweightHttpsWagon() {
-
-				/** 
-				 * construct equivalent of
-				 *  
-				 * @plexus.configuration 
-				 * private Properties httpHeaders;
-				 * 
-				 * which is injected from settings.xml during normal maven invocation 
-				 *
-						<server>
-							<id>server-id</id>
-							<configuration>
-								<httpHeaders>
-									<property>
-										<name>User-Agent</name>
-										<value>magic-value</value>
-									</property>
-								</httpHeaders>
-							</configuration>
-						</server>
-				 * 
-				 * which is one way for AWS S3 https authentication via "aws:UserAgent"
-				 * http://docs.amazonwebservices.com/AmazonS3/latest/dev/UsingIAMPolicies.html#AmazonS3PolicyKeys
-				 * 
-				 * see sample AWS S3 policy in 
-				 * /pax-url-aether/src/test/resources/amazon/s3-example-policy-with-user-agent.json
-				 * 
-				 */
-				@Override
-				public void fillInputData(final InputData inputData) throws 
-						TransferFailedException,
-						ResourceDoesNotExistException, 
-						AuthorizationException {
+            /**
+             * https wagons also send the repository credentials as an http header (user name = header name,
+             * password = header value), as the equivalent of
+             *
+             * @plexus.configuration
+             * private Properties httpHeaders;
+             *
+             * which is injected from settings.xml during normal maven invocation
+             *
+                    <server>
+                        <id>server-id</id>
+                        <configuration>
+                            <httpHeaders>
+                                <property>
+                                    <name>User-Agent</name>
+                                    <value>magic-value</value>
+                                </property>
+                            </httpHeaders>
+                        </configuration>
+                    </server>
+             *
+             * which is one way for AWS S3 https authentication via "aws:UserAgent"
+             * http://docs.amazonwebservices.com/AmazonS3/latest/dev/UsingIAMPolicies.html#AmazonS3PolicyKeys
+             *
+             * see sample AWS S3 policy in
+             * /pax-url-aether/src/test/resources/amazon/s3-example-policy-with-user-agent.json
+             */
+            return newHttpWagon( true );
+        }
 
-					final String username = getRepository().getUsername();
-					final String password = getRepository().getPassword();
+        return null;
 
-//					System.err.println("### username : " + username);
-//					System.err.println("### password : " + password);
+    }
 
-					if(username != null && password != null) {
-						getHttpHeaders().put(username, password);
-					}
-					
-					super.fillInputData(inputData);
+    private Wagon newHttpWagon( final boolean credentialsAsHeader )
+    {
+        return new PooledHttpWagon(
+            m_client, credentialsAsHeader, m_taps, m_health, m_scheduler, m_rangeThreshold, m_rangeParts,
+            m_rangeExecutor
+        );
+    }
 
-				}
+    public void release( Wagon wagon )
+    {
+    }
 
-			};
-        	
-        }
-        
-        return null;
-        
+    /**
+     * Returns the registry of downloads followed while in progress by http(s) wagons.
+     *
+     * @return download taps
+     */
+    DownloadTaps getDownloadTaps()
+    {
+        return m_taps;
     }
 
-    public void release( Wagon wagon )
+    /**
+     * Closes all pooled connections. Wagons must not be used afterwards.
+     */
+    public void shutdown()
     {
+        if( m_rangeExecutor != null ) {
+            m_rangeExecutor.shutdownNow();
+        }
+        m_connectionManager.shutdown();
     }
 
 }
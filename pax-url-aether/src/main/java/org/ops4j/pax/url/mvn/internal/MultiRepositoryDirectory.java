@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.ops4j.pax.url.maven.commons.MavenRepositoryURL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonatype.aether.repository.RemoteRepository;
+
+/**
+ * Repositories found in the sub directories of a directory marked with @multi.<br/>
+ * The sub directories are listed once and listed again only when the directory changes (sub directories added or
+ * removed change its modification time). The directory is checked at most once per refresh interval.
+ */
+class MultiRepositoryDirectory
+{
+
+    private static final Logger LOG = LoggerFactory.getLogger( MultiRepositoryDirectory.class );
+
+    /**
+     * Minimum time between two checks of the directory.
+     */
+    static final long REFRESH_INTERVAL = 1000;
+    /**
+     * Modification times are only precise to a few seconds on some file systems, so a directory modified that
+     * recently is listed again even if its modification time did not change.
+     */
+    private static final long TIMESTAMP_PRECISION = 2000;
+
+    private final File m_dir;
+    private final String m_type;
+    /**
+     * Repositories found in the sub directories. Guarded by this.
+     */
+    private List<RemoteRepository> m_repositories;
+    /**
+     * Modification time of the directory when listed. Guarded by this.
+     */
+    private long m_lastModified;
+    /**
+     * Time of last check. Guarded by this.
+     */
+    private long m_lastChecked;
+
+    /**
+     * Creates a new @multi directory.
+     *
+     * @param dir  directory containing repositories
+     * @param type repository (content) type
+     */
+    MultiRepositoryDirectory( final File dir, final String type )
+    {
+        m_dir = dir;
+        m_type = type;
+    }
+
+    /**
+     * Returns the repositories found in the sub directories.
+     *
+     * @return unmodifiable list of repositories, empty if the directory does not exist
+     */
+    synchronized List<RemoteRepository> getRepositories()
+    {
+        final long now = System.currentTimeMillis();
+        if( m_repositories != null && now - m_lastChecked < REFRESH_INTERVAL ) {
+            return m_repositories;
+        }
+        m_lastChecked = now;
+        final long lastModified = m_dir.lastModified();
+        if( m_repositories == null
+            || lastModified != m_lastModified
+            || now - lastModified < TIMESTAMP_PRECISION ) {
+            m_repositories = list();
+            m_lastModified = lastModified;
+        }
+        return m_repositories;
+    }
+
+    private List<RemoteRepository> list()
+    {
+        final File[] files = m_dir.listFiles();
+        if( files == null ) {
+            LOG.debug( "Repository marked with @multi does not resolve to a directory: " + m_dir );
+            return Collections.emptyList();
+        }
+        // keep a stable order, listFiles() does not guarantee any
+        Arrays.sort( files );
+        final List<RemoteRepository> repositories = new ArrayList<RemoteRepository>( files.length );
+        for( File repo : files ) {
+            if( repo.isDirectory() ) {
+                try {
+                    String repoURI = repo.toURI().toString() + "@id=" + repo.getName();
+                    LOG.debug( "Adding repo from inside multi dir: " + repoURI );
+                    final MavenRepositoryURL repoUrl = new MavenRepositoryURL( repoURI );
+                    repositories.add(
+                        new RemoteRepository( repoUrl.getId(), m_type, repoUrl.getURL().toExternalForm() )
+                    );
+                } catch( MalformedURLException e ) {
+                    LOG.error( "Error resolving repo url of a multi repo " + repo.toURI() );
+                }
+            }
+        }
+        return Collections.unmodifiableList( repositories );
+    }
+
+}
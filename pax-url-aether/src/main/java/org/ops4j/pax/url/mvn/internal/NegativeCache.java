@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonatype.aether.artifact.Artifact;
+import org.sonatype.aether.repository.RemoteRepository;
+import org.sonatype.aether.transfer.ArtifactNotFoundException;
+
+/**
+ * Remembers which artifacts were not found in which remote repositories, so those repositories are not asked again
+ * for the same artifact until the entry expires.<br/>
+ * Entries are persisted in a properties file in the local repository, so they survive restarts. The file is written
+ * at most once per {@link #STORE_INTERVAL}, outside the lock lookups use, and on {@link #flush()}.
+ * File based repositories are never cached as a lookup in them is cheap.
+ */
+class NegativeCache
+{
+
+    private static final Logger LOG = LoggerFactory.getLogger( NegativeCache.class );
+
+    /**
+     * Name of the file (inside local repository) entries are persisted to.
+     */
+    static final String FILE_NAME = ".pax-url-mvn-missing.properties";
+    /**
+     * Minimum time in milliseconds between two writes of the file.
+     */
+    static final long STORE_INTERVAL = 5000;
+
+    /**
+     * Time to live of entries in milliseconds.
+     */
+    private final long m_ttl;
+    /**
+     * File entries are persisted to. Null if entries should not be persisted.
+     */
+    private final File m_file;
+    /**
+     * Map of "repository id|artifact" to expiry time. Guarded by this.
+     */
+    private final Map<String, Long> m_entries;
+    /**
+     * True if entries changed since they were last written. Guarded by this.
+     */
+    private boolean m_dirty;
+    /**
+     * Last time entries were written. Guarded by this.
+     */
+    private long m_lastStore;
+    /**
+     * Serializes writes of the file, which are done without holding this.
+     */
+    private final Object m_storeLock = new Object();
+
+    /**
+     * Creates a new cache, loading the previously persisted entries.
+     *
+     * @param ttl             time to live of entries in milliseconds; 0 or less disables the cache
+     * @param localRepository local repository directory; can be null, in which case entries are not persisted
+     */
+    NegativeCache( final long ttl, final File localRepository )
+    {
+        m_ttl = ttl;
+        m_file = localRepository == null ? null : new File( localRepository, FILE_NAME );
+        m_entries = new HashMap<String, Long>();
+        if( m_ttl > 0 ) {
+            load();
+        }
+    }
+
+    /**
+     * Returns the repositories that are not known to miss the artifact.
+     *
+     * @param repositories candidate repositories
+     * @param artifact     artifact to be resolved
+     *
+     * @return repositories to be asked for the artifact
+     */
+    List<RemoteRepository> filter( final List<RemoteRepository> repositories, final Artifact artifact )
+    {
+        if( m_ttl <= 0 ) {
+            return repositories;
+        }
+        final long now = System.currentTimeMillis();
+        // the list is only copied if a repository has to be skipped
+        List<RemoteRepository> filtered = null;
+        synchronized( this ) {
+            for( int i = 0; i < repositories.size(); i++ ) {
+                final RemoteRepository repository = repositories.get( i );
+                final String key = key( repository, artifact );
+                Long expires = m_entries.get( key );
+                if( expires != null && expires <= now ) {
+                    // expired entries are dropped as they are met
+                    m_entries.remove( key );
+                    expires = null;
+                }
+                if( expires != null ) {
+                    LOG.debug( "Skipping repository {} for {} (known to be missing)", repository.getId(), artifact );
+                    if( filtered == null ) {
+                        filtered = new ArrayList<RemoteRepository>( repositories.subList( 0, i ) );
+                    }
+                }
+                else if( filtered != null ) {
+                    filtered.add( repository );
+                }
+            }
+        }
+        return filtered == null ? repositories : filtered;
+    }
+
+    /**
+     * Records the repositories that reported the artifact as not found.
+     *
+     * @param exceptions exceptions collected while resolving an artifact
+     */
+    void record( final List<Exception> exceptions )
+    {
+        if( m_ttl <= 0 || exceptions == null || exceptions.isEmpty() ) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        final Long expires = now + m_ttl;
+        boolean changed = false;
+        final boolean store;
+        synchronized( this ) {
+            for( Exception exception : exceptions ) {
+                if( exception instanceof ArtifactNotFoundException ) {
+                    final ArtifactNotFoundException notFound = (ArtifactNotFoundException) exception;
+                    if( notFound.getRepository() != null && !isFileRepository( notFound.getRepository() ) ) {
+                        m_entries.put( key( notFound.getRepository(), notFound.getArtifact() ), expires );
+                        changed = true;
+                    }
+                }
+            }
+            m_dirty |= changed;
+            store = changed && now - m_lastStore >= STORE_INTERVAL;
+        }
+        if( store ) {
+            flush();
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    void clear()
+    {
+        synchronized( this ) {
+            m_entries.clear();
+            m_dirty = true;
+        }
+        flush();
+    }
+
+    /**
+     * Writes the entries if they changed since they were last written.
+     */
+    void flush()
+    {
+        if( m_file == null ) {
+            return;
+        }
+        synchronized( m_storeLock ) {
+            final Properties properties;
+            synchronized( this ) {
+                if( !m_dirty ) {
+                    return;
+                }
+                properties = snapshot();
+                m_dirty = false;
+                m_lastStore = System.currentTimeMillis();
+            }
+            store( properties );
+        }
+    }
+
+    private static boolean isFileRepository( final RemoteRepository repository )
+    {
+        return repository.getUrl() != null && repository.getUrl().startsWith( "file:" );
+    }
+
+    private static String key( final RemoteRepository repository, final Artifact artifact )
+    {
+        return repository.getId() + "|" + ArtifactCache.key(
+            artifact.getGroupId(), artifact.getArtifactId(), artifact.getClassifier(), artifact.getExtension(),
+            artifact.getVersion()
+        );
+    }
+
+    /**
+     * Loads persisted entries, skipping expired ones.
+     */
+    private synchronized void load()
+    {
+        if( m_file == null ) {
+            return;
+        }
+        final Properties properties = new Properties();
+        try {
+            final InputStream in = new FileInputStream( m_file );
+            try {
+                properties.load( in );
+            } finally {
+                in.close();
+            }
+        } catch( FileNotFoundException ignore ) {
+            return;
+        } catch( IOException e ) {
+            LOG.warn( "Could not read missing artifacts from " + m_file, e );
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        for( String key : properties.stringPropertyNames() ) {
+            try {
+                final Long expires = Long.valueOf( properties.getProperty( key ) );
+                if( expires > now ) {
+                    m_entries.put( key, expires );
+                }
+            } catch( NumberFormatException ignore ) {
+                // skip corrupted entry
+            }
+        }
+    }
+
+    /**
+     * Removes expired entries and returns the remaining ones. Must be called holding this.
+     */
+    private Properties snapshot()
+    {
+        final long now = System.currentTimeMillis();
+        final Properties properties = new Properties();
+        for( Iterator<Map.Entry<String, Long>> it = m_entries.entrySet().iterator(); it.hasNext(); ) {
+            final Map.Entry<String, Long> entry = it.next();
+            if( entry.getValue() > now ) {
+                properties.setProperty( entry.getKey(), entry.getValue().toString() );
+            }
+            else {
+                it.remove();
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Persists entries. Entries are written to a temporary file that replaces the previous one.
+     * Must be called holding {@link #m_storeLock}.
+     */
+    private void store( final Properties properties )
+    {
+        if( !m_file.getParentFile().isDirectory() ) {
+            return;
+        }
+        final File tmp = new File( m_file.getParentFile(), m_file.getName() + ".tmp" );
+        try {
+            final OutputStream out = new FileOutputStream( tmp );
+            try {
+                properties.store( out, "Artifacts missing from remote repositories (expiry time)" );
+            } finally {
+                out.close();
+            }
+            if( !tmp.renameTo( m_file ) ) {
+                m_file.delete();
+                if( !tmp.renameTo( m_file ) ) {
+                    LOG.warn( "Could not write missing artifacts to " + m_file );
+                }
+            }
+        } catch( IOException e ) {
+            LOG.warn( "Could not write missing artifacts to " + m_file, e );
+        }
+    }
+
+}
@@ -0,0 +1,1056 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.Authenticator;
+import java.net.InetSocketAddress;
+import java.net.PasswordAuthentication;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.httpclient.Credentials;
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpMethodBase;
+import org.apache.commons.httpclient.HttpState;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.NTCredentials;
+import org.apache.commons.httpclient.UsernamePasswordCredentials;
+import org.apache.commons.httpclient.auth.AuthScheme;
+import org.apache.commons.httpclient.auth.AuthScope;
+import org.apache.commons.httpclient.auth.CredentialsNotAvailableException;
+import org.apache.commons.httpclient.auth.CredentialsProvider;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.methods.HeadMethod;
+import org.apache.commons.httpclient.util.DateParseException;
+import org.apache.commons.httpclient.util.DateUtil;
+import org.apache.maven.wagon.ConnectionException;
+import org.apache.maven.wagon.InputData;
+import org.apache.maven.wagon.OutputData;
+import org.apache.maven.wagon.ResourceDoesNotExistException;
+import org.apache.maven.wagon.StreamWagon;
+import org.apache.maven.wagon.TransferFailedException;
+import org.apache.maven.wagon.authentication.AuthenticationInfo;
+import org.apache.maven.wagon.authorization.AuthorizationException;
+import org.apache.maven.wagon.events.TransferEvent;
+import org.apache.maven.wagon.proxy.ProxyInfo;
+import org.apache.maven.wagon.resource.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read only http(s) wagon that executes requests with a shared {@link HttpClient}, so connections (and their TLS
+ * sessions) are kept alive and reused across wagons instead of being opened for every transfer.<br/>
+ * Wagons are cheap and not thread safe; the client they share is thread safe and owned by the wagon provider.<br/>
+ * Artifacts are downloaded to a .part file next to their destination and moved in place once complete. A download
+ * that is interrupted leaves its .part file behind, and the next download of the artifact resumes it with a range
+ * request. Large artifacts can also be downloaded as several ranges in parallel, if the server accepts ranges.
+ * Range requests carry an If-Range validator (the ETag or the last modification time of the first response, stored
+ * next to the .part file), so content of two versions of a resource is never mixed. SNAPSHOT artifacts and
+ * downloads without validator are never resumed.<br/>
+ * Without a proxy in the settings, the proxy of the JVM (http(s).proxyHost, http.nonProxyHosts or a custom
+ * {@link java.net.ProxySelector}) is used, and credentials missing from the settings are asked from the default
+ * {@link Authenticator}, as they would be for an {@link java.net.HttpURLConnection}.
+ */
+class PooledHttpWagon
+    extends StreamWagon
+{
+
+    private static final Logger LOG = LoggerFactory.getLogger( PooledHttpWagon.class );
+
+    /**
+     * Suffix of the file an artifact is downloaded to before being moved to its destination.
+     */
+    static final String PART_SUFFIX = ".part";
+    /**
+     * Suffix of the file (next to the .part file) holding the validator of the content in the .part file.
+     */
+    static final String VALIDATOR_SUFFIX = ".validator";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Discards what is written; used to report content already downloaded as transfer progress.
+     */
+    private static final OutputStream NULL_OUTPUT = new OutputStream()
+    {
+        @Override
+        public void write( final int b )
+        {
+        }
+
+        @Override
+        public void write( final byte[] b, final int off, final int len )
+        {
+        }
+    };
+
+    /**
+     * Asks the default {@link Authenticator} for the credentials of a server or proxy challenging a request.
+     */
+    private static final CredentialsProvider AUTHENTICATOR = new CredentialsProvider()
+    {
+        public Credentials getCredentials( final AuthScheme scheme, final String host, final int port,
+                                           final boolean proxy )
+            throws CredentialsNotAvailableException
+        {
+            final PasswordAuthentication authentication = Authenticator.requestPasswordAuthentication(
+                host, null, port, "http", scheme.getRealm(), scheme.getSchemeName(), null,
+                proxy ? Authenticator.RequestorType.PROXY : Authenticator.RequestorType.SERVER
+            );
+            if( authentication == null ) {
+                throw new CredentialsNotAvailableException( "No credentials for " + host + ":" + port );
+            }
+            return new UsernamePasswordCredentials(
+                authentication.getUserName(), new String( authentication.getPassword() )
+            );
+        }
+    };
+
+    /**
+     * Shared client, backed by a pooling connection manager.
+     */
+    private final HttpClient m_client;
+    /**
+     * True if repository credentials should also be sent as an http header (name = user, value = password), besides
+     * being used to answer http authentication challenges.
+     */
+    private final boolean m_credentialsAsHeader;
+    /**
+     * Downloads followed by readers while in progress.
+     */
+    private final DownloadTaps m_taps;
+    /**
+     * Tracker the latency and failures of requests are reported to.
+     */
+    private final RepositoryHealth m_health;
+    /**
+     * Scheduler limiting the downloads per host and the download rate.
+     */
+    private final TransferScheduler m_scheduler;
+    /**
+     * Size from which artifacts are downloaded in parallel ranges; 0 if disabled.
+     */
+    private final long m_rangeThreshold;
+    /**
+     * Number of ranges downloaded in parallel.
+     */
+    private final int m_rangeParts;
+    /**
+     * Executor downloading ranges in parallel. Null if parallel downloads are disabled.
+     */
+    private final ExecutorService m_rangeExecutor;
+    /**
+     * Authentication state of this wagon. Set on connect.
+     */
+    private HttpState m_state;
+    /**
+     * Proxy used to reach the repository, if any. Set on connect.
+     */
+    private HostConfiguration m_hostConfiguration;
+
+    /**
+     * Creates a new wagon.
+     *
+     * @param client              shared http client
+     * @param credentialsAsHeader if repository credentials should also be sent as a header
+     * @param taps                downloads followed while in progress
+     * @param health              repository health tracker
+     * @param scheduler           scheduler limiting the downloads per host and the download rate
+     * @param rangeThreshold      size from which artifacts are downloaded in parallel ranges; 0 disables
+     * @param rangeParts          number of ranges downloaded in parallel
+     * @param rangeExecutor       executor downloading ranges; null if parallel downloads are disabled
+     */
+    PooledHttpWagon( final HttpClient client, final boolean credentialsAsHeader, final DownloadTaps taps,
+                     final RepositoryHealth health, final TransferScheduler scheduler, final long rangeThreshold,
+                     final int rangeParts, final ExecutorService rangeExecutor )
+    {
+        m_health = health;
+        m_scheduler = scheduler;
+        m_client = client;
+        m_credentialsAsHeader = credentialsAsHeader;
+        m_taps = taps;
+        m_rangeThreshold = rangeExecutor == null ? 0 : rangeThreshold;
+        m_rangeParts = rangeParts;
+        m_rangeExecutor = rangeExecutor;
+    }
+
+    @Override
+    protected void openConnectionInternal()
+    {
+        m_state = new HttpState();
+        m_hostConfiguration = new HostConfiguration();
+
+        final AuthenticationInfo authentication = getAuthenticationInfo();
+        if( authentication != null && authentication.getUserName() != null ) {
+            m_state.setCredentials(
+                AuthScope.ANY, new UsernamePasswordCredentials( authentication.getUserName(), authentication.getPassword() )
+            );
+        }
+
+        final ProxyInfo proxy = getProxyInfo( getRepository().getProtocol(), getRepository().getHost() );
+        if( proxy != null ) {
+            m_hostConfiguration.setProxy( proxy.getHost(), proxy.getPort() );
+            if( proxy.getUserName() != null ) {
+                if( proxy.getNtlmHost() != null || proxy.getNtlmDomain() != null ) {
+                    m_state.setProxyCredentials( AuthScope.ANY, new NTCredentials(
+                        proxy.getUserName(), proxy.getPassword(), proxy.getNtlmHost(), proxy.getNtlmDomain() )
+                    );
+                }
+                else {
+                    m_state.setProxyCredentials(
+                        AuthScope.ANY, new UsernamePasswordCredentials( proxy.getUserName(), proxy.getPassword() )
+                    );
+                }
+            }
+        }
+        else {
+            useSystemProxy();
+        }
+    }
+
+    /**
+     * Uses the first http proxy the default {@link java.net.ProxySelector} selects for the repository, which honours
+     * the proxy system properties of the JVM.
+     */
+    private void useSystemProxy()
+    {
+        final java.net.ProxySelector selector = java.net.ProxySelector.getDefault();
+        if( selector == null ) {
+            return;
+        }
+        final List<java.net.Proxy> proxies;
+        try {
+            proxies = selector.select( new URI( getRepository().getUrl().replace( " ", "%20" ) ) );
+        } catch( URISyntaxException e ) {
+            return;
+        } catch( IllegalArgumentException e ) {
+            return;
+        }
+        for( java.net.Proxy proxy : proxies ) {
+            if( proxy.type() == java.net.Proxy.Type.HTTP && proxy.address() instanceof InetSocketAddress ) {
+                final InetSocketAddress address = (InetSocketAddress) proxy.address();
+                LOG.debug( "Using system proxy {} for {}", address, getRepository().getUrl() );
+                m_hostConfiguration.setProxy( address.getHostName(), address.getPort() );
+                return;
+            }
+        }
+    }
+
+    /**
+     * Nothing to close: connections are returned to the shared pool as soon as each transfer ends.
+     */
+    @Override
+    public void closeConnection()
+        throws ConnectionException
+    {
+        m_state = null;
+        m_hostConfiguration = null;
+    }
+
+    /**
+     * Downloads artifacts through a resumable .part file. Metadata and checksums are small and downloaded directly.
+     * Waits for a download slot of the repository host first.
+     * Tells readers following the resource which file it is downloaded to.
+     */
+    @Override
+    public void get( final String resourceName, final File destination )
+        throws TransferFailedException, ResourceDoesNotExistException, AuthorizationException
+    {
+        final String host = getRepository().getHost();
+        try {
+            m_scheduler.acquire( host );
+        } catch( InterruptedIOException e ) {
+            throw new TransferFailedException( "Transfer of " + resourceName + " interrupted", e );
+        }
+        final DownloadTaps.Tap tap = m_taps.get( resourceName );
+        try {
+            if( !isResumable( resourceName ) || !getResumable( resourceName, destination, tap ) ) {
+                if( tap != null ) {
+                    tap.started( destination );
+                }
+                super.get( resourceName, destination );
+            }
+        } finally {
+            m_scheduler.release( host, 1 );
+            if( tap != null ) {
+                tap.ended();
+            }
+        }
+    }
+
+    /**
+     * Downloads a resource to its .part file, then moves it to the destination.
+     *
+     * @return false if the .part file is in use by another download, in which case nothing was downloaded
+     */
+    private boolean getResumable( final String resourceName, final File destination, final DownloadTaps.Tap tap )
+        throws TransferFailedException, ResourceDoesNotExistException, AuthorizationException
+    {
+        final String fileName = resourceName.substring( resourceName.lastIndexOf( '/' ) + 1 );
+        final File part = new File( destination.getParentFile(), fileName + PART_SUFFIX );
+        final Resource resource = new Resource( resourceName );
+        createParentDirectories( part );
+        RandomAccessFile file = null;
+        FileLock lock = null;
+        boolean downloaded = false;
+        try {
+            file = new RandomAccessFile( part, "rw" );
+            lock = tryLock( file );
+            if( lock == null ) {
+                return false;
+            }
+            fireGetInitiated( resource, destination );
+            download( resource, destination, file, part, tap );
+            downloaded = true;
+        } catch( IOException e ) {
+            fireTransferError( resource, e, TransferEvent.REQUEST_GET );
+            throw new TransferFailedException(
+                "Transfer of " + resource.getName() + " failed: " + e.getMessage(), e
+            );
+        } finally {
+            close( file );
+            if( lock != null && !downloaded && part.length() == 0 ) {
+                // nothing to resume
+                part.delete();
+                validatorFile( part ).delete();
+            }
+        }
+        try {
+            move( part, destination );
+        } catch( IOException e ) {
+            fireTransferError( resource, e, TransferEvent.REQUEST_GET );
+            throw new TransferFailedException( "Could not move " + part + " to " + destination, e );
+        }
+        validatorFile( part ).delete();
+        fireGetCompleted( resource, destination );
+        return true;
+    }
+
+    /**
+     * Downloads a resource to a .part file, resuming from the content already in it if the server supports ranges.
+     * The file is kept when the download fails, truncated to the content known to be complete.
+     */
+    private void download( final Resource resource, final File destination, final RandomAccessFile file,
+                           final File part, final DownloadTaps.Tap tap )
+        throws IOException, TransferFailedException, ResourceDoesNotExistException, AuthorizationException
+    {
+        final String url = buildUrl( resource.getName() );
+        final File validatorFile = validatorFile( part );
+        long offset = file.length();
+        String validator = null;
+        if( offset > 0 ) {
+            // a SNAPSHOT may be redeployed with the same validator
+            validator = isSnapshot( resource.getName() ) ? null : readValidator( validatorFile );
+            if( validator == null ) {
+                // the server cannot tell whether the content of the .part file is still current
+                file.setLength( 0 );
+                offset = 0;
+            }
+        }
+        final GetMethod method = new GetMethod( url );
+        if( offset > 0 ) {
+            method.setRequestHeader( "Range", "bytes=" + offset + "-" );
+            // the whole resource is returned if it changed
+            method.setRequestHeader( "If-Range", validator );
+        }
+        boolean complete = false;
+        try {
+            final int status = execute( method );
+            if( offset > 0 && ( status == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE
+                                || ( status == HttpStatus.SC_PARTIAL_CONTENT && isChanged( method, validator ) ) ) ) {
+                // the .part file does not match the resource (any more); download it again
+                method.releaseConnection();
+                complete = true;
+                file.setLength( 0 );
+                download( resource, destination, file, part, tap );
+                return;
+            }
+            if( status != HttpStatus.SC_PARTIAL_CONTENT || getRangeStart( method ) != offset ) {
+                checkStatus( status, method, url );
+                offset = 0;
+            }
+            else {
+                LOG.debug( "Resuming download of {} at {}", url, offset );
+            }
+            file.setLength( offset );
+            final String current = getValidator( method );
+            if( offset == 0 ) {
+                writeValidator( validatorFile, current );
+            }
+            final long length = method.getResponseContentLength();
+            final long total = length < 0 ? -1 : offset + length;
+            resource.setContentLength( total );
+            resource.setLastModified( getLastModified( method ) );
+            final InputStream body = m_scheduler.throttle( method.getResponseBodyAsStream() );
+            if( body == null ) {
+                throw new IOException( "No content returned for " + url );
+            }
+            fireGetStarted( resource, destination );
+
+            // ranges are only downloaded if they can be checked to be of the same resource
+            final int ranges = m_rangeThreshold > 0 && length >= m_rangeThreshold && acceptsRanges( method )
+                               && current != null
+                               ? 1 + m_scheduler.tryAcquire( getRepository().getHost(), m_rangeParts - 1 )
+                               : 1;
+            if( ranges > 1 ) {
+                try {
+                    downloadRanges( url, method, body, file, offset, total, ranges, current );
+                } finally {
+                    m_scheduler.release( getRepository().getHost(), ranges - 1 );
+                }
+                // the content is complete; the checksum observers see it in order
+                if( tap != null ) {
+                    tap.started( part );
+                }
+                replay( resource, file, total );
+            }
+            else {
+                if( tap != null ) {
+                    tap.started( part );
+                }
+                // checksum observers must see the resumed content as well
+                replay( resource, file, offset );
+                transfer( resource, body, new PositionalOutputStream( file.getChannel(), offset ),
+                          TransferEvent.REQUEST_GET
+                );
+            }
+            if( total >= 0 && file.length() != total ) {
+                throw new IOException( "Download of " + url + " ended after " + file.length() + " of " + total + " bytes" );
+            }
+            complete = true;
+        } finally {
+            if( !complete ) {
+                // do not read the rest of the content just to return the connection to the pool
+                method.abort();
+            }
+            method.releaseConnection();
+        }
+    }
+
+    /**
+     * Downloads the rest of a resource as several ranges in parallel. The first range is read from the response of
+     * the initial request, the others with one range request each, which fails if the resource no longer matches the
+     * validator of the initial response.
+     */
+    private void downloadRanges( final String url, final GetMethod first, final InputStream body,
+                                 final RandomAccessFile file, final long offset, final long total, final int parts,
+                                 final String validator )
+        throws IOException
+    {
+        final FileChannel channel = file.getChannel();
+        final long size = ( total - offset + parts - 1 ) / parts;
+        final int ranges = (int) ( ( total - offset + size - 1 ) / size );
+        final AtomicLongArray written = new AtomicLongArray( ranges );
+        final List<GetMethod> methods = new ArrayList<GetMethod>( ranges );
+        final List<Future<?>> futures = new ArrayList<Future<?>>( ranges );
+        methods.add( first );
+        LOG.debug( "Downloading {} bytes of {} in {} ranges", new Object[]{ total - offset, url, ranges } );
+
+        for( int i = 1; i < ranges; i++ ) {
+            final int range = i;
+            final long start = offset + i * size;
+            final long end = Math.min( total, start + size );
+            final GetMethod method = new GetMethod( url );
+            method.setRequestHeader( "Range", "bytes=" + start + "-" + ( end - 1 ) );
+            method.setRequestHeader( "If-Range", validator );
+            methods.add( method );
+            futures.add( m_rangeExecutor.submit( new Callable<Object>()
+            {
+                public Object call()
+                    throws IOException
+                {
+                    try {
+                        final int status = execute( method );
+                        if( status != HttpStatus.SC_PARTIAL_CONTENT || getRangeStart( method ) != start
+                            || isChanged( method, validator ) ) {
+                            throw new IOException( "Range " + start + "-" + ( end - 1 ) + " of " + url
+                                                   + " not returned (status " + status + ")"
+                            );
+                        }
+                        copy(
+                            m_scheduler.throttle( method.getResponseBodyAsStream() ), channel, start, end, written,
+                            range
+                        );
+                        return null;
+                    } finally {
+                        if( written.get( range ) < end - start ) {
+                            method.abort();
+                        }
+                        method.releaseConnection();
+                    }
+                }
+            }
+            ) );
+        }
+
+        IOException failure = null;
+        try {
+            copy( body, channel, offset, Math.min( total, offset + size ), written, 0 );
+        } catch( IOException e ) {
+            failure = e;
+        } finally {
+            // the rest of the response is downloaded by the other ranges
+            first.abort();
+        }
+        boolean interrupted = false;
+        for( Future<?> future : futures ) {
+            while( true ) {
+                try {
+                    future.get();
+                    break;
+                } catch( InterruptedException e ) {
+                    // ranges still write to the file; wait for them, failing fast
+                    interrupted = true;
+                    abort( methods );
+                } catch( ExecutionException e ) {
+                    if( failure == null ) {
+                        failure = e.getCause() instanceof IOException
+                                  ? (IOException) e.getCause()
+                                  : new IOException( "Download of " + url + " failed", e.getCause() );
+                        abort( methods );
+                    }
+                    break;
+                }
+            }
+        }
+        if( interrupted ) {
+            Thread.currentThread().interrupt();
+            if( failure == null ) {
+                failure = new InterruptedIOException( "Interrupted while downloading " + url );
+            }
+        }
+        if( failure != null ) {
+            // keep the content known to be complete, so the next attempt resumes from there
+            long valid = offset;
+            for( int i = 0; i < ranges; i++ ) {
+                valid += written.get( i );
+                if( written.get( i ) < Math.min( size, total - offset - i * size ) ) {
+                    break;
+                }
+            }
+            file.setLength( valid );
+            throw failure;
+        }
+    }
+
+    /**
+     * Reports the content of the file up to the given length as transfer progress, so listeners computing checksums
+     * see the whole content.
+     */
+    private void replay( final Resource resource, final RandomAccessFile file, final long length )
+        throws IOException
+    {
+        if( length <= 0 ) {
+            return;
+        }
+        final InputStream in = new BoundedInputStream( Channels.newInputStream( file.getChannel().position( 0 ) ), length );
+        transfer( resource, in, NULL_OUTPUT, TransferEvent.REQUEST_GET );
+    }
+
+    @Override
+    public void fillInputData( final InputData inputData )
+        throws TransferFailedException, ResourceDoesNotExistException, AuthorizationException
+    {
+        final Resource resource = inputData.getResource();
+        final String url = buildUrl( resource.getName() );
+        final GetMethod method = new GetMethod( url );
+        boolean handedOver = false;
+        try {
+            final int status = execute( method );
+            checkStatus( status, method, url );
+
+            resource.setContentLength( method.getResponseContentLength() );
+            resource.setLastModified( getLastModified( method ) );
+
+            final InputStream body = m_scheduler.throttle( method.getResponseBodyAsStream() );
+            if( body == null ) {
+                throw new TransferFailedException( "No content returned for " + url );
+            }
+            inputData.setInputStream( new ReleasingInputStream( body, method ) );
+            handedOver = true;
+        } catch( IOException e ) {
+            throw new TransferFailedException( "Transfer of " + url + " failed: " + e.getMessage(), e );
+        } finally {
+            if( !handedOver ) {
+                method.releaseConnection();
+            }
+        }
+    }
+
+    @Override
+    public void fillOutputData( final OutputData outputData )
+        throws TransferFailedException
+    {
+        throw new TransferFailedException( "Deployment is not supported" );
+    }
+
+    /**
+     * Checks for the resource with a HEAD request, without downloading it.
+     */
+    @Override
+    public boolean resourceExists( final String resourceName )
+        throws TransferFailedException, AuthorizationException
+    {
+        final String url = buildUrl( resourceName );
+        final HeadMethod method = new HeadMethod( url );
+        try {
+            final int status = execute( method );
+            if( status == HttpStatus.SC_NOT_FOUND || status == HttpStatus.SC_GONE ) {
+                return false;
+            }
+            checkStatus( status, method, url );
+            return true;
+        } catch( ResourceDoesNotExistException e ) {
+            return false;
+        } catch( IOException e ) {
+            throw new TransferFailedException( "Checking " + url + " failed: " + e.getMessage(), e );
+        } finally {
+            method.releaseConnection();
+        }
+    }
+
+    private int execute( final HttpMethodBase method )
+        throws IOException
+    {
+        method.setFollowRedirects( true );
+        // only asked if the settings hold no credentials for the server or proxy
+        method.getParams().setParameter( CredentialsProvider.PROVIDER, AUTHENTICATOR );
+        if( m_credentialsAsHeader ) {
+            final String username = getRepository().getUsername();
+            final String password = getRepository().getPassword();
+            if( username != null && password != null ) {
+                method.addRequestHeader( username, password );
+            }
+        }
+        final long start = System.currentTimeMillis();
+        try {
+            final int status = m_client.executeMethod( m_hostConfiguration, method, m_state );
+            if( status >= HttpStatus.SC_INTERNAL_SERVER_ERROR ) {
+                m_health.failure( getRepository().getId(), System.currentTimeMillis() - start );
+            }
+            else {
+                m_health.success( getRepository().getId(), System.currentTimeMillis() - start );
+            }
+            return status;
+        } catch( IOException e ) {
+            m_health.failure( getRepository().getId(), System.currentTimeMillis() - start );
+            throw e;
+        }
+    }
+
+    private static void checkStatus( final int status, final HttpMethod method, final String url )
+        throws TransferFailedException, ResourceDoesNotExistException, AuthorizationException
+    {
+        switch( status ) {
+            case HttpStatus.SC_OK:
+                return;
+            case HttpStatus.SC_NOT_FOUND:
+            case HttpStatus.SC_GONE:
+                throw new ResourceDoesNotExistException( "Unable to locate resource in repository: " + url );
+            case HttpStatus.SC_UNAUTHORIZED:
+            case HttpStatus.SC_FORBIDDEN:
+                throw new AuthorizationException( "Access denied to " + url + " (" + status + ")" );
+            case HttpStatus.SC_PROXY_AUTHENTICATION_REQUIRED:
+                throw new AuthorizationException( "Proxy authentication required for " + url );
+            default:
+                throw new TransferFailedException(
+                    "Failed to transfer " + url + ". Return code is: " + status + ", " + method.getStatusText()
+                );
+        }
+    }
+
+    private static long getLastModified( final HttpMethod method )
+    {
+        final Header header = method.getResponseHeader( "Last-Modified" );
+        if( header != null ) {
+            try {
+                return DateUtil.parseDate( header.getValue() ).getTime();
+            } catch( DateParseException ignore ) {
+                // unknown
+            }
+        }
+        return 0;
+    }
+
+    private String buildUrl( final String resourceName )
+    {
+        final String base = getRepository().getUrl();
+        final StringBuilder url = new StringBuilder( base );
+        if( !base.endsWith( "/" ) ) {
+            url.append( '/' );
+        }
+        url.append( resourceName.startsWith( "/" ) ? resourceName.substring( 1 ) : resourceName );
+        return url.toString().replace( " ", "%20" );
+    }
+
+    /**
+     * Artifacts are resumable; metadata and checksums are not, as they are small and, for metadata, downloaded
+     * concurrently from several repositories into the same directory.
+     */
+    private static boolean isResumable( final String resourceName )
+    {
+        return !resourceName.endsWith( "maven-metadata.xml" )
+               && !resourceName.endsWith( ".sha1" )
+               && !resourceName.endsWith( ".md5" )
+               && !resourceName.endsWith( ".asc" );
+    }
+
+    /**
+     * Locks the .part file, so it is not written by two downloads at once.
+     *
+     * @return lock or null if the file is locked by another download
+     */
+    private static FileLock tryLock( final RandomAccessFile file )
+        throws IOException
+    {
+        try {
+            return file.getChannel().tryLock();
+        } catch( OverlappingFileLockException e ) {
+            return null;
+        }
+    }
+
+    private static boolean isSnapshot( final String resourceName )
+    {
+        return resourceName.indexOf( "SNAPSHOT" ) >= 0;
+    }
+
+    /**
+     * Returns the validator of a response usable in an If-Range header: its strong ETag or else its last
+     * modification time.
+     *
+     * @return validator or null if the response has none
+     */
+    static String getValidator( final HttpMethod method )
+    {
+        final Header etag = method.getResponseHeader( "ETag" );
+        if( etag != null && !etag.getValue().trim().startsWith( "W/" ) ) {
+            return etag.getValue().trim();
+        }
+        final Header lastModified = method.getResponseHeader( "Last-Modified" );
+        return lastModified == null ? null : lastModified.getValue().trim();
+    }
+
+    /**
+     * Returns true if a partial response reports another validator than the requested one, for servers returning
+     * ranges of a changed resource in spite of If-Range.
+     */
+    private static boolean isChanged( final HttpMethod method, final String validator )
+    {
+        final String current = getValidator( method );
+        return current != null && !current.equals( validator );
+    }
+
+    private static File validatorFile( final File part )
+    {
+        return new File( part.getParentFile(), part.getName() + VALIDATOR_SUFFIX );
+    }
+
+    /**
+     * @return validator of the content of the .part file or null if unknown
+     */
+    private static String readValidator( final File validatorFile )
+    {
+        if( !validatorFile.isFile() ) {
+            return null;
+        }
+        try {
+            final InputStream in = new FileInputStream( validatorFile );
+            try {
+                final String validator = new DataInputStream( in ).readUTF();
+                return validator.length() == 0 ? null : validator;
+            } finally {
+                in.close();
+            }
+        } catch( IOException e ) {
+            return null;
+        }
+    }
+
+    /**
+     * Records the validator of the content about to be written to the .part file, or removes the one of the previous
+     * content if there is none.
+     */
+    private static void writeValidator( final File validatorFile, final String validator )
+        throws IOException
+    {
+        if( validator == null ) {
+            validatorFile.delete();
+            return;
+        }
+        final DataOutputStream out = new DataOutputStream( new FileOutputStream( validatorFile ) );
+        try {
+            out.writeUTF( validator );
+        } finally {
+            out.close();
+        }
+    }
+
+    private static boolean acceptsRanges( final HttpMethod method )
+    {
+        final Header header = method.getResponseHeader( "Accept-Ranges" );
+        return header != null && "bytes".equalsIgnoreCase( header.getValue().trim() );
+    }
+
+    /**
+     * @return first byte of the range returned in a partial content response; -1 if unknown
+     */
+    static long getRangeStart( final HttpMethod method )
+    {
+        final Header header = method.getResponseHeader( "Content-Range" );
+        if( header == null ) {
+            return -1;
+        }
+        // bytes <start>-<end>/<total>
+        final String value = header.getValue().trim();
+        final int start = value.indexOf( ' ' ) + 1;
+        final int end = value.indexOf( '-', start );
+        if( start <= 0 || end < 0 ) {
+            return -1;
+        }
+        try {
+            return Long.parseLong( value.substring( start, end ).trim() );
+        } catch( NumberFormatException e ) {
+            return -1;
+        }
+    }
+
+    /**
+     * Copies a range of content to the file, counting the bytes written.
+     */
+    private static void copy( final InputStream in, final FileChannel channel, final long start, final long end,
+                              final AtomicLongArray written, final int range )
+        throws IOException
+    {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        long position = start;
+        while( position < end ) {
+            final int read = in.read( buffer, 0, (int) Math.min( buffer.length, end - position ) );
+            if( read < 0 ) {
+                throw new IOException( "Range ended after " + ( position - start ) + " of " + ( end - start ) + " bytes" );
+            }
+            final ByteBuffer bytes = ByteBuffer.wrap( buffer, 0, read );
+            while( bytes.hasRemaining() ) {
+                position += channel.write( bytes, position );
+            }
+            written.set( range, position - start );
+        }
+    }
+
+    /**
+     * Moves a downloaded .part file to its destination. Where a file cannot be renamed while open (Windows), as the
+     * .part file may be by a reader following the download, it is copied and deleted instead. A .part file that
+     * cannot be deleted has no validator any more, so it is not resumed by the next download.
+     */
+    private static void move( final File part, final File destination )
+        throws IOException
+    {
+        if( part.renameTo( destination ) ) {
+            return;
+        }
+        destination.delete();
+        if( part.renameTo( destination ) ) {
+            return;
+        }
+        final FileInputStream in = new FileInputStream( part );
+        try {
+            final FileOutputStream out = new FileOutputStream( destination );
+            boolean copied = false;
+            try {
+                final FileChannel source = in.getChannel();
+                final FileChannel target = out.getChannel();
+                final long size = source.size();
+                long position = 0;
+                while( position < size ) {
+                    final long transferred = source.transferTo( position, size - position, target );
+                    if( transferred <= 0 ) {
+                        throw new IOException( "Copy of " + part + " ended after " + position + " of " + size + " bytes" );
+                    }
+                    position += transferred;
+                }
+                copied = true;
+            } finally {
+                out.close();
+                if( !copied ) {
+                    destination.delete();
+                }
+            }
+        } finally {
+            in.close();
+        }
+        if( !part.delete() ) {
+            LOG.debug( "Could not delete {} after copying it to {}", part, destination );
+        }
+    }
+
+    private static void abort( final List<GetMethod> methods )
+    {
+        for( GetMethod method : methods ) {
+            method.abort();
+        }
+    }
+
+    private static void close( final RandomAccessFile file )
+    {
+        if( file != null ) {
+            try {
+                file.close();
+            } catch( IOException ignore ) {
+                // nothing to do
+            }
+        }
+    }
+
+    /**
+     * Writes to a file channel from a given position, without moving the channel position.
+     */
+    private static class PositionalOutputStream
+        extends OutputStream
+    {
+
+        private final FileChannel m_channel;
+        private long m_position;
+
+        PositionalOutputStream( final FileChannel channel, final long position )
+        {
+            m_channel = channel;
+            m_position = position;
+        }
+
+        @Override
+        public void write( final int b )
+            throws IOException
+        {
+            write( new byte[]{ (byte) b }, 0, 1 );
+        }
+
+        @Override
+        public void write( final byte[] b, final int off, final int len )
+            throws IOException
+        {
+            final ByteBuffer bytes = ByteBuffer.wrap( b, off, len );
+            while( bytes.hasRemaining() ) {
+                m_position += m_channel.write( bytes, m_position );
+            }
+        }
+    }
+
+    /**
+     * Reads at most a given number of bytes.
+     */
+    private static class BoundedInputStream
+        extends FilterInputStream
+    {
+
+        private long m_remaining;
+
+        BoundedInputStream( final InputStream in, final long length )
+        {
+            super( in );
+            m_remaining = length;
+        }
+
+        @Override
+        public int read()
+            throws IOException
+        {
+            if( m_remaining <= 0 ) {
+                return -1;
+            }
+            final int read = super.read();
+            if( read >= 0 ) {
+                m_remaining--;
+            }
+            return read;
+        }
+
+        @Override
+        public int read( final byte[] b, final int off, final int len )
+            throws IOException
+        {
+            if( m_remaining <= 0 ) {
+                return -1;
+            }
+            final int read = super.read( b, off, (int) Math.min( len, m_remaining ) );
+            if( read > 0 ) {
+                m_remaining -= read;
+            }
+            return read;
+        }
+
+        /**
+         * The underlying channel belongs to the download.
+         */
+        @Override
+        public void close()
+        {
+        }
+    }
+
+    /**
+     * Returns the connection to the pool when the transfer closes the response stream.
+     */
+    private static class ReleasingInputStream
+        extends FilterInputStream
+    {
+
+        private final HttpMethod m_method;
+
+        ReleasingInputStream( final InputStream in, final HttpMethod method )
+        {
+            super( in );
+            m_method = method;
+        }
+
+        @Override
+        public void close()
+            throws IOException
+        {
+            try {
+                super.close();
+            } finally {
+                m_method.releaseConnection();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonatype.aether.repository.RemoteRepository;
+
+/**
+ * Tracks the latency and failures of remote repositories, as observed by the wagons.<br/>
+ * After a number of consecutive failures the circuit of a repository opens and the repository is skipped until the
+ * circuit timeout elapses; it is then tried again, closing the circuit on success and opening it again on failure.
+ * Repositories that are not skipped are ordered by observed latency.
+ */
+class RepositoryHealth
+{
+
+    private static final Logger LOG = LoggerFactory.getLogger( RepositoryHealth.class );
+
+    /**
+     * Weight of the latest request in the average latency.
+     */
+    private static final double LATENCY_WEIGHT = 0.3;
+
+    /**
+     * Number of consecutive failures opening the circuit. 0 or less never opens it.
+     */
+    private final int m_failureThreshold;
+    /**
+     * Time in milliseconds a circuit stays open.
+     */
+    private final long m_openTime;
+    /**
+     * Statistics by repository id.
+     */
+    private final ConcurrentMap<String, Stats> m_stats;
+
+    /**
+     * Creates a new health tracker.
+     *
+     * @param failureThreshold number of consecutive failures opening the circuit; 0 or less never opens it
+     * @param openTime         time in milliseconds a circuit stays open
+     */
+    RepositoryHealth( final int failureThreshold, final long openTime )
+    {
+        m_failureThreshold = failureThreshold;
+        m_openTime = openTime;
+        m_stats = new ConcurrentHashMap<String, Stats>();
+    }
+
+    /**
+     * Records a request that got an answer from the repository (including "not found").
+     *
+     * @param repositoryId repository id
+     * @param latency      time until the answer in milliseconds
+     */
+    void success( final String repositoryId, final long latency )
+    {
+        if( repositoryId == null ) {
+            return;
+        }
+        final Stats stats = getStats( repositoryId );
+        synchronized( stats ) {
+            if( stats.m_openUntil > 0 ) {
+                LOG.info( "Repository {} is available again", repositoryId );
+            }
+            stats.m_latency = stats.m_latency < 0
+                              ? latency
+                              : stats.m_latency * ( 1 - LATENCY_WEIGHT ) + latency * LATENCY_WEIGHT;
+            stats.m_failures = 0;
+            stats.m_openUntil = 0;
+        }
+    }
+
+    /**
+     * Records a request that failed (connection error, timeout or server error).
+     *
+     * @param repositoryId repository id
+     * @param latency      time until the failure in milliseconds
+     */
+    void failure( final String repositoryId, final long latency )
+    {
+        if( repositoryId == null ) {
+            return;
+        }
+        final Stats stats = getStats( repositoryId );
+        synchronized( stats ) {
+            stats.m_latency = stats.m_latency < 0
+                              ? latency
+                              : stats.m_latency * ( 1 - LATENCY_WEIGHT ) + latency * LATENCY_WEIGHT;
+            stats.m_failures++;
+            if( m_failureThreshold > 0 && stats.m_failures >= m_failureThreshold ) {
+                if( stats.m_openUntil == 0 || stats.m_openUntil < System.currentTimeMillis() ) {
+                    LOG.warn( "Repository " + repositoryId + " failed " + stats.m_failures
+                              + " times in a row. Skipping it for " + m_openTime + " ms"
+                    );
+                }
+                stats.m_openUntil = System.currentTimeMillis() + m_openTime;
+            }
+        }
+    }
+
+    /**
+     * Removes the repositories whose circuit is open and orders the others by latency (repositories without
+     * observed latency first, in their original order).
+     * If the circuits of all repositories are open, all repositories are returned, as there is nothing to lose.
+     *
+     * @param repositories candidate repositories
+     *
+     * @return repositories to be asked, in order
+     */
+    List<RemoteRepository> select( final List<RemoteRepository> repositories )
+    {
+        if( m_stats.isEmpty() || repositories.size() <= 1 ) {
+            return repositories;
+        }
+        final long now = System.currentTimeMillis();
+        final List<RemoteRepository> available = new ArrayList<RemoteRepository>( repositories.size() );
+        final List<Double> latencies = new ArrayList<Double>( repositories.size() );
+        for( RemoteRepository repository : repositories ) {
+            final Stats stats = m_stats.get( repository.getId() );
+            double latency = -1;
+            if( stats != null ) {
+                synchronized( stats ) {
+                    if( stats.m_openUntil > now ) {
+                        LOG.debug( "Skipping repository {} (circuit open)", repository.getId() );
+                        continue;
+                    }
+                    latency = stats.m_latency;
+                }
+            }
+            available.add( repository );
+            latencies.add( latency );
+        }
+        if( available.isEmpty() ) {
+            LOG.debug( "Circuits of all repositories are open. Trying them anyway" );
+            return repositories;
+        }
+        final List<Integer> order = new ArrayList<Integer>( available.size() );
+        for( int i = 0; i < available.size(); i++ ) {
+            order.add( i );
+        }
+        Collections.sort( order, new Comparator<Integer>()
+        {
+            public int compare( final Integer a, final Integer b )
+            {
+                return Double.compare( latencies.get( a ), latencies.get( b ) );
+            }
+        }
+        );
+        final List<RemoteRepository> ordered = new ArrayList<RemoteRepository>( available.size() );
+        for( Integer index : order ) {
+            ordered.add( available.get( index ) );
+        }
+        return ordered;
+    }
+
+    private Stats getStats( final String repositoryId )
+    {
+        Stats stats = m_stats.get( repositoryId );
+        if( stats == null ) {
+            final Stats created = new Stats();
+            stats = m_stats.putIfAbsent( repositoryId, created );
+            if( stats == null ) {
+                stats = created;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Statistics of one repository. Guarded by itself.
+     */
+    private static class Stats
+    {
+
+        /**
+         * Average latency in milliseconds; negative if unknown.
+         */
+        private double m_latency = -1;
+        /**
+         * Number of consecutive failures.
+         */
+        private int m_failures;
+        /**
+         * Time until the circuit is open; 0 if closed.
+         */
+        private long m_openUntil;
+
+    }
+
+}
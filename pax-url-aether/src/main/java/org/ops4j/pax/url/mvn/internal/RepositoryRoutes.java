@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonatype.aether.repository.RemoteRepository;
+
+/**
+ * Selects the repositories that can host an artifact, based on group id routes.<br/>
+ * A route pattern is either a group id (matching only that group), a group id followed by .* (matching that group
+ * and all sub groups) or * (matching all groups). When more patterns match, the most specific (longest) one wins.
+ * Artifacts not matching any route are looked up in all repositories.
+ */
+class RepositoryRoutes
+{
+
+    private static final Logger LOG = LoggerFactory.getLogger( RepositoryRoutes.class );
+
+    private static final String WILDCARD = "*";
+    private static final String SUBGROUPS = ".*";
+
+    /**
+     * Group id pattern to repository ids.
+     */
+    private final Map<String, List<String>> m_routes;
+
+    /**
+     * Creates routes.
+     *
+     * @param routes group id pattern to repository ids; can be null
+     */
+    RepositoryRoutes( final Map<String, List<String>> routes )
+    {
+        m_routes = routes == null ? Collections.<String, List<String>>emptyMap() : routes;
+    }
+
+    /**
+     * Selects the repositories that can host artifacts of the given group, keeping their original order.
+     * If the matching route names only repositories that are not configured, all repositories are returned.
+     *
+     * @param repositories all repositories
+     * @param groupId      artifact group id
+     *
+     * @return repositories to be asked for the artifact
+     */
+    List<RemoteRepository> select( final List<RemoteRepository> repositories, final String groupId )
+    {
+        return selectRoute( repositories, findPattern( groupId ) );
+    }
+
+    /**
+     * Selects the repositories a route leads to, keeping their original order.
+     * If the route names only repositories that are not configured, all repositories are returned.
+     *
+     * @param repositories all repositories
+     * @param pattern      route pattern; null for artifacts not matching any route
+     *
+     * @return repositories the route leads to
+     */
+    List<RemoteRepository> selectRoute( final List<RemoteRepository> repositories, final String pattern )
+    {
+        final List<String> repositoryIds = pattern == null ? null : m_routes.get( pattern );
+        if( repositoryIds == null ) {
+            return repositories;
+        }
+        final List<RemoteRepository> selected = new ArrayList<RemoteRepository>( repositoryIds.size() );
+        for( RemoteRepository repository : repositories ) {
+            if( repositoryIds.contains( repository.getId() ) ) {
+                selected.add( repository );
+            }
+        }
+        if( selected.isEmpty() ) {
+            LOG.warn( "None of the repositories " + repositoryIds + " routed for " + pattern
+                      + " is configured. Using all repositories."
+            );
+            return repositories;
+        }
+        return selected;
+    }
+
+    /**
+     * @return all route patterns
+     */
+    Set<String> getPatterns()
+    {
+        return m_routes.keySet();
+    }
+
+    /**
+     * Finds the most specific route matching the group id.
+     *
+     * @param groupId artifact group id
+     *
+     * @return pattern of matching route or null if no route matches
+     */
+    String findPattern( final String groupId )
+    {
+        String found = null;
+        int foundLength = -1;
+        for( String pattern : m_routes.keySet() ) {
+            final int length = matchLength( pattern, groupId );
+            if( length > foundLength ) {
+                found = pattern;
+                foundLength = length;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return length of the matching part of the pattern or -1 if pattern does not match group id
+     */
+    private static int matchLength( final String pattern, final String groupId )
+    {
+        if( WILDCARD.equals( pattern ) ) {
+            return 0;
+        }
+        if( pattern.endsWith( SUBGROUPS ) ) {
+            final String prefix = pattern.substring( 0, pattern.length() - SUBGROUPS.length() );
+            if( groupId.equals( prefix ) || groupId.startsWith( prefix + "." ) ) {
+                return prefix.length();
+            }
+            return -1;
+        }
+        return pattern.equals( groupId ) ? pattern.length() + 1 : -1;
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sonatype.aether.repository.MirrorSelector;
+import org.sonatype.aether.repository.ProxySelector;
+import org.sonatype.aether.repository.RemoteRepository;
+
+/**
+ * Immutable snapshot of the remote repositories of a configuration, with proxies and mirrors applied, precomputed
+ * for every route. Resolutions only look up the list for the artifact group; the lists must not be modified.<br/>
+ * A snapshot built from @multi directories becomes stale when one of them changes.
+ */
+class RepositoryTopology
+{
+
+    /**
+     * Routing of artifacts by group id.
+     */
+    private final RepositoryRoutes m_routes;
+    /**
+     * Repositories (with proxies and mirrors applied) by route pattern. The null key holds the repositories of
+     * artifacts not matching any route.
+     */
+    private final Map<String, List<RemoteRepository>> m_byRoute;
+    /**
+     * Expanded @multi directories the snapshot was built from, with the repositories they contained.
+     */
+    private final Map<MultiRepositoryDirectory, List<RemoteRepository>> m_multiDirs;
+
+    /**
+     * Builds the snapshot.
+     *
+     * @param repositories   configured repositories, in order
+     * @param multiDirs      @multi directories the repositories were expanded from, with their repositories
+     * @param routes         routing of artifacts by group id
+     * @param mirrorSelector mirrors to apply
+     * @param proxySelector  proxies to apply
+     */
+    RepositoryTopology( final List<RemoteRepository> repositories,
+                        final Map<MultiRepositoryDirectory, List<RemoteRepository>> multiDirs,
+                        final RepositoryRoutes routes,
+                        final MirrorSelector mirrorSelector,
+                        final ProxySelector proxySelector )
+    {
+        m_routes = routes;
+        m_multiDirs = new HashMap<MultiRepositoryDirectory, List<RemoteRepository>>( multiDirs );
+        m_byRoute = new HashMap<String, List<RemoteRepository>>();
+        m_byRoute.put( null, assignProxyAndMirrors( repositories, mirrorSelector, proxySelector ) );
+        for( String pattern : routes.getPatterns() ) {
+            m_byRoute.put(
+                pattern,
+                assignProxyAndMirrors( routes.selectRoute( repositories, pattern ), mirrorSelector, proxySelector )
+            );
+        }
+    }
+
+    /**
+     * Returns the repositories to be asked for artifacts of a group.
+     *
+     * @param groupId artifact group id
+     *
+     * @return unmodifiable list of repositories
+     */
+    List<RemoteRepository> getRepositories( final String groupId )
+    {
+        return m_byRoute.get( m_routes.findPattern( groupId ) );
+    }
+
+    /**
+     * @return true if one of the @multi directories the snapshot was built from changed
+     */
+    boolean isStale()
+    {
+        for( Map.Entry<MultiRepositoryDirectory, List<RemoteRepository>> entry : m_multiDirs.entrySet() ) {
+            if( entry.getKey().getRepositories() != entry.getValue() ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sets the proxies of the repositories and replaces mirrored repositories by their mirror (placed first).
+     *
+     * @return unmodifiable list of repositories to be asked
+     */
+    static List<RemoteRepository> assignProxyAndMirrors( final List<RemoteRepository> repositories,
+                                                                 final MirrorSelector mirrorSelector,
+                                                                 final ProxySelector proxySelector )
+    {
+        final List<RemoteRepository> remoteRepos = new ArrayList<RemoteRepository>( repositories.size() );
+        final Map<String, RemoteRepository> mirrors = new LinkedHashMap<String, RemoteRepository>();
+        final Map<String, List<RemoteRepository>> mirrored = new HashMap<String, List<RemoteRepository>>();
+
+        for( RemoteRepository r : repositories ) {
+            // repositories are shared by the routes, so they are copied before being changed
+            final RemoteRepository repository = copy( r );
+            repository.setProxy( proxySelector.getProxy( repository ) );
+
+            final RemoteRepository mirror = mirrorSelector.getMirror( repository );
+            if( mirror == null ) {
+                remoteRepos.add( repository );
+                continue;
+            }
+            if( !mirrors.containsKey( mirror.getId() ) ) {
+                mirrors.put( mirror.getId(), mirror );
+                mirrored.put( mirror.getId(), new ArrayList<RemoteRepository>() );
+            }
+            mirrored.get( mirror.getId() ).add( repository );
+        }
+
+        for( RemoteRepository mirror : mirrors.values() ) {
+            mirror.setMirroredRepositories( mirrored.get( mirror.getId() ) );
+            remoteRepos.add( 0, mirror );
+        }
+        return Collections.unmodifiableList( remoteRepos );
+    }
+
+    private static RemoteRepository copy( final RemoteRepository repository )
+    {
+        final RemoteRepository copy =
+            new RemoteRepository( repository.getId(), repository.getContentType(), repository.getUrl() );
+        copy.setPolicy( true, repository.getPolicy( true ) );
+        copy.setPolicy( false, repository.getPolicy( false ) );
+        copy.setAuthentication( repository.getAuthentication() );
+        return copy;
+    }
+
+}
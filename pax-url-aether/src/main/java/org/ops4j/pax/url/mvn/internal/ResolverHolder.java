@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import java.io.IOException;
+
+import org.ops4j.pax.url.maven.commons.MavenConfiguration;
+import org.ops4j.pax.url.maven.commons.SettingsChange;
+
+/**
+ * Holds the resolver shared by connections and services for the current configuration. The resolver is built on
+ * first use and rebuilt only when a new configuration is set or the local repository of its settings changed.<br/>
+ * The configuration and resolver are published together as one immutable state, so connections get the resolver
+ * without locking; only building a resolver and changing the configuration are serialized.<br/>
+ * A replaced resolver is retired: it is closed once the resolutions still using it are done.
+ */
+class ResolverHolder
+{
+
+    /**
+     * Current state. Replaced, never modified.
+     */
+    private volatile State m_state;
+
+    ResolverHolder()
+    {
+        m_state = new State( null, null, null );
+    }
+
+    /**
+     * Sets the current configuration, retiring the resolver built for the previous one.
+     *
+     * @param config new configuration; can be null
+     */
+    synchronized void setConfiguration( final MavenConfiguration config )
+    {
+        final State state = m_state;
+        if( config != state.m_origin && config != state.m_config ) {
+            m_state = new State( config, config, null );
+            if( state.m_resolver != null ) {
+                state.m_resolver.retire();
+            }
+        }
+    }
+
+    /**
+     * Applies a change of the settings of a configuration to the resolver built for it. The resolver is retired and
+     * rebuilt on next use if the local repository changed, otherwise it only drops the state depending on what changed.
+     *
+     * @param config  configuration whose settings changed, as set
+     * @param updated configuration with the new settings; used in place of config from now on
+     * @param change  what changed
+     */
+    synchronized void settingsChanged( final MavenConfiguration config, final MavenConfiguration updated,
+                                       final SettingsChange change )
+    {
+        final State state = m_state;
+        if( config != state.m_origin ) {
+            return;
+        }
+        AetherBasedResolver resolver = state.m_resolver;
+        if( resolver != null ) {
+            if( change.isLocalRepositoryChanged() ) {
+                resolver.retire();
+                resolver = null;
+            }
+            else {
+                resolver.settingsChanged( updated, change );
+            }
+        }
+        m_state = new State( config, updated, resolver );
+    }
+
+    /**
+     * Returns the current configuration.
+     *
+     * @return current configuration or null if not configured
+     */
+    MavenConfiguration getConfiguration()
+    {
+        return m_state.m_config;
+    }
+
+    /**
+     * Returns the resolver for the current configuration, building it on first use. Connections only read the
+     * current state: the configuration they were created with may already be replaced, and only
+     * {@link #setConfiguration} and {@link #settingsChanged} replace it.
+     *
+     * @return shared resolver
+     *
+     * @throws IOException if there is no configuration or in case of url problems in configuration
+     */
+    AetherBasedResolver getResolver()
+        throws IOException
+    {
+        final State state = m_state;
+        if( state.m_resolver != null ) {
+            return state.m_resolver;
+        }
+        synchronized( this ) {
+            State current = m_state;
+            if( current.m_config == null ) {
+                throw new IOException( "Maven resolver is not configured" );
+            }
+            if( current.m_resolver == null ) {
+                current = new State(
+                    current.m_origin, current.m_config, new AetherBasedResolver( current.m_config )
+                );
+                m_state = current;
+            }
+            return current.m_resolver;
+        }
+    }
+
+    /**
+     * Closes the current resolver and forgets the configuration.
+     */
+    synchronized void close()
+    {
+        final AetherBasedResolver resolver = m_state.m_resolver;
+        if( resolver != null ) {
+            resolver.close();
+        }
+        m_state = new State( null, null, null );
+    }
+
+    /**
+     * Configuration and the resolver built for it.
+     */
+    private static class State
+    {
+
+        /**
+         * Configuration as set. Connections keep using it after its settings changed.
+         */
+        private final MavenConfiguration m_origin;
+        /**
+         * Configuration with the current settings. Null if not (yet) configured.
+         */
+        private final MavenConfiguration m_config;
+        /**
+         * Resolver built for the configuration. Null if not built yet.
+         */
+        private final AetherBasedResolver m_resolver;
+
+        State( final MavenConfiguration origin, final MavenConfiguration config, final AetherBasedResolver resolver )
+        {
+            m_origin = origin;
+            m_config = config;
+            m_resolver = resolver;
+        }
+
+    }
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates daemon threads named after the handler.
+ */
+class ResolverThreadFactory
+    implements ThreadFactory
+{
+
+    private final String m_prefix;
+    private final AtomicInteger m_count = new AtomicInteger();
+
+    /**
+     * @param prefix thread name prefix, followed by the thread number
+     */
+    ResolverThreadFactory( final String prefix )
+    {
+        m_prefix = prefix;
+    }
+
+    public Thread newThread( final Runnable runnable )
+    {
+        final Thread thread = new Thread( runnable, m_prefix + m_count.incrementAndGet() );
+        thread.setDaemon( true );
+        return thread;
+    }
+
+}
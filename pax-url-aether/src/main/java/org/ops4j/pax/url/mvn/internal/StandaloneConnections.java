@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.ops4j.pax.url.maven.commons.MavenConfiguration;
+import org.ops4j.pax.url.maven.commons.MavenConfigurationImpl;
+import org.ops4j.pax.url.maven.commons.MavenConfigurationSnapshot;
+import org.ops4j.pax.url.maven.commons.SettingsChange;
+import org.ops4j.pax.url.maven.commons.SettingsListener;
+import org.ops4j.pax.url.maven.commons.SettingsWatcher;
+import org.ops4j.pax.url.mvn.ServiceConstants;
+import org.ops4j.util.property.PropertiesPropertyResolver;
+
+/**
+ * Opens the connections of the mvn: handler used without OSGi (see {@link org.ops4j.pax.url.mvn.Handler}). They
+ * share one resolver, configured out of the system properties. The configuration is built again, retiring the
+ * resolver, only when the system properties it is built from change. Changes of settings.xml are applied as the
+ * activator applies them, checked when a connection is opened at most once per settings check interval.
+ */
+public final class StandaloneConnections
+{
+
+    /**
+     * System properties, besides the mvn: ones, the configuration and settings depend on.
+     */
+    private static final String[] PROPERTIES = { "http.proxyHost", "http.proxyPort", "user.home", "maven.home" };
+
+    /**
+     * Resolver shared by the connections.
+     */
+    private static final ResolverHolder HOLDER = new ResolverHolder();
+    /**
+     * System properties the current configuration is built from. Guarded by the class.
+     */
+    private static Properties s_properties;
+    /**
+     * Watcher of the settings of the current configuration. Guarded by the class.
+     */
+    private static SettingsWatcher s_watcher;
+    /**
+     * Interval between checks of the settings in milliseconds. Guarded by the class.
+     */
+    private static long s_checkInterval;
+    /**
+     * Last time the settings were checked. Guarded by the class.
+     */
+    private static long s_lastCheck;
+
+    private StandaloneConnections()
+    {
+        // utility class
+    }
+
+    /**
+     * Opens a connection sharing the resolver of the configuration of the system properties.
+     *
+     * @param url mvn: url; cannot be null
+     *
+     * @return connection to the artifact
+     *
+     * @throws IOException in case of a malformed url
+     */
+    public static URLConnection open( final URL url )
+        throws IOException
+    {
+        configure();
+        return new Connection( url, HOLDER );
+    }
+
+    /**
+     * Builds the configuration if the system properties changed, otherwise checks the settings if due.
+     */
+    private static synchronized void configure()
+    {
+        final long now = System.currentTimeMillis();
+        final Properties properties = getProperties();
+        if( !properties.equals( s_properties ) ) {
+            final MavenConfigurationImpl config = new MavenConfigurationImpl(
+                new PropertiesPropertyResolver( System.getProperties() ), ServiceConstants.PID
+            );
+            final AtomicReference<MavenConfiguration> origin = new AtomicReference<MavenConfiguration>();
+            final SettingsWatcher watcher = new SettingsWatcher(
+                config.getSettingsFileUrl(), config.useFallbackRepositories(), new SettingsListener()
+                {
+
+                    public void settingsChanged( final SettingsChange change )
+                    {
+                        config.setSettings( change.getSettings() );
+                        HOLDER.settingsChanged( origin.get(), new MavenConfigurationSnapshot( config ), change );
+                    }
+
+                }
+            );
+            config.setSettings( watcher.getSettings() );
+            final MavenConfigurationSnapshot snapshot = new MavenConfigurationSnapshot( config );
+            origin.set( snapshot );
+            HOLDER.setConfiguration( snapshot );
+            s_properties = properties;
+            s_watcher = watcher;
+            s_checkInterval = snapshot.getSettingsCheckInterval();
+            s_lastCheck = now;
+        }
+        else if( s_checkInterval > 0 && now - s_lastCheck >= s_checkInterval ) {
+            s_lastCheck = now;
+            s_watcher.check();
+        }
+    }
+
+    /**
+     * @return the system properties the configuration is built from
+     */
+    private static Properties getProperties()
+    {
+        final Properties system = System.getProperties();
+        final Properties properties = new Properties();
+        for( String name : system.stringPropertyNames() ) {
+            if( name.startsWith( ServiceConstants.PID ) ) {
+                properties.setProperty( name, system.getProperty( name ) );
+            }
+        }
+        for( String name : PROPERTIES ) {
+            final String value = system.getProperty( name );
+            if( value != null ) {
+                properties.setProperty( name, value );
+            }
+        }
+        return properties;
+    }
+
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Artifact content returned while the artifact is being resolved.<br/>
+ * If the artifact is downloaded, the stream follows the file the download is written to. Otherwise it reads the
+ * resolved file once the resolution is over. In both cases the end of stream is only reported once the resolution
+ * succeeded (including checksum verification); a failed resolution fails the stream, even if all bytes were read.
+ */
+class StreamingArtifactInputStream
+    extends InputStream
+{
+
+    /**
+     * Time to wait for more content before checking the download again.
+     */
+    private static final long POLL_INTERVAL = 50;
+
+    private final DownloadTaps m_taps;
+    private final DownloadTaps.Tap m_tap;
+    private final Future<File> m_resolution;
+    /**
+     * Stream being read. Null until the download started or the resolution is over.
+     */
+    private InputStream m_in;
+    /**
+     * True if m_in follows a download in progress.
+     */
+    private boolean m_following;
+    /**
+     * Download attempt followed.
+     */
+    private int m_attempt;
+    /**
+     * Number of bytes returned so far.
+     */
+    private long m_position;
+    private boolean m_closed;
+
+    /**
+     * Creates a new stream.
+     *
+     * @param taps       registry the tap was opened from; the tap is closed together with the stream
+     * @param tap        tap on the artifact download
+     * @param resolution pending resolution of the artifact
+     */
+    StreamingArtifactInputStream( final DownloadTaps taps, final DownloadTaps.Tap tap, final Future<File> resolution )
+    {
+        m_taps = taps;
+        m_tap = tap;
+        m_resolution = resolution;
+    }
+
+    @Override
+    public int read()
+        throws IOException
+    {
+        final byte[] b = new byte[1];
+        final int read = read( b, 0, 1 );
+        return read == -1 ? -1 : b[ 0 ] & 0xff;
+    }
+
+    @Override
+    public int read( final byte[] b, final int off, final int len )
+        throws IOException
+    {
+        if( m_closed ) {
+            throw new IOException( "Stream closed" );
+        }
+        if( len == 0 ) {
+            return 0;
+        }
+        try {
+            open();
+            while( true ) {
+                if( m_following && m_tap.getAttempts() != m_attempt ) {
+                    throw new IOException(
+                        "Download of " + m_tap.getPath() + " restarted after part of it was already read"
+                    );
+                }
+                final int read = m_in.read( b, off, len );
+                if( read > 0 ) {
+                    m_position += read;
+                    return read;
+                }
+                if( !m_following ) {
+                    return read;
+                }
+                if( m_resolution.isDone() ) {
+                    final File resolved = getResolved();
+                    if( m_position >= resolved.length() ) {
+                        return -1;
+                    }
+                    // the downloaded file was moved (not renamed) in place; continue with the resolved file
+                    m_in.close();
+                    m_in = openAt( resolved, m_position );
+                    m_following = false;
+                }
+                else {
+                    m_tap.await( POLL_INTERVAL );
+                }
+            }
+        } catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "Interrupted while downloading " + m_tap.getPath() );
+        }
+    }
+
+    @Override
+    public int available()
+        throws IOException
+    {
+        return m_in == null || m_closed ? 0 : m_in.available();
+    }
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        if( m_closed ) {
+            return;
+        }
+        m_closed = true;
+        m_taps.close( m_tap );
+        if( m_in != null ) {
+            m_in.close();
+        }
+    }
+
+    /**
+     * Opens the stream to read from: the file being downloaded as soon as it exists, or the resolved file if the
+     * resolution is over first.
+     */
+    private void open()
+        throws IOException, InterruptedException
+    {
+        while( m_in == null ) {
+            if( m_resolution.isDone() ) {
+                m_in = new FileInputStream( getResolved() );
+                m_following = false;
+                return;
+            }
+            final int attempt = m_tap.getAttempts();
+            final File destination = m_tap.getDestination();
+            if( destination != null && destination.exists() ) {
+                try {
+                    m_in = new FileInputStream( destination );
+                    m_following = true;
+                    m_attempt = attempt;
+                    return;
+                } catch( IOException ignore ) {
+                    // download was just moved in place; try again
+                }
+            }
+            m_tap.await( POLL_INTERVAL );
+        }
+    }
+
+    private File getResolved()
+        throws IOException, InterruptedException
+    {
+        try {
+            return m_resolution.get();
+        } catch( ExecutionException e ) {
+            if( e.getCause() instanceof IOException ) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException( "Error resolving artifact " + m_tap.getPath(), e.getCause() );
+        }
+    }
+
+    private static InputStream openAt( final File file, final long position )
+        throws IOException
+    {
+        final InputStream in = new FileInputStream( file );
+        long skipped = 0;
+        while( skipped < position ) {
+            final long n = in.skip( position - skipped );
+            if( n <= 0 ) {
+                in.close();
+                throw new IOException( "Resolved file " + file + " is shorter than the content already read" );
+            }
+            skipped += n;
+        }
+        return in;
+    }
+
+}
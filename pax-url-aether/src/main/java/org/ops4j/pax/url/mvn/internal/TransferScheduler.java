@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Schedules the downloads of the http(s) wagons: limits the number of downloads running at the same time from one
+ * host and the download rate shared by all downloads.<br/>
+ * Downloads waiting for a host are started interactive first: downloads of threads marked as background (see
+ * {@link #setBackground(boolean)}), and of the threads they start, only start when no interactive download is
+ * waiting for the same host.
+ * The rate is limited with a token bucket holding at most one second of transfer.
+ */
+class TransferScheduler
+{
+
+    /**
+     * True for threads whose downloads are background ones. Unset means interactive. Inherited by the threads a
+     * resolution starts, as the repository connector and the metadata resolver of Aether download on threads of their
+     * own, created for each resolution by the resolving thread.
+     */
+    private static final ThreadLocal<Boolean> BACKGROUND = new InheritableThreadLocal<Boolean>();
+
+    /**
+     * Maximum number of downloads from one host. 0 or less means no limit.
+     */
+    private final int m_maxPerHost;
+    /**
+     * Maximum rate in bytes per second. 0 or less means no limit.
+     */
+    private final long m_rate;
+    /**
+     * Download slots by host.
+     */
+    private final ConcurrentMap<String, Slots> m_hosts;
+    /**
+     * Bytes that can be read without waiting; negative if readers are in debt. Guarded by this.
+     */
+    private long m_tokens;
+    /**
+     * Last time tokens were added. Guarded by this.
+     */
+    private long m_refilled;
+
+    /**
+     * Creates a new scheduler.
+     *
+     * @param maxPerHost maximum number of downloads running at the same time from one host; 0 or less means no limit
+     * @param rate       maximum download rate in bytes per second; 0 or less means no limit
+     */
+    TransferScheduler( final int maxPerHost, final long rate )
+    {
+        m_maxPerHost = maxPerHost;
+        m_rate = rate;
+        m_hosts = new ConcurrentHashMap<String, Slots>();
+        m_tokens = rate;
+        m_refilled = System.nanoTime();
+    }
+
+    /**
+     * Marks the downloads of the current thread as background (or interactive) ones.
+     *
+     * @param background true for background downloads
+     */
+    static void setBackground( final boolean background )
+    {
+        if( background ) {
+            BACKGROUND.set( Boolean.TRUE );
+        }
+        else {
+            BACKGROUND.remove();
+        }
+    }
+
+    /**
+     * @return true if the downloads of the current thread are background ones
+     */
+    static boolean isBackground()
+    {
+        return BACKGROUND.get() != null;
+    }
+
+    /**
+     * Waits for a download slot of a host. Each slot acquired must be released.
+     *
+     * @param host host to download from
+     *
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    void acquire( final String host )
+        throws InterruptedIOException
+    {
+        if( m_maxPerHost > 0 ) {
+            getSlots( host ).acquire( m_maxPerHost, !isBackground() );
+        }
+    }
+
+    /**
+     * Acquires additional download slots of a host, if available without waiting.
+     *
+     * @param host  host to download from
+     * @param count number of slots wanted
+     *
+     * @return number of slots acquired, between 0 and count
+     */
+    int tryAcquire( final String host, final int count )
+    {
+        if( m_maxPerHost <= 0 ) {
+            return count;
+        }
+        return getSlots( host ).tryAcquire( m_maxPerHost, count, !isBackground() );
+    }
+
+    /**
+     * Releases download slots of a host.
+     *
+     * @param host  host downloaded from
+     * @param count number of slots to release
+     */
+    void release( final String host, final int count )
+    {
+        if( m_maxPerHost > 0 && count > 0 ) {
+            getSlots( host ).release( count );
+        }
+    }
+
+    /**
+     * Limits the rate content is read from a stream.
+     *
+     * @param in stream to read from
+     *
+     * @return stream reading at most at the configured rate; the same stream if the rate is not limited
+     */
+    InputStream throttle( final InputStream in )
+    {
+        if( m_rate <= 0 || in == null ) {
+            return in;
+        }
+        return new ThrottledInputStream( in );
+    }
+
+    /**
+     * Takes tokens for bytes read, waiting if there were not enough.
+     *
+     * @param bytes number of bytes read
+     *
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    void consume( final int bytes )
+        throws InterruptedIOException
+    {
+        final long wait;
+        synchronized( this ) {
+            final long now = System.nanoTime();
+            // the bucket is full after one second, which also keeps the product below overflow
+            final long elapsed = Math.min( now - m_refilled, 1000000000L );
+            m_tokens = Math.min( m_rate, m_tokens + elapsed * m_rate / 1000000000L );
+            m_refilled = now;
+            m_tokens -= bytes;
+            wait = m_tokens < 0 ? -m_tokens * 1000L / m_rate : 0;
+        }
+        if( wait > 0 ) {
+            try {
+                Thread.sleep( wait );
+            } catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException( "Interrupted while waiting for download bandwidth" );
+            }
+        }
+    }
+
+    private Slots getSlots( final String host )
+    {
+        Slots slots = m_hosts.get( host );
+        if( slots == null ) {
+            final Slots created = new Slots();
+            slots = m_hosts.putIfAbsent( host, created );
+            if( slots == null ) {
+                slots = created;
+            }
+        }
+        return slots;
+    }
+
+    /**
+     * Download slots of one host.
+     */
+    private static class Slots
+    {
+
+        /**
+         * Number of slots in use. Guarded by this.
+         */
+        private int m_used;
+        /**
+         * Number of interactive downloads waiting for a slot. Guarded by this.
+         */
+        private int m_interactiveWaiting;
+
+        synchronized void acquire( final int max, final boolean interactive )
+            throws InterruptedIOException
+        {
+            if( interactive ) {
+                m_interactiveWaiting++;
+            }
+            try {
+                while( m_used >= max || ( !interactive && m_interactiveWaiting > 0 ) ) {
+                    wait();
+                }
+                m_used++;
+            } catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException( "Interrupted while waiting for a download slot" );
+            } finally {
+                if( interactive && --m_interactiveWaiting == 0 ) {
+                    // background downloads may use the slots left
+                    notifyAll();
+                }
+            }
+        }
+
+        synchronized int tryAcquire( final int max, final int count, final boolean interactive )
+        {
+            if( !interactive && m_interactiveWaiting > 0 ) {
+                return 0;
+            }
+            final int acquired = Math.max( 0, Math.min( count, max - m_used ) );
+            m_used += acquired;
+            return acquired;
+        }
+
+        synchronized void release( final int count )
+        {
+            m_used -= count;
+            notifyAll();
+        }
+
+    }
+
+    /**
+     * Stream taking tokens for the bytes read.
+     */
+    private class ThrottledInputStream
+        extends FilterInputStream
+    {
+
+        ThrottledInputStream( final InputStream in )
+        {
+            super( in );
+        }
+
+        @Override
+        public int read()
+            throws IOException
+        {
+            final int read = super.read();
+            if( read >= 0 ) {
+                consume( 1 );
+            }
+            return read;
+        }
+
+        @Override
+        public int read( final byte[] b, final int off, final int len )
+            throws IOException
+        {
+            final int read = super.read( b, off, len );
+            if( read > 0 ) {
+                consume( read );
+            }
+            return read;
+        }
+
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.sonatype.aether.repository.RemoteRepository;
+import org.sonatype.aether.repository.RepositoryPolicy;
+
+/**
+ * In memory cache of the versions LATEST was resolved to, so the metadata of remote repositories is not read for
+ * each request. An entry is kept until the update policy of one of the repositories it was resolved from requires a
+ * new check: always (never cached), daily (until midnight), interval:N (N minutes) or never.<br/>
+ * Between restarts, the metadata itself is kept in the local repository and checked by Aether with the same policies.
+ */
+class VersionCache
+{
+
+    /**
+     * Resolved versions, by artifact key (see {@link ArtifactCache#key}).
+     */
+    private final ConcurrentMap<String, Entry> m_entries;
+
+    VersionCache()
+    {
+        m_entries = new ConcurrentHashMap<String, Entry>();
+    }
+
+    /**
+     * Returns the version a volatile version was resolved to, if it does not have to be checked again.
+     *
+     * @param key artifact key
+     *
+     * @return resolved version or null if not cached or expired
+     */
+    String get( final String key )
+    {
+        final Entry entry = m_entries.get( key );
+        if( entry == null ) {
+            return null;
+        }
+        if( entry.m_expires <= System.currentTimeMillis() ) {
+            m_entries.remove( key, entry );
+            return null;
+        }
+        return entry.m_version;
+    }
+
+    /**
+     * Caches a resolved version.
+     *
+     * @param key          artifact key
+     * @param version      resolved version
+     * @param repositories repositories the version was resolved from; their update policies give the expiration
+     */
+    void put( final String key, final String version, final List<RemoteRepository> repositories )
+    {
+        put( key, version, repositories, System.currentTimeMillis() );
+    }
+
+    /**
+     * Caches a version resolved earlier, e.g. before a restart.
+     *
+     * @param key          artifact key
+     * @param version      resolved version
+     * @param repositories repositories the version was resolved from; their update policies give the expiration
+     * @param lastCheck    time the version was resolved
+     */
+    void put( final String key, final String version, final List<RemoteRepository> repositories,
+              final long lastCheck )
+    {
+        long expires = Long.MAX_VALUE;
+        for( RemoteRepository repository : repositories ) {
+            expires = Math.min( expires, nextCheck( repository, lastCheck ) );
+        }
+        if( expires > System.currentTimeMillis() ) {
+            m_entries.put( key, new Entry( version, expires ) );
+        }
+    }
+
+    /**
+     * Forgets all resolved versions.
+     */
+    void clear()
+    {
+        m_entries.clear();
+    }
+
+    /**
+     * Computes when the update policies of a repository require the next check.
+     *
+     * @param repository remote repository
+     * @param lastCheck  time of last check
+     *
+     * @return time of next check
+     */
+    static long nextCheck( final RemoteRepository repository, final long lastCheck )
+    {
+        long next = Math.min(
+            nextCheck( repository.getPolicy( false ).getUpdatePolicy(), lastCheck ),
+            nextCheck( repository.getPolicy( true ).getUpdatePolicy(), lastCheck )
+        );
+        // a mirror is checked as often as the repositories it mirrors
+        for( RemoteRepository mirrored : repository.getMirroredRepositories() ) {
+            next = Math.min( next, nextCheck( mirrored, lastCheck ) );
+        }
+        return next;
+    }
+
+    /**
+     * Computes when an update policy requires the next check.
+     *
+     * @param policy    update policy; daily if null or unknown, as for Aether
+     * @param lastCheck time of last check
+     *
+     * @return time of next check
+     */
+    static long nextCheck( final String policy, final long lastCheck )
+    {
+        if( RepositoryPolicy.UPDATE_POLICY_ALWAYS.equals( policy ) ) {
+            return lastCheck;
+        }
+        if( RepositoryPolicy.UPDATE_POLICY_NEVER.equals( policy ) ) {
+            return Long.MAX_VALUE;
+        }
+        if( policy != null && policy.startsWith( RepositoryPolicy.UPDATE_POLICY_INTERVAL + ":" ) ) {
+            try {
+                return lastCheck
+                       + Integer.parseInt( policy.substring( RepositoryPolicy.UPDATE_POLICY_INTERVAL.length() + 1 ) )
+                         * 60L * 1000L;
+            } catch( NumberFormatException ignore ) {
+                // fall back to daily
+            }
+        }
+        final Calendar midnight = Calendar.getInstance();
+        midnight.setTimeInMillis( lastCheck );
+        midnight.set( Calendar.HOUR_OF_DAY, 0 );
+        midnight.set( Calendar.MINUTE, 0 );
+        midnight.set( Calendar.SECOND, 0 );
+        midnight.set( Calendar.MILLISECOND, 0 );
+        midnight.add( Calendar.DAY_OF_MONTH, 1 );
+        return midnight.getTimeInMillis();
+    }
+
+    private static class Entry
+    {
+
+        private final String m_version;
+        private final long m_expires;
+
+        Entry( final String version, final long expires )
+        {
+            m_version = version;
+            m_expires = expires;
+        }
+
+    }
+
+}
@@ -15,8 +15,18 @@
  */
 package org.ops4j.pax.url.mvn;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.Properties;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -68,6 +78,181 @@ public class AetherTest {
         aetherBasedResolver.resolve( "org.ops4j.pax.web", "pax-web-api", "", "jar", "LATEST" ).close();
     }
 
+    @Test
+    public void resolveFromExplicitRepository()
+        throws IOException
+    {
+        Properties p = new Properties();
+        p.setProperty( ServiceConstants.PID + MavenConstants.PROPERTY_LOCAL_REPOSITORY, getCache().toURI().toASCIIString() );
+        // not reachable; must not be asked when the url names a repository
+        p.setProperty( ServiceConstants.PID + MavenConstants.PROPERTY_REPOSITORIES, "http://localhost:1/repo@id=down" );
+        MavenConfigurationImpl conf = new MavenConfigurationImpl( new PropertiesPropertyResolver( p ), ServiceConstants.PID );
+
+        AetherBasedResolver aetherBasedResolver = new AetherBasedResolver( conf );
+        Parser parser = new Parser( new File( "target/test-classes/repo2" ).toURI().toString() + "!ant/ant/1.5.1" );
+        File file = aetherBasedResolver.resolveFile(
+            parser.getRepositoryURL(), parser.getGroup(), parser.getArtifact(), parser.getClassifier(), parser.getType(),
+            parser.getVersion()
+        );
+        assertEquals( "ant-1.5.1.jar", file.getName() );
+    }
+
+    @Test( expected = IOException.class )
+    public void retiredResolverIsClosedWhenIdle()
+        throws IOException
+    {
+        AetherBasedResolver aetherBasedResolver = new AetherBasedResolver( getDummyConfig() );
+        aetherBasedResolver.retire();
+        aetherBasedResolver.resolveFile( "ant", "ant", "", "jar", "1.5.1" );
+    }
+
+    @Test
+    public void changedSnapshotMetadataIsCheckedAgain()
+        throws IOException
+    {
+        File remote = getCache();
+        Properties p = new Properties();
+        p.setProperty( ServiceConstants.PID + MavenConstants.PROPERTY_LOCAL_REPOSITORY, getCache().toURI().toASCIIString() );
+        p.setProperty( ServiceConstants.PID + MavenConstants.PROPERTY_REPOSITORIES,
+                       remote.toURI().toASCIIString() + "@snapshots@update=always@id=snapshots"
+        );
+        p.setProperty( ServiceConstants.PID + MavenConstants.PROPERTY_RESOLVED_CACHE_TTL, "0" );
+        MavenConfigurationImpl conf = new MavenConfigurationImpl( new PropertiesPropertyResolver( p ), ServiceConstants.PID );
+
+        AetherBasedResolver aetherBasedResolver = new AetherBasedResolver( conf );
+        try {
+            deploySnapshot( remote, "20120101.100000", 1 );
+            File file = aetherBasedResolver.resolveFile( "test", "snap", "", "jar", "1.0-SNAPSHOT" );
+            assertEquals( "build 1", read( file ) );
+
+            deploySnapshot( remote, "20120101.110000", 2 );
+            file = aetherBasedResolver.resolveFile( "test", "snap", "", "jar", "1.0-SNAPSHOT" );
+            assertEquals( "build 2", read( file ) );
+        } finally {
+            aetherBasedResolver.close();
+        }
+    }
+
+    @Test
+    public void offlineServesLocallyInstalledArtifact()
+        throws IOException
+    {
+        File local = getCache();
+        installLocally( local, null );
+        MavenConfiguration conf = getLocalConfig( local, MavenConstants.PROPERTY_OFFLINE );
+        AetherBasedResolver aetherBasedResolver = new AetherBasedResolver( conf );
+        try {
+            File file = aetherBasedResolver.resolveFile( "ant", "ant", "", "jar", "1.5.1" );
+            assertEquals( "local build", read( file ) );
+        } finally {
+            aetherBasedResolver.close();
+        }
+    }
+
+    @Test
+    public void offlineFailsForMissingArtifact()
+        throws IOException
+    {
+        File local = getCache();
+        MavenConfiguration conf = getLocalConfig( local, MavenConstants.PROPERTY_OFFLINE );
+        AetherBasedResolver aetherBasedResolver = new AetherBasedResolver( conf );
+        try {
+            aetherBasedResolver.resolveFile( "ant", "ant", "", "jar", "1.5.1" );
+            fail( "Artifact missing locally should not be resolved offline" );
+        } catch( IOException expected ) {
+            // the remote repository holds it, but is not asked
+            assertFalse( new File( local, "ant/ant/1.5.1/ant-1.5.1.jar" ).exists() );
+        } finally {
+            aetherBasedResolver.close();
+        }
+    }
+
+    @Test
+    public void localFirstPrefersLocalRelease()
+        throws IOException
+    {
+        File local = getCache();
+        // downloaded from another repository, so the remote one would be asked for it otherwise
+        installLocally( local, "other" );
+        MavenConfiguration conf = getLocalConfig( local, MavenConstants.PROPERTY_LOCAL_FIRST );
+        AetherBasedResolver aetherBasedResolver = new AetherBasedResolver( conf );
+        try {
+            File file = aetherBasedResolver.resolveFile( "ant", "ant", "", "jar", "1.5.1" );
+            assertEquals( "local build", read( file ) );
+            // artifacts missing locally are still resolved remotely
+            file = aetherBasedResolver.resolveFile( "ant", "ant", "", "pom", "1.5.1" );
+            assertEquals( "ant-1.5.1.pom", file.getName() );
+        } finally {
+            aetherBasedResolver.close();
+        }
+    }
+
+    /**
+     * Returns a configuration with a local repository and a remote one holding ant 1.5.1, with a mode enabled.
+     */
+    private static MavenConfiguration getLocalConfig( File local, String mode )
+    {
+        Properties p = new Properties();
+        p.setProperty( ServiceConstants.PID + MavenConstants.PROPERTY_LOCAL_REPOSITORY, local.toURI().toASCIIString() );
+        p.setProperty( ServiceConstants.PID + MavenConstants.PROPERTY_REPOSITORIES,
+                       new File( "target/test-classes/repo2" ).toURI().toString() + "@id=repo2"
+        );
+        p.setProperty( ServiceConstants.PID + mode, "true" );
+        return new MavenConfigurationImpl( new PropertiesPropertyResolver( p ), ServiceConstants.PID );
+    }
+
+    /**
+     * Puts a copy of ant 1.5.1 unlike the remote one in a local repository.
+     *
+     * @param origin id of the repository it is recorded to come from; null if installed locally
+     */
+    private static void installLocally( File local, String origin )
+        throws IOException
+    {
+        File dir = new File( local, "ant/ant/1.5.1" );
+        dir.mkdirs();
+        write( new File( dir, "ant-1.5.1.jar" ), "local build" );
+        if( origin != null ) {
+            write( new File( dir, "_remote.repositories" ), "ant-1.5.1.jar>" + origin + "=\n" );
+        }
+    }
+
+    private static void deploySnapshot( File repository, String timestamp, int buildNumber )
+        throws IOException
+    {
+        File dir = new File( repository, "test/snap/1.0-SNAPSHOT" );
+        dir.mkdirs();
+        write( new File( dir, "snap-1.0-" + timestamp + "-" + buildNumber + ".jar" ), "build " + buildNumber );
+        write( new File( dir, "maven-metadata.xml" ),
+               "<metadata><groupId>test</groupId><artifactId>snap</artifactId><version>1.0-SNAPSHOT</version>"
+               + "<versioning><snapshot><timestamp>" + timestamp + "</timestamp><buildNumber>" + buildNumber
+               + "</buildNumber></snapshot><lastUpdated>" + timestamp.replace( ".", "" ) + "</lastUpdated>"
+               + "</versioning></metadata>"
+        );
+    }
+
+    private static void write( File file, String content )
+        throws IOException
+    {
+        Writer writer = new OutputStreamWriter( new FileOutputStream( file ), "UTF-8" );
+        try {
+            writer.write( content );
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String read( File file )
+        throws IOException
+    {
+        BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream( file ), "UTF-8" ) );
+        try {
+            return reader.readLine();
+        } finally {
+            reader.close();
+        }
+    }
+
     private MavenConfiguration getDummyConfig()
         throws IOException
     {
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class ArtifactCacheTest
+{
+
+    @Test
+    public void releaseIsCached()
+        throws IOException
+    {
+        File file = File.createTempFile( "artifact", ".jar" );
+        file.deleteOnExit();
+        ArtifactCache cache = new ArtifactCache( 10, 0 );
+        String key = ArtifactCache.key( "g", "a", null, "jar", "1.0" );
+        cache.put( key, "1.0", file );
+        assertEquals( file, cache.get( key ) );
+    }
+
+    @Test
+    public void snapshotIsNotCachedWithoutTTL()
+        throws IOException
+    {
+        File file = File.createTempFile( "artifact", ".jar" );
+        file.deleteOnExit();
+        ArtifactCache cache = new ArtifactCache( 10, 0 );
+        String key = ArtifactCache.key( "g", "a", null, "jar", "1.0-SNAPSHOT" );
+        cache.put( key, "1.0-SNAPSHOT", file );
+        assertNull( cache.get( key ) );
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted()
+        throws IOException
+    {
+        File file = File.createTempFile( "artifact", ".jar" );
+        file.deleteOnExit();
+        ArtifactCache cache = new ArtifactCache( 2, 0 );
+        String key1 = ArtifactCache.key( "g", "a1", null, "jar", "1.0" );
+        String key2 = ArtifactCache.key( "g", "a2", null, "jar", "1.0" );
+        String key3 = ArtifactCache.key( "g", "a3", null, "jar", "1.0" );
+        cache.put( key1, "1.0", file );
+        cache.put( key2, "1.0", file );
+        cache.get( key1 );
+        cache.put( key3, "1.0", file );
+        assertEquals( file, cache.get( key1 ) );
+        assertNull( cache.get( key2 ) );
+        assertEquals( file, cache.get( key3 ) );
+    }
+
+    @Test
+    public void deletedFileIsNotServed()
+        throws IOException
+    {
+        File file = File.createTempFile( "artifact", ".jar" );
+        ArtifactCache cache = new ArtifactCache( 10, 0 );
+        String key = ArtifactCache.key( "g", "a", null, "jar", "1.0" );
+        cache.put( key, "1.0", file );
+        file.delete();
+        assertNull( cache.get( key ) );
+    }
+
+}
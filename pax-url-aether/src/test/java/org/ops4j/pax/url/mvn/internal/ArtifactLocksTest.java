@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.sonatype.aether.artifact.Artifact;
+import org.sonatype.aether.util.artifact.DefaultArtifact;
+
+public class ArtifactLocksTest
+{
+
+    private final Artifact artifact = new DefaultArtifact( "g", "a", "", "jar", "1.0" );
+
+    @Test
+    public void lockIsExclusive()
+        throws Exception
+    {
+        final File localRepository = new File( "target/localrepo_" + UUID.randomUUID() );
+        final ArtifactLocks locks = new ArtifactLocks( localRepository );
+        final ArtifactLocks.Lock lock = locks.lock( artifact );
+        assertTrue( new File( localRepository, ArtifactLocks.LOCKS_DIR ).isDirectory() );
+
+        final CountDownLatch acquired = new CountDownLatch( 1 );
+        Thread other = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try {
+                    new ArtifactLocks( localRepository ).lock( artifact ).release();
+                    acquired.countDown();
+                } catch( Exception ignore ) {
+                    // latch not released
+                }
+            }
+        };
+        other.start();
+        assertEquals( "Lock acquired while held", false, acquired.await( 300, TimeUnit.MILLISECONDS ) );
+        lock.release();
+        assertTrue( "Lock not acquired after release", acquired.await( 10, TimeUnit.SECONDS ) );
+    }
+
+    @Test
+    public void lockIsReusable()
+        throws Exception
+    {
+        ArtifactLocks locks = new ArtifactLocks( new File( "target/localrepo_" + UUID.randomUUID() ) );
+        locks.lock( artifact ).release();
+        locks.lock( artifact ).release();
+    }
+
+    @Test
+    public void versionsShareOneLockFile()
+        throws Exception
+    {
+        File localRepository = new File( "target/localrepo_" + UUID.randomUUID() );
+        ArtifactLocks locks = new ArtifactLocks( localRepository );
+        locks.lock( artifact ).release();
+        locks.lock( new DefaultArtifact( "g", "a", "sources", "jar", "1.0" ) ).release();
+        locks.lock( new DefaultArtifact( "g", "a", "", "pom", "2.0" ) ).release();
+        locks.lock( new DefaultArtifact( "g", "b", "", "jar", "1.0" ) ).release();
+
+        String[] files = new File( localRepository, ArtifactLocks.LOCKS_DIR ).list();
+        Arrays.sort( files );
+        assertEquals( Arrays.asList( "g~a.lock", "g~b.lock" ), Arrays.asList( files ) );
+    }
+
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.Test;
+import org.ops4j.pax.url.maven.commons.MavenConfigurationImpl;
+import org.ops4j.pax.url.maven.commons.MavenConstants;
+import org.ops4j.pax.url.mvn.ResolutionListener;
+import org.ops4j.pax.url.mvn.ResolutionResult;
+import org.ops4j.util.property.PropertiesPropertyResolver;
+
+public class AsyncArtifactResolverTest
+{
+
+    private static final String TEST_PID = "test.pid";
+
+    @Test
+    public void resolve()
+        throws Exception
+    {
+        AsyncArtifactResolverImpl resolver = new AsyncArtifactResolverImpl( holder(), 2 );
+        try {
+            Future<File> future = resolver.resolve( "mvn:ant/ant/1.5.1" );
+            assertEquals( "ant-1.5.1.jar", future.get().getName() );
+        } finally {
+            resolver.shutdown();
+        }
+    }
+
+    @Test
+    public void listenerIsNotifiedOfFailure()
+        throws Exception
+    {
+        AsyncArtifactResolverImpl resolver = new AsyncArtifactResolverImpl( holder(), 2 );
+        try {
+            final CountDownLatch notified = new CountDownLatch( 1 );
+            final AtomicReference<ResolutionResult> result = new AtomicReference<ResolutionResult>();
+            Future<File> future = resolver.resolve( "ant/missing/1.0", new ResolutionListener()
+            {
+                public void resolutionCompleted( final ResolutionResult resolutionResult )
+                {
+                    result.set( resolutionResult );
+                    notified.countDown();
+                }
+            }
+            );
+            try {
+                future.get();
+                fail( "Missing artifact should not be resolved" );
+            } catch( ExecutionException e ) {
+                assertTrue( e.getCause() instanceof IOException );
+            }
+            assertTrue( notified.await( 10, TimeUnit.SECONDS ) );
+            assertFalse( result.get().isResolved() );
+            assertEquals( "ant/missing/1.0", result.get().getUrl() );
+        } finally {
+            resolver.shutdown();
+        }
+    }
+
+    @Test
+    public void pendingResolutionsAreCancelledOnShutdown()
+        throws Exception
+    {
+        final CountDownLatch blocked = new CountDownLatch( 1 );
+        ResolverHolder holder = new ResolverHolder()
+        {
+            @Override
+            AetherBasedResolver getResolver()
+                throws IOException
+            {
+                blocked.countDown();
+                try {
+                    new CountDownLatch( 1 ).await();
+                } catch( InterruptedException e ) {
+                    throw new InterruptedIOException( "Interrupted" );
+                }
+                throw new IOException( "Not reached" );
+            }
+        };
+        AsyncArtifactResolverImpl resolver = new AsyncArtifactResolverImpl( holder, 1 );
+        Future<File> running = resolver.resolve( "mvn:ant/ant/1.5.1" );
+        assertTrue( blocked.await( 10, TimeUnit.SECONDS ) );
+        final CountDownLatch notified = new CountDownLatch( 1 );
+        final AtomicReference<ResolutionResult> result = new AtomicReference<ResolutionResult>();
+        Future<File> queued = resolver.resolve( "mvn:ant/ant/1.5.1", new ResolutionListener()
+        {
+            public void resolutionCompleted( final ResolutionResult resolutionResult )
+            {
+                result.set( resolutionResult );
+                notified.countDown();
+            }
+        }
+        );
+
+        resolver.shutdown();
+        assertTrue( queued.isCancelled() );
+        assertTrue( notified.await( 10, TimeUnit.SECONDS ) );
+        assertFalse( result.get().isResolved() );
+        try {
+            running.get( 10, TimeUnit.SECONDS );
+            fail( "Interrupted resolution should fail" );
+        } catch( ExecutionException e ) {
+            assertTrue( e.getCause() instanceof IOException );
+        }
+    }
+
+    @Test
+    public void backgroundDownloadsYieldToInteractiveOnes()
+        throws Exception
+    {
+        OrderedRepository repository = new OrderedRepository();
+        Server server = new Server( 0 );
+        server.setHandler( repository );
+        server.start();
+        ResolverHolder holder = new ResolverHolder();
+        AsyncArtifactResolverImpl resolver = new AsyncArtifactResolverImpl( holder, 2 );
+        try {
+            Properties properties = new Properties();
+            properties.setProperty( TEST_PID + MavenConstants.PROPERTY_LOCAL_REPOSITORY,
+                                    "target/localrepo_" + UUID.randomUUID()
+            );
+            properties.setProperty( TEST_PID + MavenConstants.PROPERTY_REPOSITORIES,
+                                    "http://localhost:" + server.getConnectors()[0].getLocalPort() + "/repo@id=test"
+            );
+            properties.setProperty( TEST_PID + MavenConstants.PROPERTY_MAX_DOWNLOADS_PER_HOST, "1" );
+            holder.setConfiguration(
+                new MavenConfigurationImpl( new PropertiesPropertyResolver( properties ), TEST_PID )
+            );
+
+            // holds the only download slot of the host until released
+            Thread blocker = resolveInteractively( holder, "blocker" );
+            assertTrue( repository.m_blocking.await( 10, TimeUnit.SECONDS ) );
+            // downloaded by the threads of the repository connector, started by the resolver thread
+            Future<File> background = resolver.resolve( "mvn:test/background/1.0" );
+            Thread.sleep( 300 );
+            Thread interactive = resolveInteractively( holder, "interactive" );
+            Thread.sleep( 300 );
+
+            repository.m_release.countDown();
+            blocker.join( 10000 );
+            interactive.join( 10000 );
+            assertEquals( "background-1.0.jar", background.get( 10, TimeUnit.SECONDS ).getName() );
+            assertEquals(
+                Arrays.asList( "blocker-1.0.jar", "interactive-1.0.jar", "background-1.0.jar" ), repository.m_requested
+            );
+        } finally {
+            repository.m_release.countDown();
+            resolver.shutdown();
+            holder.close();
+            server.stop();
+        }
+    }
+
+    private static Thread resolveInteractively( final ResolverHolder holder, final String artifactId )
+    {
+        Thread thread = new Thread( new Runnable()
+        {
+            public void run()
+            {
+                try {
+                    holder.getResolver().resolveFile( "test", artifactId, "", "jar", "1.0" );
+                } catch( IOException ignore ) {
+                    // shows as a missing request
+                }
+            }
+        }
+        );
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Repository recording the order artifacts are requested in. The request of the blocker artifact is answered once
+     * released.
+     */
+    private static class OrderedRepository
+        extends AbstractHandler
+    {
+
+        final List<String> m_requested = new CopyOnWriteArrayList<String>();
+        final CountDownLatch m_blocking = new CountDownLatch( 1 );
+        final CountDownLatch m_release = new CountDownLatch( 1 );
+
+        public void handle( final String target, final Request baseRequest, final HttpServletRequest request,
+                            final HttpServletResponse response )
+            throws IOException
+        {
+            baseRequest.setHandled( true );
+            if( !"GET".equals( request.getMethod() ) || !target.endsWith( ".jar" ) ) {
+                response.setStatus( HttpServletResponse.SC_NOT_FOUND );
+                return;
+            }
+            m_requested.add( target.substring( target.lastIndexOf( '/' ) + 1 ) );
+            if( target.endsWith( "/blocker-1.0.jar" ) ) {
+                m_blocking.countDown();
+                try {
+                    m_release.await( 10, TimeUnit.SECONDS );
+                } catch( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            response.setStatus( HttpServletResponse.SC_OK );
+            response.getOutputStream().write( target.getBytes( "UTF-8" ) );
+        }
+
+    }
+
+    private static ResolverHolder holder()
+    {
+        Properties properties = new Properties();
+        properties.setProperty( TEST_PID + MavenConstants.PROPERTY_LOCAL_REPOSITORY,
+                                "target/localrepo_" + UUID.randomUUID()
+        );
+        properties.setProperty( TEST_PID + MavenConstants.PROPERTY_REPOSITORIES,
+                                new File( "target/test-classes/repo2" ).toURI().toString() + "@id=repo2"
+        );
+        ResolverHolder holder = new ResolverHolder();
+        holder.setConfiguration(
+            new MavenConfigurationImpl( new PropertiesPropertyResolver( properties ), TEST_PID )
+        );
+        return holder;
+    }
+
+}
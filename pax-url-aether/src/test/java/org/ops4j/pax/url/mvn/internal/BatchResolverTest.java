@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+
+import org.junit.Test;
+import org.ops4j.pax.url.maven.commons.MavenConfigurationImpl;
+import org.ops4j.pax.url.maven.commons.MavenConstants;
+import org.ops4j.pax.url.mvn.ResolutionResult;
+import org.ops4j.util.property.PropertiesPropertyResolver;
+
+public class BatchResolverTest
+{
+
+    private static final String TEST_PID = "test.pid";
+
+    @Test
+    public void resolveMany()
+    {
+        Properties properties = new Properties();
+        properties.setProperty( TEST_PID + MavenConstants.PROPERTY_LOCAL_REPOSITORY,
+                                "target/localrepo_" + UUID.randomUUID()
+        );
+        properties.setProperty( TEST_PID + MavenConstants.PROPERTY_REPOSITORIES,
+                                new File( "target/test-classes/repo2" ).toURI().toString() + "@id=repo2"
+        );
+        MavenConfigurationImpl config =
+            new MavenConfigurationImpl( new PropertiesPropertyResolver( properties ), TEST_PID );
+        ResolverHolder holder = new ResolverHolder();
+        holder.setConfiguration( config );
+
+        AsyncArtifactResolverImpl asyncResolver = new AsyncArtifactResolverImpl( holder, 2 );
+        try {
+            BatchResolverImpl batchResolver = new BatchResolverImpl( asyncResolver );
+            List<ResolutionResult> results = batchResolver.resolve(
+                Arrays.asList( "mvn:ant/ant/1.5.1", "ant/ant/1.5.1/pom", "mvn:ant/missing/1.0" )
+            );
+            assertEquals( 3, results.size() );
+            assertTrue( results.get( 0 ).isResolved() );
+            assertEquals( "ant-1.5.1.jar", results.get( 0 ).getFile().getName() );
+            assertTrue( results.get( 1 ).isResolved() );
+            assertEquals( "ant-1.5.1.pom", results.get( 1 ).getFile().getName() );
+            assertFalse( results.get( 2 ).isResolved() );
+            assertNotNull( results.get( 2 ).getException() );
+        } finally {
+            asyncResolver.shutdown();
+            holder.close();
+        }
+    }
+
+    @Test
+    public void resolveTransitively()
+    {
+        Properties properties = new Properties();
+        properties.setProperty( TEST_PID + MavenConstants.PROPERTY_LOCAL_REPOSITORY,
+                                "target/localrepo_" + UUID.randomUUID()
+        );
+        properties.setProperty( TEST_PID + MavenConstants.PROPERTY_REPOSITORIES,
+                                new File( "target/test-classes/repo3" ).toURI().toString() + "@id=repo3"
+        );
+        MavenConfigurationImpl config =
+            new MavenConfigurationImpl( new PropertiesPropertyResolver( properties ), TEST_PID );
+        ResolverHolder holder = new ResolverHolder();
+        holder.setConfiguration( config );
+
+        AsyncArtifactResolverImpl asyncResolver = new AsyncArtifactResolverImpl( holder, 2 );
+        try {
+            BatchResolverImpl batchResolver = new BatchResolverImpl( asyncResolver );
+            List<ResolutionResult> results = batchResolver.resolveTransitively( "mvn:test/app/1.0", "compile" );
+            assertEquals( 2, results.size() );
+            assertEquals( "app-1.0.jar", results.get( 0 ).getFile().getName() );
+            assertEquals( "lib-1.0.jar", results.get( 1 ).getFile().getName() );
+
+            results = batchResolver.resolveTransitively( "mvn:test/app/1.0", "test" );
+            assertEquals( 3, results.size() );
+            assertEquals( "tool-1.0.jar", results.get( 2 ).getFile().getName() );
+
+            results = batchResolver.resolveTransitively( "mvn:test/missing/1.0", "compile" );
+            assertEquals( 1, results.size() );
+            assertFalse( results.get( 0 ).isResolved() );
+        } finally {
+            asyncResolver.shutdown();
+            holder.close();
+        }
+    }
+
+    @Test
+    public void resolveTransitivelyFromExplicitRepository()
+    {
+        Properties properties = new Properties();
+        properties.setProperty( TEST_PID + MavenConstants.PROPERTY_LOCAL_REPOSITORY,
+                                "target/localrepo_" + UUID.randomUUID()
+        );
+        // does not hold the artifacts
+        properties.setProperty( TEST_PID + MavenConstants.PROPERTY_REPOSITORIES,
+                                new File( "target/test-classes/repo2" ).toURI().toString() + "@id=repo2"
+        );
+        MavenConfigurationImpl config =
+            new MavenConfigurationImpl( new PropertiesPropertyResolver( properties ), TEST_PID );
+        ResolverHolder holder = new ResolverHolder();
+        holder.setConfiguration( config );
+
+        AsyncArtifactResolverImpl asyncResolver = new AsyncArtifactResolverImpl( holder, 2 );
+        try {
+            BatchResolverImpl batchResolver = new BatchResolverImpl( asyncResolver );
+            String repository = new File( "target/test-classes/repo3" ).toURI().toString() + "@id=repo3";
+            List<ResolutionResult> results = batchResolver.resolveTransitively(
+                "mvn:" + repository + "!test/app/1.0", "compile"
+            );
+            assertEquals( 2, results.size() );
+            assertEquals( "mvn:" + repository + "!test/lib/1.0/jar", results.get( 1 ).getUrl() );
+            assertEquals( "app-1.0.jar", results.get( 0 ).getFile().getName() );
+            assertEquals( "lib-1.0.jar", results.get( 1 ).getFile().getName() );
+        } finally {
+            asyncResolver.shutdown();
+            holder.close();
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class InFlightResolutionsTest
+{
+
+    @Test
+    public void concurrentRequestsShareOneResolution()
+        throws Exception
+    {
+        final InFlightResolutions inFlight = new InFlightResolutions();
+        final AtomicInteger resolutions = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final File file = new File( "a-1.0.jar" );
+        final Callable<File> resolution = new Callable<File>()
+        {
+            public File call()
+                throws Exception
+            {
+                resolutions.incrementAndGet();
+                started.countDown();
+                release.await( 10, TimeUnit.SECONDS );
+                return file;
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool( 2 );
+        try {
+            Future<File> first = executor.submit( new Callable<File>()
+            {
+                public File call()
+                    throws Exception
+                {
+                    return inFlight.resolve( "g:a:jar::1.0", resolution );
+                }
+            }
+            );
+            started.await( 10, TimeUnit.SECONDS );
+            Future<File> second = executor.submit( new Callable<File>()
+            {
+                public File call()
+                    throws Exception
+                {
+                    return inFlight.resolve( "g:a:jar::1.0", resolution );
+                }
+            }
+            );
+            // give the second request the time to join the first one
+            Thread.sleep( 200 );
+            release.countDown();
+            assertSame( file, first.get( 10, TimeUnit.SECONDS ) );
+            assertSame( file, second.get( 10, TimeUnit.SECONDS ) );
+            assertEquals( 1, resolutions.get() );
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failureIsPropagatedAndNotRemembered()
+        throws Exception
+    {
+        InFlightResolutions inFlight = new InFlightResolutions();
+        try {
+            inFlight.resolve( "g:a:jar::1.0", new Callable<File>()
+            {
+                public File call()
+                    throws Exception
+                {
+                    throw new IOException( "not found" );
+                }
+            }
+            );
+            fail( "Expected IOException" );
+        } catch( IOException e ) {
+            assertEquals( "not found", e.getMessage() );
+        }
+        final File file = new File( "a-1.0.jar" );
+        assertSame( file, inFlight.resolve( "g:a:jar::1.0", new Callable<File>()
+        {
+            public File call()
+            {
+                return file;
+            }
+        }
+        ) );
+    }
+
+}
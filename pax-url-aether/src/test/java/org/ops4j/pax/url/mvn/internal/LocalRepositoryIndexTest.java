@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.UUID;
+
+import org.junit.Test;
+
+public class LocalRepositoryIndexTest
+{
+
+    private static final String KEY = ArtifactCache.key( "g", "a", null, "jar", "1.0" );
+
+    @Test
+    public void indexedArtifactIsFoundAfterRestart()
+        throws IOException
+    {
+        File localRepository = new File( "target/localrepo_" + UUID.randomUUID() );
+        File artifact = createArtifact( localRepository, "content" );
+        new LocalRepositoryIndex( localRepository ).add( KEY, artifact, "central" );
+
+        LocalRepositoryIndex restarted = new LocalRepositoryIndex( localRepository );
+        assertEquals( artifact.getAbsoluteFile(), restarted.find( KEY ).getAbsoluteFile() );
+        assertEquals( "central", restarted.getRepositoryId( KEY ) );
+    }
+
+    @Test
+    public void changedArtifactIsNotFound()
+        throws IOException
+    {
+        File localRepository = new File( "target/localrepo_" + UUID.randomUUID() );
+        File artifact = createArtifact( localRepository, "content" );
+        LocalRepositoryIndex index = new LocalRepositoryIndex( localRepository );
+        index.add( KEY, artifact, "central" );
+        createArtifact( localRepository, "changed content" );
+        assertNull( index.find( KEY ) );
+        artifact.delete();
+        assertNull( index.find( KEY ) );
+    }
+
+    @Test
+    public void fileOutsideLocalRepositoryIsNotIndexed()
+        throws IOException
+    {
+        File localRepository = new File( "target/localrepo_" + UUID.randomUUID() );
+        localRepository.mkdirs();
+        File artifact = createArtifact( new File( "target/other_" + UUID.randomUUID() ), "content" );
+        LocalRepositoryIndex index = new LocalRepositoryIndex( localRepository );
+        index.add( KEY, artifact, "central" );
+        assertNull( index.find( KEY ) );
+    }
+
+    @Test
+    public void onlyReleasesAreIndexed()
+    {
+        assertTrue( LocalRepositoryIndex.isIndexed( "1.0" ) );
+        assertFalse( LocalRepositoryIndex.isIndexed( "1.0-SNAPSHOT" ) );
+        assertFalse( LocalRepositoryIndex.isIndexed( "LATEST" ) );
+        assertFalse( LocalRepositoryIndex.isIndexed( "[1.0,2.0)" ) );
+    }
+
+    @Test
+    public void resolutionIsJournaledAcrossRestarts()
+        throws IOException
+    {
+        String latest = ArtifactCache.key( "g", "a", null, "jar", "LATEST" );
+        File localRepository = new File( "target/localrepo_" + UUID.randomUUID() );
+        File artifact = createArtifact( localRepository, "content" );
+        new LocalRepositoryIndex( localRepository ).add( latest, "1.0", artifact, "central", 1000L );
+
+        LocalRepositoryIndex restarted = new LocalRepositoryIndex( localRepository );
+        assertEquals( artifact.getAbsoluteFile(), restarted.find( latest ).getAbsoluteFile() );
+        assertEquals( "1.0", restarted.getVersion( latest ) );
+        assertEquals( 1000L, restarted.getLastCheck( latest ) );
+        assertEquals( 0, restarted.getLastCheck( KEY ) );
+    }
+
+    @Test
+    public void repeatedCheckIsNotRecordedAgain()
+        throws IOException
+    {
+        String latest = ArtifactCache.key( "g", "a", null, "jar", "LATEST" );
+        File localRepository = new File( "target/localrepo_" + UUID.randomUUID() );
+        File artifact = createArtifact( localRepository, "content" );
+        LocalRepositoryIndex index = new LocalRepositoryIndex( localRepository );
+        index.add( latest, "1.0", artifact, "central", 1000L );
+        File file = new File( localRepository, LocalRepositoryIndex.FILE_NAME );
+        long length = file.length();
+
+        index.add( latest, "1.0", artifact, "central", 2000L );
+        assertEquals( length, file.length() );
+        assertEquals( 2000L, index.getLastCheck( latest ) );
+        index.add( latest, "1.1", artifact, "central", 2000L );
+        assertTrue( file.length() > length );
+    }
+
+    @Test
+    public void resolutionWithoutNewCheckDoesNotRenewTheRecord()
+        throws IOException
+    {
+        String latest = ArtifactCache.key( "g", "a", null, "jar", "LATEST" );
+        File localRepository = new File( "target/localrepo_" + UUID.randomUUID() );
+        File artifact = createArtifact( localRepository, "content" );
+        LocalRepositoryIndex index = new LocalRepositoryIndex( localRepository );
+        index.add( latest, "1.0", artifact, "central", 2000L );
+        long length = new File( localRepository, LocalRepositoryIndex.FILE_NAME ).length();
+
+        // e.g. the version was served from the version cache, checked earlier
+        index.add( latest, "1.0", artifact, "central", 1000L );
+        assertEquals( 2000L, index.getLastCheck( latest ) );
+        index.add( latest, "1.0", artifact, "central", 2000L + LocalRepositoryIndex.CHECK_RECORD_INTERVAL );
+        assertTrue( new File( localRepository, LocalRepositoryIndex.FILE_NAME ).length() > length );
+        assertEquals( 2000L + LocalRepositoryIndex.CHECK_RECORD_INTERVAL,
+                      new LocalRepositoryIndex( localRepository ).getLastCheck( latest )
+        );
+    }
+
+    @Test
+    public void snapshotsAndLatestAreJournaled()
+    {
+        assertTrue( LocalRepositoryIndex.isJournaled( "1.0" ) );
+        assertTrue( LocalRepositoryIndex.isJournaled( "1.0-SNAPSHOT" ) );
+        assertTrue( LocalRepositoryIndex.isJournaled( "LATEST" ) );
+        assertFalse( LocalRepositoryIndex.isJournaled( "[1.0,2.0)" ) );
+    }
+
+    @Test
+    public void staleRecordsAreCompacted()
+        throws IOException
+    {
+        File localRepository = new File( "target/localrepo_" + UUID.randomUUID() );
+        File artifact = createArtifact( localRepository, "content" );
+        LocalRepositoryIndex index = new LocalRepositoryIndex( localRepository );
+        for( int i = 0; i < 200; i++ ) {
+            index.add( KEY, String.valueOf( i ), artifact, "central", 1000L );
+        }
+        File file = new File( localRepository, LocalRepositoryIndex.FILE_NAME );
+        long length = file.length();
+
+        LocalRepositoryIndex restarted = new LocalRepositoryIndex( localRepository );
+        assertTrue( file.length() < length );
+        assertEquals( "199", restarted.getVersion( KEY ) );
+        assertEquals( 0, localRepository.listFiles( new FilenameFilter()
+        {
+            public boolean accept( final File dir, final String name )
+            {
+                return name.endsWith( ".tmp" );
+            }
+        }
+        ).length );
+    }
+
+    private static File createArtifact( final File repository, final String content )
+        throws IOException
+    {
+        File file = new File( repository, "g/a/1.0/a-1.0.jar" );
+        file.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream( file );
+        try {
+            out.write( content.getBytes( "UTF-8" ) );
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Test;
+import org.sonatype.aether.repository.RemoteRepository;
+
+public class MultiRepositoryDirectoryTest
+{
+
+    @Test
+    public void subDirectoriesAreRepositories()
+    {
+        File dir = new File( "target/multi_" + UUID.randomUUID() );
+        new File( dir, "repo1" ).mkdirs();
+        new File( dir, "repo2" ).mkdirs();
+        List<RemoteRepository> repositories = new MultiRepositoryDirectory( dir, "default" ).getRepositories();
+        assertEquals( 2, repositories.size() );
+        assertEquals( "repo1", repositories.get( 0 ).getId() );
+        assertEquals( "repo2", repositories.get( 1 ).getId() );
+    }
+
+    @Test
+    public void listingIsReusedWithinRefreshInterval()
+    {
+        File dir = new File( "target/multi_" + UUID.randomUUID() );
+        new File( dir, "repo1" ).mkdirs();
+        MultiRepositoryDirectory multi = new MultiRepositoryDirectory( dir, "default" );
+        List<RemoteRepository> repositories = multi.getRepositories();
+        assertSame( repositories, multi.getRepositories() );
+    }
+
+    @Test
+    public void addedRepositoryIsFound()
+        throws InterruptedException
+    {
+        File dir = new File( "target/multi_" + UUID.randomUUID() );
+        new File( dir, "repo1" ).mkdirs();
+        MultiRepositoryDirectory multi = new MultiRepositoryDirectory( dir, "default" );
+        assertEquals( 1, multi.getRepositories().size() );
+        new File( dir, "repo2" ).mkdirs();
+        Thread.sleep( MultiRepositoryDirectory.REFRESH_INTERVAL + 100 );
+        assertEquals( 2, multi.getRepositories().size() );
+    }
+
+    @Test
+    public void missingDirectoryHasNoRepositories()
+    {
+        File dir = new File( "target/multi_" + UUID.randomUUID() );
+        assertEquals( 0, new MultiRepositoryDirectory( dir, "default" ).getRepositories().size() );
+    }
+
+}
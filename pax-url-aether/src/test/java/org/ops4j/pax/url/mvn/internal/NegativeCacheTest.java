@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Test;
+import org.sonatype.aether.artifact.Artifact;
+import org.sonatype.aether.repository.RemoteRepository;
+import org.sonatype.aether.transfer.ArtifactNotFoundException;
+import org.sonatype.aether.util.artifact.DefaultArtifact;
+
+public class NegativeCacheTest
+{
+
+    private final RemoteRepository central = new RemoteRepository( "central", "default", "http://repo1.maven.org/maven2/" );
+    private final RemoteRepository internal = new RemoteRepository( "internal", "default", "http://nexus/content/" );
+    private final Artifact artifact = new DefaultArtifact( "g", "a", "", "jar", "1.0" );
+
+    @Test
+    public void missingRepositoryIsSkipped()
+    {
+        NegativeCache cache = new NegativeCache( 60000, null );
+        cache.record( Collections.<Exception>singletonList( new ArtifactNotFoundException( artifact, central ) ) );
+        List<RemoteRepository> repositories = cache.filter( Arrays.asList( central, internal ), artifact );
+        assertEquals( 1, repositories.size() );
+        assertEquals( "internal", repositories.get( 0 ).getId() );
+    }
+
+    @Test
+    public void disabledCacheDoesNotSkip()
+    {
+        NegativeCache cache = new NegativeCache( 0, null );
+        cache.record( Collections.<Exception>singletonList( new ArtifactNotFoundException( artifact, central ) ) );
+        assertEquals( 2, cache.filter( Arrays.asList( central, internal ), artifact ).size() );
+    }
+
+    @Test
+    public void entriesSurviveRestart()
+    {
+        File localRepository = new File( "target/localrepo_" + UUID.randomUUID() );
+        localRepository.mkdirs();
+        new NegativeCache( 60000, localRepository ).record(
+            Collections.<Exception>singletonList( new ArtifactNotFoundException( artifact, central ) )
+        );
+        assertTrue( new File( localRepository, NegativeCache.FILE_NAME ).isFile() );
+        NegativeCache restarted = new NegativeCache( 60000, localRepository );
+        assertEquals( 1, restarted.filter( Arrays.asList( central, internal ), artifact ).size() );
+    }
+
+    @Test
+    public void writesAreBatchedUntilFlush()
+    {
+        File localRepository = new File( "target/localrepo_" + UUID.randomUUID() );
+        localRepository.mkdirs();
+        NegativeCache cache = new NegativeCache( 60000, localRepository );
+        cache.record( Collections.<Exception>singletonList( new ArtifactNotFoundException( artifact, central ) ) );
+        cache.record( Collections.<Exception>singletonList( new ArtifactNotFoundException( artifact, internal ) ) );
+        assertEquals(
+            1, new NegativeCache( 60000, localRepository ).filter( Arrays.asList( central, internal ), artifact ).size()
+        );
+        cache.flush();
+        assertEquals(
+            0, new NegativeCache( 60000, localRepository ).filter( Arrays.asList( central, internal ), artifact ).size()
+        );
+    }
+
+}
@@ -0,0 +1,522 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Authenticator;
+import java.net.InetSocketAddress;
+import java.net.PasswordAuthentication;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.maven.wagon.TransferFailedException;
+import org.apache.maven.wagon.events.TransferEvent;
+import org.apache.maven.wagon.events.TransferListener;
+import org.apache.maven.wagon.repository.Repository;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PooledHttpWagonTest
+{
+
+    private static final String RESOURCE = "test/lib/1.0/lib-1.0.jar";
+    private static final int SIZE = 256 * 1024;
+    private static final String ETAG = "\"v1\"";
+
+    private RangeRepository m_repository;
+    private Server m_server;
+    private MultiThreadedHttpConnectionManager m_connectionManager;
+    private HttpClient m_client;
+    private ExecutorService m_rangeExecutor;
+    private File m_destination;
+    private File m_part;
+
+    @Before
+    public void startServer()
+        throws Exception
+    {
+        m_repository = new RangeRepository( content( 1, SIZE ), ETAG );
+        m_server = new Server( 0 );
+        m_server.setHandler( m_repository );
+        m_server.start();
+        m_connectionManager = new MultiThreadedHttpConnectionManager();
+        m_connectionManager.getParams().setDefaultMaxConnectionsPerHost( 8 );
+        m_client = new HttpClient( m_connectionManager );
+        m_rangeExecutor = Executors.newCachedThreadPool();
+        m_destination = new File( "target/wagon_" + UUID.randomUUID() + "/" + RESOURCE );
+        m_part = new File( m_destination.getParentFile(), m_destination.getName() + PooledHttpWagon.PART_SUFFIX );
+    }
+
+    @After
+    public void stopServer()
+        throws Exception
+    {
+        m_rangeExecutor.shutdownNow();
+        m_connectionManager.shutdown();
+        m_server.stop();
+    }
+
+    @Test
+    public void connectionsAreReused()
+        throws Exception
+    {
+        PooledHttpWagon wagon = wagon( "http://localhost:" + getPort() + "/repo", 0 );
+        wagon.get( RESOURCE, m_destination );
+        wagon.get( "test/lib/1.0/lib-1.0-sources.jar", new File( m_destination.getParentFile(), "sources.jar" ) );
+
+        assertEquals( 2, m_repository.m_received.size() );
+        assertEquals( m_repository.m_received.get( 0 ).m_port, m_repository.m_received.get( 1 ).m_port );
+        assertArrayEquals( m_repository.m_content, read( m_destination ) );
+    }
+
+    @Test
+    public void systemProxyAndAuthenticatorAreUsedWithoutSettings()
+        throws Exception
+    {
+        m_repository.m_proxyAuthorization = "Basic dXNlcjpzZWNyZXQ=";
+        final InetSocketAddress proxy = new InetSocketAddress( "localhost", getPort() );
+        ProxySelector selector = ProxySelector.getDefault();
+        ProxySelector.setDefault( new ProxySelector()
+        {
+            @Override
+            public List<Proxy> select( final URI uri )
+            {
+                return Collections.singletonList( new Proxy( Proxy.Type.HTTP, proxy ) );
+            }
+
+            @Override
+            public void connectFailed( final URI uri, final SocketAddress address, final IOException e )
+            {
+            }
+        }
+        );
+        Authenticator.setDefault( new Authenticator()
+        {
+            @Override
+            protected PasswordAuthentication getPasswordAuthentication()
+            {
+                if( getRequestorType() != RequestorType.PROXY ) {
+                    return null;
+                }
+                return new PasswordAuthentication( "user", "secret".toCharArray() );
+            }
+        }
+        );
+        try {
+            // only reachable through the proxy
+            wagon( "http://repo.invalid/repo", 0 ).get( RESOURCE, m_destination );
+        } finally {
+            Authenticator.setDefault( null );
+            ProxySelector.setDefault( selector );
+        }
+
+        Received last = m_repository.m_received.get( m_repository.m_received.size() - 1 );
+        assertEquals( "repo.invalid", last.m_host );
+        assertEquals( m_repository.m_proxyAuthorization, last.m_proxyAuthorization );
+        assertArrayEquals( m_repository.m_content, read( m_destination ) );
+    }
+
+    @Test
+    public void interruptedDownloadIsResumed()
+        throws Exception
+    {
+        PooledHttpWagon wagon = wagon( "http://localhost:" + getPort() + "/repo", 0 );
+        m_repository.m_truncateAt = 100000;
+        try {
+            wagon.get( RESOURCE, m_destination );
+            fail( "Truncated download should fail" );
+        } catch( TransferFailedException expected ) {
+            // kept for the next attempt
+        }
+        assertFalse( m_destination.exists() );
+        assertEquals( 100000, m_part.length() );
+
+        m_repository.m_truncateAt = -1;
+        Checksum checksum = new Checksum();
+        wagon.addTransferListener( checksum );
+        wagon.get( RESOURCE, m_destination );
+
+        Received resumed = m_repository.m_received.get( 1 );
+        assertEquals( "bytes=100000-", resumed.m_range );
+        assertEquals( ETAG, resumed.m_ifRange );
+        assertEquals( HttpServletResponse.SC_PARTIAL_CONTENT, resumed.m_status );
+        assertArrayEquals( m_repository.m_content, read( m_destination ) );
+        // the content downloaded by the first attempt is reported as well
+        assertArrayEquals( sha1( m_repository.m_content ), checksum.digest() );
+        assertFalse( m_part.exists() );
+        assertFalse( validatorFile().exists() );
+    }
+
+    @Test
+    public void unsatisfiableRangeRestartsTheDownload()
+        throws Exception
+    {
+        // longer than the resource, as left by a download of another version with the same validator
+        preparePart( SIZE + 10, ETAG );
+        Checksum checksum = new Checksum();
+        PooledHttpWagon wagon = wagon( "http://localhost:" + getPort() + "/repo", 0 );
+        wagon.addTransferListener( checksum );
+        wagon.get( RESOURCE, m_destination );
+
+        assertEquals( 2, m_repository.m_received.size() );
+        assertEquals( HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, m_repository.m_received.get( 0 ).m_status );
+        assertNull( m_repository.m_received.get( 1 ).m_range );
+        assertArrayEquals( m_repository.m_content, read( m_destination ) );
+        assertArrayEquals( sha1( m_repository.m_content ), checksum.digest() );
+    }
+
+    @Test
+    public void changedResourceIsDownloadedAgain()
+        throws Exception
+    {
+        preparePart( 1000, "\"v0\"" );
+        wagon( "http://localhost:" + getPort() + "/repo", 0 ).get( RESOURCE, m_destination );
+
+        assertEquals( 1, m_repository.m_received.size() );
+        assertEquals( "\"v0\"", m_repository.m_received.get( 0 ).m_ifRange );
+        assertEquals( HttpServletResponse.SC_OK, m_repository.m_received.get( 0 ).m_status );
+        assertArrayEquals( m_repository.m_content, read( m_destination ) );
+    }
+
+    @Test
+    public void rangeOfChangedResourceIsNotMixed()
+        throws Exception
+    {
+        // the server ignores If-Range, but reports the validator of the current content
+        m_repository.m_ignoreIfRange = true;
+        preparePart( 1000, "\"v0\"" );
+        wagon( "http://localhost:" + getPort() + "/repo", 0 ).get( RESOURCE, m_destination );
+
+        assertEquals( 2, m_repository.m_received.size() );
+        assertEquals( HttpServletResponse.SC_PARTIAL_CONTENT, m_repository.m_received.get( 0 ).m_status );
+        assertNull( m_repository.m_received.get( 1 ).m_range );
+        assertArrayEquals( m_repository.m_content, read( m_destination ) );
+    }
+
+    @Test
+    public void rangesAreDownloadedInParallel()
+        throws Exception
+    {
+        Checksum checksum = new Checksum();
+        PooledHttpWagon wagon = wagon( "http://localhost:" + getPort() + "/repo", 1024 );
+        wagon.addTransferListener( checksum );
+        wagon.get( RESOURCE, m_destination );
+
+        assertEquals( 4, m_repository.m_received.size() );
+        int ranges = 0;
+        for( Received received : m_repository.m_received ) {
+            if( received.m_range != null ) {
+                assertEquals( ETAG, received.m_ifRange );
+                assertEquals( HttpServletResponse.SC_PARTIAL_CONTENT, received.m_status );
+                ranges++;
+            }
+        }
+        assertEquals( 3, ranges );
+        assertArrayEquals( m_repository.m_content, read( m_destination ) );
+        assertArrayEquals( sha1( m_repository.m_content ), checksum.digest() );
+    }
+
+    @Test
+    public void failedRangeKeepsTheCompleteRanges()
+        throws Exception
+    {
+        PooledHttpWagon wagon = wagon( "http://localhost:" + getPort() + "/repo", 1024 );
+        m_repository.m_failRangeAt = SIZE / 2;
+        try {
+            wagon.get( RESOURCE, m_destination );
+            fail( "Failed range should fail the download" );
+        } catch( TransferFailedException expected ) {
+            // kept for the next attempt
+        }
+        // the first two ranges are complete, whatever the state of the last one
+        assertEquals( SIZE / 2, m_part.length() );
+
+        m_repository.m_failRangeAt = -1;
+        final int first = m_repository.m_received.size();
+        Checksum checksum = new Checksum();
+        wagon.addTransferListener( checksum );
+        wagon.get( RESOURCE, m_destination );
+
+        assertEquals( "bytes=" + SIZE / 2 + "-", m_repository.m_received.get( first ).m_range );
+        assertArrayEquals( m_repository.m_content, read( m_destination ) );
+        assertArrayEquals( sha1( m_repository.m_content ), checksum.digest() );
+    }
+
+    private PooledHttpWagon wagon( final String url, final long rangeThreshold )
+        throws Exception
+    {
+        PooledHttpWagon wagon = new PooledHttpWagon(
+            m_client, false, new DownloadTaps(), new RepositoryHealth( 0, 0 ), new TransferScheduler( 0, 0 ),
+            rangeThreshold, 4, m_rangeExecutor
+        );
+        wagon.connect( new Repository( "test", url ) );
+        return wagon;
+    }
+
+    private int getPort()
+    {
+        return m_server.getConnectors()[0].getLocalPort();
+    }
+
+    private File validatorFile()
+    {
+        return new File( m_part.getParentFile(), m_part.getName() + PooledHttpWagon.VALIDATOR_SUFFIX );
+    }
+
+    /**
+     * Leaves a .part file as an interrupted download would.
+     */
+    private void preparePart( final int length, final String validator )
+        throws IOException
+    {
+        m_part.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream( m_part );
+        try {
+            out.write( content( 2, length ) );
+        } finally {
+            out.close();
+        }
+        DataOutputStream validatorOut = new DataOutputStream( new FileOutputStream( validatorFile() ) );
+        try {
+            validatorOut.writeUTF( validator );
+        } finally {
+            validatorOut.close();
+        }
+    }
+
+    private static byte[] content( final long seed, final int length )
+    {
+        byte[] content = new byte[length];
+        new Random( seed ).nextBytes( content );
+        return content;
+    }
+
+    private static byte[] read( final File file )
+        throws IOException
+    {
+        InputStream in = new FileInputStream( file );
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while( ( read = in.read( buffer ) ) > 0 ) {
+                out.write( buffer, 0, read );
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] sha1( final byte[] content )
+        throws Exception
+    {
+        return MessageDigest.getInstance( "SHA-1" ).digest( content );
+    }
+
+    /**
+     * Computes the checksum of the content reported as transfer progress, as the Aether connector does.
+     */
+    private static class Checksum
+        implements TransferListener
+    {
+
+        private MessageDigest m_digest;
+
+        byte[] digest()
+        {
+            return m_digest.digest();
+        }
+
+        public void transferInitiated( final TransferEvent event )
+        {
+        }
+
+        public void transferStarted( final TransferEvent event )
+        {
+            try {
+                m_digest = MessageDigest.getInstance( "SHA-1" );
+            } catch( Exception e ) {
+                throw new IllegalStateException( e );
+            }
+        }
+
+        public void transferProgress( final TransferEvent event, final byte[] buffer, final int length )
+        {
+            m_digest.update( buffer, 0, length );
+        }
+
+        public void transferCompleted( final TransferEvent event )
+        {
+        }
+
+        public void transferError( final TransferEvent event )
+        {
+        }
+
+        public void debug( final String message )
+        {
+        }
+
+    }
+
+    /**
+     * A request received by the repository.
+     */
+    private static class Received
+    {
+
+        String m_host;
+        int m_port;
+        String m_range;
+        String m_ifRange;
+        String m_proxyAuthorization;
+        int m_status;
+
+    }
+
+    /**
+     * Repository serving the same content for every jar, with ranges validated by an ETag.
+     */
+    private static class RangeRepository
+        extends AbstractHandler
+    {
+
+        final byte[] m_content;
+        final String m_etag;
+        final List<Received> m_received = new CopyOnWriteArrayList<Received>();
+        /**
+         * Number of bytes after which full responses are cut off; -1 to send them whole.
+         */
+        volatile long m_truncateAt = -1;
+        /**
+         * Start of the range answered with a server error; -1 for none.
+         */
+        volatile long m_failRangeAt = -1;
+        /**
+         * Returns ranges whatever the If-Range header.
+         */
+        volatile boolean m_ignoreIfRange;
+        /**
+         * Proxy authorization required; null for none.
+         */
+        volatile String m_proxyAuthorization;
+
+        RangeRepository( final byte[] content, final String etag )
+        {
+            m_content = content;
+            m_etag = etag;
+        }
+
+        public void handle( final String target, final Request baseRequest, final HttpServletRequest request,
+                            final HttpServletResponse response )
+            throws IOException
+        {
+            baseRequest.setHandled( true );
+            if( m_proxyAuthorization != null
+                && !m_proxyAuthorization.equals( request.getHeader( "Proxy-Authorization" ) ) ) {
+                response.setHeader( "Proxy-Authenticate", "Basic realm=\"proxy\"" );
+                response.setStatus( HttpServletResponse.SC_PROXY_AUTHENTICATION_REQUIRED );
+                return;
+            }
+            final Received received = new Received();
+            received.m_host = request.getServerName();
+            received.m_port = request.getRemotePort();
+            received.m_range = request.getHeader( "Range" );
+            received.m_ifRange = request.getHeader( "If-Range" );
+            received.m_proxyAuthorization = request.getHeader( "Proxy-Authorization" );
+            m_received.add( received );
+            if( !"GET".equals( request.getMethod() ) || !target.endsWith( ".jar" ) ) {
+                received.m_status = HttpServletResponse.SC_NOT_FOUND;
+                response.setStatus( received.m_status );
+                return;
+            }
+            response.setHeader( "ETag", m_etag );
+            response.setHeader( "Accept-Ranges", "bytes" );
+            if( received.m_range != null
+                && ( m_ignoreIfRange || received.m_ifRange == null || received.m_ifRange.equals( m_etag ) ) ) {
+                // bytes=<start>-[<end>]
+                final String range = received.m_range.substring( received.m_range.indexOf( '=' ) + 1 );
+                final int dash = range.indexOf( '-' );
+                final int start = Integer.parseInt( range.substring( 0, dash ) );
+                final int end = dash == range.length() - 1
+                                ? m_content.length - 1
+                                : Math.min( m_content.length - 1, Integer.parseInt( range.substring( dash + 1 ) ) );
+                if( start >= m_content.length ) {
+                    received.m_status = HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE;
+                    response.setHeader( "Content-Range", "bytes */" + m_content.length );
+                    response.setStatus( received.m_status );
+                    return;
+                }
+                if( start == m_failRangeAt ) {
+                    received.m_status = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+                    response.setStatus( received.m_status );
+                    return;
+                }
+                received.m_status = HttpServletResponse.SC_PARTIAL_CONTENT;
+                response.setStatus( received.m_status );
+                response.setHeader( "Content-Range", "bytes " + start + "-" + end + "/" + m_content.length );
+                response.setContentLength( end - start + 1 );
+                response.getOutputStream().write( m_content, start, end - start + 1 );
+                return;
+            }
+            received.m_status = HttpServletResponse.SC_OK;
+            response.setStatus( received.m_status );
+            response.setContentLength( m_content.length );
+            if( m_truncateAt < 0 ) {
+                response.getOutputStream().write( m_content );
+                return;
+            }
+            response.getOutputStream().write( m_content, 0, (int) m_truncateAt );
+            response.flushBuffer();
+            // the client sees the connection closed before the announced length
+            baseRequest.getConnection().getEndPoint().close();
+        }
+
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.sonatype.aether.repository.RemoteRepository;
+
+public class RepositoryHealthTest
+{
+
+    private final RemoteRepository central = new RemoteRepository( "central", "default", "http://repo1.maven.org/maven2/" );
+    private final RemoteRepository mirror = new RemoteRepository( "mirror", "default", "http://mirror/maven2/" );
+    private final RemoteRepository local = new RemoteRepository( "local", "default", "file:/repository/" );
+
+    @Test
+    public void fasterRepositoriesComeFirst()
+    {
+        RepositoryHealth health = new RepositoryHealth( 3, 60000 );
+        health.success( "central", 400 );
+        health.success( "mirror", 20 );
+        List<RemoteRepository> selected = health.select( Arrays.asList( central, mirror, local ) );
+        assertEquals( Arrays.asList( local, mirror, central ), selected );
+    }
+
+    @Test
+    public void failingRepositoryIsSkipped()
+    {
+        RepositoryHealth health = new RepositoryHealth( 2, 60000 );
+        health.failure( "central", 10000 );
+        assertEquals( 2, health.select( Arrays.asList( central, mirror ) ).size() );
+        health.failure( "central", 10000 );
+        assertEquals( Arrays.asList( mirror ), health.select( Arrays.asList( central, mirror ) ) );
+    }
+
+    @Test
+    public void repositoryIsRetriedAfterTimeout()
+        throws InterruptedException
+    {
+        RepositoryHealth health = new RepositoryHealth( 1, 50 );
+        health.failure( "central", 10000 );
+        assertEquals( Arrays.asList( mirror ), health.select( Arrays.asList( central, mirror ) ) );
+        Thread.sleep( 100 );
+        assertEquals( 2, health.select( Arrays.asList( central, mirror ) ).size() );
+        health.success( "central", 10 );
+        health.failure( "mirror", 10 );
+        assertEquals( Arrays.asList( central ), health.select( Arrays.asList( central, mirror ) ) );
+    }
+
+    @Test
+    public void allRepositoriesAreReturnedWhenAllFail()
+    {
+        RepositoryHealth health = new RepositoryHealth( 1, 60000 );
+        health.failure( "central", 10000 );
+        health.failure( "mirror", 10000 );
+        assertEquals( Arrays.asList( central, mirror ), health.select( Arrays.asList( central, mirror ) ) );
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.sonatype.aether.repository.RemoteRepository;
+
+public class RepositoryRoutesTest
+{
+
+    private final RemoteRepository central = new RemoteRepository( "central", "default", "http://repo1.maven.org/maven2/" );
+    private final RemoteRepository internal = new RemoteRepository( "internal", "default", "http://nexus/content/" );
+    private final List<RemoteRepository> all = Arrays.asList( central, internal );
+
+    private RepositoryRoutes routes()
+    {
+        Map<String, List<String>> routes = new LinkedHashMap<String, List<String>>();
+        routes.put( "com.ourcorp.*", Arrays.asList( "internal" ) );
+        routes.put( "com.ourcorp.public", Arrays.asList( "central", "internal" ) );
+        routes.put( "*", Arrays.asList( "central" ) );
+        routes.put( "org.missing.*", Arrays.asList( "unknown" ) );
+        return new RepositoryRoutes( routes );
+    }
+
+    @Test
+    public void subgroupsAreRouted()
+    {
+        assertEquals( Arrays.asList( internal ), routes().select( all, "com.ourcorp.app" ) );
+        assertEquals( Arrays.asList( internal ), routes().select( all, "com.ourcorp" ) );
+    }
+
+    @Test
+    public void mostSpecificRouteWins()
+    {
+        assertEquals( all, routes().select( all, "com.ourcorp.public" ) );
+    }
+
+    @Test
+    public void wildcardRoute()
+    {
+        assertEquals( Arrays.asList( central ), routes().select( all, "org.apache.felix" ) );
+        assertEquals( Arrays.asList( central ), routes().select( all, "com.ourcorpother" ) );
+    }
+
+    @Test
+    public void unknownRepositoriesFallBackToAll()
+    {
+        assertEquals( all, routes().select( all, "org.missing.app" ) );
+    }
+
+    @Test
+    public void noRoutes()
+    {
+        assertEquals( all, new RepositoryRoutes( null ).select( all, "com.ourcorp.app" ) );
+    }
+
+}
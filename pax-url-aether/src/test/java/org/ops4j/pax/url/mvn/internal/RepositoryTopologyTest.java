@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.Test;
+import org.sonatype.aether.repository.MirrorSelector;
+import org.sonatype.aether.repository.Proxy;
+import org.sonatype.aether.repository.ProxySelector;
+import org.sonatype.aether.repository.RemoteRepository;
+
+public class RepositoryTopologyTest
+{
+
+    private static final ProxySelector NO_PROXY = new ProxySelector()
+    {
+        public Proxy getProxy( final RemoteRepository repository )
+        {
+            return null;
+        }
+    };
+
+    private static final MirrorSelector NO_MIRROR = new MirrorSelector()
+    {
+        public RemoteRepository getMirror( final RemoteRepository repository )
+        {
+            return null;
+        }
+    };
+
+    private final RemoteRepository central = new RemoteRepository( "central", "default", "http://repo1.maven.org/maven2/" );
+    private final RemoteRepository internal = new RemoteRepository( "internal", "default", "http://nexus/content/" );
+
+    @Test
+    public void routesArePrecomputed()
+    {
+        Map<String, List<String>> routes = new LinkedHashMap<String, List<String>>();
+        routes.put( "com.ourcorp.*", Arrays.asList( "internal" ) );
+        RepositoryTopology topology = new RepositoryTopology(
+            Arrays.asList( central, internal ), Collections.<MultiRepositoryDirectory, List<RemoteRepository>>emptyMap(),
+            new RepositoryRoutes( routes ), NO_MIRROR, NO_PROXY
+        );
+        assertEquals( 1, topology.getRepositories( "com.ourcorp.app" ).size() );
+        assertEquals( "internal", topology.getRepositories( "com.ourcorp.app" ).get( 0 ).getId() );
+        assertEquals( 2, topology.getRepositories( "org.apache" ).size() );
+        assertSame( topology.getRepositories( "org.apache" ), topology.getRepositories( "org.ops4j" ) );
+    }
+
+    @Test
+    public void mirrorReplacesMirroredRepositories()
+    {
+        final RemoteRepository mirror = new RemoteRepository( "mirror", "default", "http://mirror/" );
+        MirrorSelector mirrorSelector = new MirrorSelector()
+        {
+            public RemoteRepository getMirror( final RemoteRepository repository )
+            {
+                return "central".equals( repository.getId() ) ? mirror : null;
+            }
+        };
+        RepositoryTopology topology = new RepositoryTopology(
+            Arrays.asList( central, internal ), Collections.<MultiRepositoryDirectory, List<RemoteRepository>>emptyMap(),
+            new RepositoryRoutes( null ), mirrorSelector, NO_PROXY
+        );
+        List<RemoteRepository> repositories = topology.getRepositories( "org.apache" );
+        assertEquals( 2, repositories.size() );
+        assertSame( mirror, repositories.get( 0 ) );
+        assertEquals( "central", mirror.getMirroredRepositories().get( 0 ).getId() );
+        assertEquals( "internal", repositories.get( 1 ).getId() );
+    }
+
+    @Test
+    public void topologyIsStaleWhenMultiDirectoryChanges()
+        throws InterruptedException
+    {
+        File dir = new File( "target/multi_" + UUID.randomUUID() );
+        new File( dir, "repo1" ).mkdirs();
+        MultiRepositoryDirectory multi = new MultiRepositoryDirectory( dir, "default" );
+        Map<MultiRepositoryDirectory, List<RemoteRepository>> multiDirs =
+            new HashMap<MultiRepositoryDirectory, List<RemoteRepository>>();
+        multiDirs.put( multi, multi.getRepositories() );
+        RepositoryTopology topology = new RepositoryTopology(
+            multi.getRepositories(), multiDirs, new RepositoryRoutes( null ), NO_MIRROR, NO_PROXY
+        );
+        assertFalse( topology.isStale() );
+        new File( dir, "repo2" ).mkdirs();
+        Thread.sleep( MultiRepositoryDirectory.REFRESH_INTERVAL + 100 );
+        assertTrue( topology.isStale() );
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.ops4j.pax.url.maven.commons.MavenConfiguration;
+import org.ops4j.pax.url.maven.commons.MavenConfigurationImpl;
+import org.ops4j.pax.url.maven.commons.MavenConstants;
+import org.ops4j.util.property.PropertiesPropertyResolver;
+
+public class ResolverHolderTest
+{
+
+    private static final String TEST_PID = "test.pid";
+
+    @Test
+    public void connectionsDoNotReplaceTheConfiguration()
+        throws Exception
+    {
+        final ResolverHolder holder = new ResolverHolder();
+        final MavenConfiguration first = config( "repo2" );
+        final MavenConfiguration second = config( "repo3" );
+        holder.setConfiguration( first );
+        final AetherBasedResolver replaced = holder.getResolver();
+
+        // connections created with the first configuration, opened while the second one is set
+        final List<Connection> connections = new ArrayList<Connection>();
+        for( int i = 0; i < 32; i++ ) {
+            connections.add( new Connection( new URL( "file:test/lib/1.0" ), holder ) );
+        }
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        try {
+            final List<Future<AetherBasedResolver>> futures = new ArrayList<Future<AetherBasedResolver>>();
+            for( final Connection connection : connections ) {
+                futures.add( executor.submit( new Callable<AetherBasedResolver>()
+                {
+                    public AetherBasedResolver call()
+                        throws Exception
+                    {
+                        start.await();
+                        // only found in the repository of the second configuration
+                        connection.getInputStream().close();
+                        return holder.getResolver();
+                    }
+                }
+                ) );
+            }
+            holder.setConfiguration( second );
+            start.countDown();
+            final AetherBasedResolver current = holder.getResolver();
+            for( Future<AetherBasedResolver> future : futures ) {
+                assertSame( current, future.get() );
+            }
+            assertSame( second, holder.getConfiguration() );
+        } finally {
+            executor.shutdownNow();
+            holder.close();
+        }
+        try {
+            replaced.resolveFile( "ant", "ant", "", "jar", "1.5.1" );
+            fail( "Replaced resolver should be closed" );
+        } catch( IOException expected ) {
+            // closed once idle
+        }
+    }
+
+    private static MavenConfiguration config( final String repository )
+    {
+        Properties properties = new Properties();
+        properties.setProperty( TEST_PID + MavenConstants.PROPERTY_LOCAL_REPOSITORY,
+                                "target/localrepo_" + UUID.randomUUID()
+        );
+        properties.setProperty( TEST_PID + MavenConstants.PROPERTY_REPOSITORIES,
+                                new File( "target/test-classes/" + repository ).toURI().toString() + "@id=" + repository
+        );
+        return new MavenConfigurationImpl( new PropertiesPropertyResolver( properties ), TEST_PID );
+    }
+
+}
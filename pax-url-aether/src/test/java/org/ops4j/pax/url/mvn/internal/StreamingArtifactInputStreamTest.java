@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+import org.junit.Test;
+
+public class StreamingArtifactInputStreamTest
+{
+
+    private static final String PATH = DownloadTaps.path( "g", "a", null, "jar", "1.0" );
+
+    @Test
+    public void contentIsReadWhileDownloaded()
+        throws Exception
+    {
+        final File file = File.createTempFile( "a-1.0", ".jar" );
+        file.deleteOnExit();
+        DownloadTaps taps = new DownloadTaps();
+        final DownloadTaps.Tap tap = taps.open( PATH );
+        final FutureTask<File> resolution = new FutureTask<File>( new Callable<File>()
+        {
+            public File call()
+                throws Exception
+            {
+                tap.started( file );
+                OutputStream out = new FileOutputStream( file );
+                try {
+                    for( int i = 0; i < 10; i++ ) {
+                        out.write( ( "chunk" + i ).getBytes( "UTF-8" ) );
+                        out.flush();
+                        Thread.sleep( 20 );
+                    }
+                } finally {
+                    out.close();
+                }
+                tap.ended();
+                return file;
+            }
+        }
+        );
+        new Thread( resolution ).start();
+
+        InputStream in = new StreamingArtifactInputStream( taps, tap, resolution );
+        try {
+            assertEquals( "chunk0chunk1chunk2chunk3chunk4chunk5chunk6chunk7chunk8chunk9", readAll( in ) );
+        } finally {
+            in.close();
+        }
+        assertEquals( "Tap not closed", null, taps.get( PATH ) );
+    }
+
+    @Test
+    public void failedResolutionFailsTheStream()
+        throws Exception
+    {
+        final File file = File.createTempFile( "a-1.0", ".jar" );
+        file.deleteOnExit();
+        DownloadTaps taps = new DownloadTaps();
+        final DownloadTaps.Tap tap = taps.open( PATH );
+        final FutureTask<File> resolution = new FutureTask<File>( new Callable<File>()
+        {
+            public File call()
+                throws Exception
+            {
+                tap.started( file );
+                OutputStream out = new FileOutputStream( file );
+                try {
+                    out.write( "corrupted".getBytes( "UTF-8" ) );
+                } finally {
+                    out.close();
+                }
+                tap.ended();
+                throw new IOException( "Checksum validation failed" );
+            }
+        }
+        );
+        new Thread( resolution ).start();
+
+        InputStream in = new StreamingArtifactInputStream( taps, tap, resolution );
+        try {
+            readAll( in );
+            fail( "Expected IOException" );
+        } catch( IOException e ) {
+            assertEquals( "Checksum validation failed", e.getMessage() );
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String readAll( final InputStream in )
+        throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4];
+        int read;
+        while( ( read = in.read( buffer ) ) != -1 ) {
+            out.write( buffer, 0, read );
+        }
+        return out.toString( "UTF-8" );
+    }
+
+}
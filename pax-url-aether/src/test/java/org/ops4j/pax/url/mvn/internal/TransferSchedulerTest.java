@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+
+public class TransferSchedulerTest
+{
+
+    @Test
+    public void slotsArePerHost()
+        throws IOException
+    {
+        TransferScheduler scheduler = new TransferScheduler( 2, 0 );
+        scheduler.acquire( "host1" );
+        assertEquals( 1, scheduler.tryAcquire( "host1", 3 ) );
+        assertEquals( 0, scheduler.tryAcquire( "host1", 1 ) );
+        assertEquals( 2, scheduler.tryAcquire( "host2", 2 ) );
+        scheduler.release( "host1", 2 );
+        assertEquals( 2, scheduler.tryAcquire( "host1", 2 ) );
+    }
+
+    @Test
+    public void interactiveDownloadsStartFirst()
+        throws Exception
+    {
+        final TransferScheduler scheduler = new TransferScheduler( 1, 0 );
+        final List<String> started = new CopyOnWriteArrayList<String>();
+        scheduler.acquire( "host" );
+
+        Thread background = new Thread( new Download( scheduler, started, "background", true ) );
+        background.start();
+        Thread.sleep( 200 );
+        Thread interactive = new Thread( new Download( scheduler, started, "interactive", false ) );
+        interactive.start();
+        Thread.sleep( 200 );
+
+        scheduler.release( "host", 1 );
+        background.join( 5000 );
+        interactive.join( 5000 );
+        assertEquals( 2, started.size() );
+        assertEquals( "interactive", started.get( 0 ) );
+    }
+
+    @Test
+    public void rateIsLimited()
+        throws IOException
+    {
+        TransferScheduler scheduler = new TransferScheduler( 0, 10000 );
+        InputStream in = scheduler.throttle( new ByteArrayInputStream( new byte[25000] ) );
+        long start = System.currentTimeMillis();
+        byte[] buffer = new byte[1000];
+        while( in.read( buffer ) > 0 ) {
+            // consume
+        }
+        // the first second of transfer is available at once
+        assertTrue( System.currentTimeMillis() - start >= 1400 );
+    }
+
+    private static class Download
+        implements Runnable
+    {
+
+        private final TransferScheduler m_scheduler;
+        private final List<String> m_started;
+        private final String m_name;
+        private final boolean m_background;
+
+        Download( final TransferScheduler scheduler, final List<String> started, final String name,
+                  final boolean background )
+        {
+            m_scheduler = scheduler;
+            m_started = started;
+            m_name = name;
+            m_background = background;
+        }
+
+        public void run()
+        {
+            TransferScheduler.setBackground( m_background );
+            try {
+                m_scheduler.acquire( "host" );
+                m_started.add( m_name );
+                Thread.sleep( 100 );
+                m_scheduler.release( "host", 1 );
+            } catch( Exception e ) {
+                m_started.add( e.toString() );
+            }
+        }
+
+    }
+
+}
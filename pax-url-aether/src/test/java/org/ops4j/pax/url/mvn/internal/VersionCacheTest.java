@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.mvn.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Calendar;
+
+import org.junit.Test;
+import org.sonatype.aether.repository.RemoteRepository;
+import org.sonatype.aether.repository.RepositoryPolicy;
+
+public class VersionCacheTest
+{
+
+    private static final String KEY = ArtifactCache.key( "g", "a", null, "jar", "LATEST" );
+
+    @Test
+    public void nextCheck()
+    {
+        assertEquals( 1000L, VersionCache.nextCheck( "always", 1000L ) );
+        assertEquals( Long.MAX_VALUE, VersionCache.nextCheck( "never", 1000L ) );
+        assertEquals( 1000L + 5 * 60 * 1000L, VersionCache.nextCheck( "interval:5", 1000L ) );
+
+        long now = System.currentTimeMillis();
+        Calendar next = Calendar.getInstance();
+        next.setTimeInMillis( VersionCache.nextCheck( "daily", now ) );
+        assertTrue( next.getTimeInMillis() > now );
+        assertTrue( next.getTimeInMillis() <= now + 25 * 60 * 60 * 1000L );
+        assertEquals( 0, next.get( Calendar.HOUR_OF_DAY ) );
+        assertEquals( 0, next.get( Calendar.MINUTE ) );
+    }
+
+    @Test
+    public void versionIsCachedUntilNextCheck()
+    {
+        VersionCache cache = new VersionCache();
+        cache.put( KEY, "1.2", Arrays.asList( repository( "central", "never" ) ) );
+        assertEquals( "1.2", cache.get( KEY ) );
+    }
+
+    @Test
+    public void alwaysPolicyDisablesCache()
+    {
+        VersionCache cache = new VersionCache();
+        cache.put( KEY, "1.2", Arrays.asList( repository( "central", "never" ), repository( "snapshots", "always" ) ) );
+        assertNull( cache.get( KEY ) );
+    }
+
+    private static RemoteRepository repository( final String id, final String updatePolicy )
+    {
+        RemoteRepository repository = new RemoteRepository( id, "default", "http://" + id + "/" );
+        repository.setPolicy( true, new RepositoryPolicy( true, updatePolicy, RepositoryPolicy.CHECKSUM_POLICY_WARN ) );
+        repository.setPolicy( false, new RepositoryPolicy( true, updatePolicy, RepositoryPolicy.CHECKSUM_POLICY_WARN ) );
+        return repository;
+    }
+
+}
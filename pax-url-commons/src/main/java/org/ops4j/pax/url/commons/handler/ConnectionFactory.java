@@ -50,6 +50,8 @@ public interface ConnectionFactory<T>
     /**
      * Creates a handler specific configuration. Returns null if there is
      * insufficient configuration information in the resolver.
+     * The configuration is shared by connections opened from any thread, so it should be completely built
+     * (preferably immutable) when returned.
      *
      * @param propertyResolver configuration propertyResolver
      *
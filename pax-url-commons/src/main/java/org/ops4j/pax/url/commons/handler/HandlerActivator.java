@@ -71,15 +71,16 @@ public class HandlerActivator<T>
     /**
      * Bundle context in use.
      */
-    private BundleContext m_bundleContext;
+    private volatile BundleContext m_bundleContext;
     /**
      * Property resolver to be used on resolving properties.
      */
-    private PropertyResolver m_propertyResolver;
+    private volatile PropertyResolver m_propertyResolver;
     /**
-     * Protocol handler specific configuration.
+     * Protocol handler specific configuration. Built completely before being published, and replaced as a whole on
+     * configuration updates, so connections read it without locking.
      */
-    private T m_configuration;
+    private volatile T m_configuration;
     /**
      * Handler service registration. Usef for cleanup.
      */
@@ -217,20 +218,21 @@ public class HandlerActivator<T>
      *
      * @return property resolver
      */
-    synchronized PropertyResolver getResolver()
+    PropertyResolver getResolver()
     {
         return m_propertyResolver;
     }
 
     /**
-     * Setter.
+     * Setter. Updates are serialized; the new configuration is published once built.
      *
      * @param propertyResolver property resolver
      */
     synchronized void setResolver( final PropertyResolver propertyResolver )
     {
+        final T configuration = m_connectionFactory.createConfiguration( propertyResolver );
         m_propertyResolver = propertyResolver;
-        m_configuration = m_connectionFactory.createConfiguration( propertyResolver );
+        m_configuration = configuration;
     }
 
     /**
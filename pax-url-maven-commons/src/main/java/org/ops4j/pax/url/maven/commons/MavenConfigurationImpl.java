@@ -25,8 +25,11 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.ops4j.lang.NullArgumentException;
 import org.ops4j.util.property.PropertyResolver;
@@ -43,7 +46,7 @@ import org.slf4j.LoggerFactory;
  */
 public class MavenConfigurationImpl
     extends PropertyStore
-    implements MavenConfiguration {
+    implements MavenConfiguration, ResolverConfiguration {
 
     /**
      * Logger.
@@ -59,11 +62,21 @@ public class MavenConfigurationImpl
      * Repositories separator.
      */
     private final static String REPOSITORIES_SEPARATOR = ",";
+    /**
+     * Routes separator.
+     */
+    private final static String ROUTES_SEPARATOR = ";";
+    /**
+     * Properties computed from the settings.
+     */
+    private final static String[] SETTINGS_PROPERTIES = {
+        MavenConstants.PROPERTY_REPOSITORIES, MavenConstants.PROPERTY_LOCAL_REPOSITORY
+    };
 
     /**
-     * Maven settings abstraction. Can be null.
+     * Maven settings abstraction. Can be null. Replaced when settings change.
      */
-    private MavenSettings m_settings;
+    private volatile MavenSettings m_settings;
     /**
      * Configuration PID. Cannot be null or empty.
      */
@@ -72,6 +85,10 @@ public class MavenConfigurationImpl
      * Property resolver. Cannot be null.
      */
     private final PropertyResolver m_propertyResolver;
+    /**
+     * Properties computed from previous settings, to be computed again on next use.
+     */
+    private final Set<String> m_stale;
 
     /**
      * Creates a new service configuration.
@@ -86,6 +103,7 @@ public class MavenConfigurationImpl
 
         m_pid = pid;
         m_propertyResolver = propertyResolver;
+        m_stale = Collections.synchronizedSet( new HashSet<String>() );
     }
 
     public boolean isValid() {
@@ -93,13 +111,31 @@ public class MavenConfigurationImpl
     }
 
     /**
-     * Sets maven settings abstraction.
+     * Sets maven settings abstraction. Repositories and local repository already computed from previous settings are
+     * computed again on next use.
      *
      * @param settings maven settings abstraction
      */
     public void setSettings( final MavenSettings settings )
     {
         m_settings = settings;
+        for( String property : SETTINGS_PROPERTIES ) {
+            if( contains( m_pid + property ) ) {
+                m_stale.add( m_pid + property );
+            }
+        }
+    }
+
+    /**
+     * Returns true if a property was computed and is still valid for the current settings.
+     *
+     * @param property property name (including pid)
+     *
+     * @return true if the stored value can be used
+     */
+    private boolean isCached( final String property )
+    {
+        return contains( property ) && !m_stale.remove( property );
     }
 
     /**
@@ -205,7 +241,7 @@ public class MavenConfigurationImpl
     public List<MavenRepositoryURL> getRepositories()
         throws MalformedURLException
     {
-        if( !contains( m_pid + MavenConstants.PROPERTY_REPOSITORIES ) ) {
+        if( !isCached( m_pid + MavenConstants.PROPERTY_REPOSITORIES ) ) {
             // look for repositories property
             String repositoriesProp = m_propertyResolver.get( m_pid + MavenConstants.PROPERTY_REPOSITORIES );
             // if not set or starting with a plus (+) get repositories from settings xml
@@ -253,7 +289,7 @@ public class MavenConfigurationImpl
      */
     public MavenRepositoryURL getLocalRepository()
     {
-        if( !contains( m_pid + MavenConstants.PROPERTY_LOCAL_REPOSITORY ) ) {
+        if( !isCached( m_pid + MavenConstants.PROPERTY_LOCAL_REPOSITORY ) ) {
             // look for a local repository property
             String spec = m_propertyResolver.get( m_pid + MavenConstants.PROPERTY_LOCAL_REPOSITORY );
             // if not set get local repository from maven settings
@@ -334,27 +370,37 @@ public class MavenConfigurationImpl
 
         Map<String, String> proxyDetails = getProxySettings( url.getProtocol() ).get( protocol );
         if( proxyDetails != null ) {
-            LOGGER.trace( "Enabling proxy [" + proxyDetails + "]" );
+            enableProxy( protocol, proxyDetails );
+            set( m_pid + MavenConstants.PROPERTY_PROXY_SUPPORT, protocol );
+        }
+    }
+
+    /**
+     * Sets the proxy of a protocol as the proxy of the JVM.
+     *
+     * @param protocol     protocol
+     * @param proxyDetails proxy settings of the protocol
+     */
+    static void enableProxy( final String protocol, final Map<String, String> proxyDetails )
+    {
+        LOGGER.trace( "Enabling proxy [" + proxyDetails + "]" );
 
-            final String user = proxyDetails.get( "user" );
-            final String pass = proxyDetails.get( "pass" );
+        final String user = proxyDetails.get( "user" );
+        final String pass = proxyDetails.get( "pass" );
 
-            Authenticator.setDefault( new Authenticator() {
-                @Override
-                protected PasswordAuthentication getPasswordAuthentication()
-                {
-                    return new PasswordAuthentication( user, pass.toCharArray() );
-                }
+        Authenticator.setDefault( new Authenticator() {
+            @Override
+            protected PasswordAuthentication getPasswordAuthentication()
+            {
+                return new PasswordAuthentication( user, pass.toCharArray() );
             }
-            );
-
-            System.setProperty( protocol + ".proxyHost", proxyDetails.get( "host" ) );
-            System.setProperty( protocol + ".proxyPort", proxyDetails.get( "port" ) );
+        }
+        );
 
-            System.setProperty( protocol + ".nonProxyHosts", proxyDetails.get( "nonProxyHosts" ) );
+        System.setProperty( protocol + ".proxyHost", proxyDetails.get( "host" ) );
+        System.setProperty( protocol + ".proxyPort", proxyDetails.get( "port" ) );
 
-            set( m_pid + MavenConstants.PROPERTY_PROXY_SUPPORT, protocol );
-        }
+        System.setProperty( protocol + ".nonProxyHosts", proxyDetails.get( "nonProxyHosts" ) );
     }
 
     private boolean isProtocolSupportEnabled( String... protocols )
@@ -456,4 +502,255 @@ public class MavenConfigurationImpl
         return m_settings.getMirrorSettings();
     }
 
+    /**
+     * @see ResolverConfiguration#getResolvedCacheSize()
+     */
+    public Integer getResolvedCacheSize()
+    {
+        return getLongProperty(
+            MavenConstants.PROPERTY_RESOLVED_CACHE_SIZE, MavenConstants.PROPERTY_RESOLVED_CACHE_SIZE_DEFAULT
+        ).intValue();
+    }
+
+    /**
+     * @see ResolverConfiguration#getResolvedCacheTTL()
+     */
+    public Long getResolvedCacheTTL()
+    {
+        return getLongProperty(
+            MavenConstants.PROPERTY_RESOLVED_CACHE_TTL, MavenConstants.PROPERTY_RESOLVED_CACHE_TTL_DEFAULT
+        );
+    }
+
+    /**
+     * @see ResolverConfiguration#getResolverThreads()
+     */
+    public Integer getResolverThreads()
+    {
+        return getLongProperty(
+            MavenConstants.PROPERTY_RESOLVER_THREADS, MavenConstants.PROPERTY_RESOLVER_THREADS_DEFAULT
+        ).intValue();
+    }
+
+    /**
+     * @see ResolverConfiguration#getNegativeCacheTTL()
+     */
+    public Long getNegativeCacheTTL()
+    {
+        return getLongProperty(
+            MavenConstants.PROPERTY_NEGATIVE_CACHE_TTL, MavenConstants.PROPERTY_NEGATIVE_CACHE_TTL_DEFAULT
+        );
+    }
+
+    /**
+     * Routes are a semicolon separated list of group id patterns mapped to comma separated repository ids, as for
+     * example com.ourcorp.*=internal;org.apache.*=central,apache-snapshots. Invalid routes are skipped.
+     *
+     * @see ResolverConfiguration#getRoutes()
+     */
+    public Map<String, List<String>> getRoutes()
+    {
+        if( !contains( m_pid + MavenConstants.PROPERTY_ROUTES ) ) {
+            final Map<String, List<String>> routes = new LinkedHashMap<String, List<String>>();
+            final String routesProp = m_propertyResolver.get( m_pid + MavenConstants.PROPERTY_ROUTES );
+            if( routesProp != null && routesProp.trim().length() > 0 ) {
+                for( String route : routesProp.split( ROUTES_SEPARATOR ) ) {
+                    final String[] segments = route.split( "=" );
+                    if( segments.length != 2 || segments[ 0 ].trim().length() == 0 ) {
+                        if( route.trim().length() > 0 ) {
+                            LOGGER.warn( "Route [" + route + "] is invalid and will be skipped" );
+                        }
+                        continue;
+                    }
+                    final List<String> repositoryIds = new ArrayList<String>();
+                    for( String repositoryId : segments[ 1 ].split( REPOSITORIES_SEPARATOR ) ) {
+                        if( repositoryId.trim().length() > 0 ) {
+                            repositoryIds.add( repositoryId.trim() );
+                        }
+                    }
+                    routes.put( segments[ 0 ].trim(), Collections.unmodifiableList( repositoryIds ) );
+                }
+            }
+            LOGGER.trace( "Using routes [" + routes + "]" );
+            return set( m_pid + MavenConstants.PROPERTY_ROUTES, Collections.unmodifiableMap( routes ) );
+        }
+        return get( m_pid + MavenConstants.PROPERTY_ROUTES );
+    }
+
+    /**
+     * @see ResolverConfiguration#getMaxConnectionsPerHost()
+     */
+    public Integer getMaxConnectionsPerHost()
+    {
+        return getLongProperty(
+            MavenConstants.PROPERTY_MAX_CONNECTIONS_PER_HOST, MavenConstants.PROPERTY_MAX_CONNECTIONS_PER_HOST_DEFAULT
+        ).intValue();
+    }
+
+    /**
+     * @see ResolverConfiguration#getMaxConnections()
+     */
+    public Integer getMaxConnections()
+    {
+        return getLongProperty(
+            MavenConstants.PROPERTY_MAX_CONNECTIONS, MavenConstants.PROPERTY_MAX_CONNECTIONS_DEFAULT
+        ).intValue();
+    }
+
+    /**
+     * @see ResolverConfiguration#getConnectTimeout()
+     */
+    public Integer getConnectTimeout()
+    {
+        return getLongProperty(
+            MavenConstants.PROPERTY_CONNECT_TIMEOUT, MavenConstants.PROPERTY_CONNECT_TIMEOUT_DEFAULT
+        ).intValue();
+    }
+
+    /**
+     * @see ResolverConfiguration#getReadTimeout()
+     */
+    public Integer getReadTimeout()
+    {
+        return getLongProperty(
+            MavenConstants.PROPERTY_READ_TIMEOUT, MavenConstants.PROPERTY_READ_TIMEOUT_DEFAULT
+        ).intValue();
+    }
+
+    /**
+     * @see ResolverConfiguration#getStreaming()
+     */
+    public Boolean getStreaming()
+    {
+        if( !contains( m_pid + MavenConstants.PROPERTY_STREAMING ) ) {
+            return set( m_pid + MavenConstants.PROPERTY_STREAMING,
+                        Boolean.valueOf( m_propertyResolver.get( m_pid + MavenConstants.PROPERTY_STREAMING ) )
+            );
+        }
+        return get( m_pid + MavenConstants.PROPERTY_STREAMING );
+    }
+
+    /**
+     * @see ResolverConfiguration#getCircuitBreakerFailures()
+     */
+    public Integer getCircuitBreakerFailures()
+    {
+        return getLongProperty(
+            MavenConstants.PROPERTY_CIRCUIT_BREAKER_FAILURES, MavenConstants.PROPERTY_CIRCUIT_BREAKER_FAILURES_DEFAULT
+        ).intValue();
+    }
+
+    /**
+     * @see ResolverConfiguration#getCircuitBreakerTimeout()
+     */
+    public Long getCircuitBreakerTimeout()
+    {
+        return getLongProperty(
+            MavenConstants.PROPERTY_CIRCUIT_BREAKER_TIMEOUT, MavenConstants.PROPERTY_CIRCUIT_BREAKER_TIMEOUT_DEFAULT
+        );
+    }
+
+    /**
+     * @see ResolverConfiguration#getOffline()
+     */
+    public Boolean getOffline()
+    {
+        if( !contains( m_pid + MavenConstants.PROPERTY_OFFLINE ) ) {
+            return set( m_pid + MavenConstants.PROPERTY_OFFLINE,
+                        Boolean.valueOf( m_propertyResolver.get( m_pid + MavenConstants.PROPERTY_OFFLINE ) )
+            );
+        }
+        return get( m_pid + MavenConstants.PROPERTY_OFFLINE );
+    }
+
+    /**
+     * @see ResolverConfiguration#getLocalFirst()
+     */
+    public Boolean getLocalFirst()
+    {
+        if( !contains( m_pid + MavenConstants.PROPERTY_LOCAL_FIRST ) ) {
+            return set( m_pid + MavenConstants.PROPERTY_LOCAL_FIRST,
+                        Boolean.valueOf( m_propertyResolver.get( m_pid + MavenConstants.PROPERTY_LOCAL_FIRST ) )
+            );
+        }
+        return get( m_pid + MavenConstants.PROPERTY_LOCAL_FIRST );
+    }
+
+    /**
+     * @see ResolverConfiguration#getRangeDownloadThreshold()
+     */
+    public Long getRangeDownloadThreshold()
+    {
+        return getLongProperty(
+            MavenConstants.PROPERTY_RANGE_DOWNLOAD_THRESHOLD, MavenConstants.PROPERTY_RANGE_DOWNLOAD_THRESHOLD_DEFAULT
+        );
+    }
+
+    /**
+     * @see ResolverConfiguration#getRangeDownloadParts()
+     */
+    public Integer getRangeDownloadParts()
+    {
+        return getLongProperty(
+            MavenConstants.PROPERTY_RANGE_DOWNLOAD_PARTS, MavenConstants.PROPERTY_RANGE_DOWNLOAD_PARTS_DEFAULT
+        ).intValue();
+    }
+
+    /**
+     * @see ResolverConfiguration#getMaxDownloadsPerHost()
+     */
+    public Integer getMaxDownloadsPerHost()
+    {
+        return getLongProperty(
+            MavenConstants.PROPERTY_MAX_DOWNLOADS_PER_HOST, MavenConstants.PROPERTY_MAX_DOWNLOADS_PER_HOST_DEFAULT
+        ).intValue();
+    }
+
+    /**
+     * @see ResolverConfiguration#getMaxDownloadRate()
+     */
+    public Long getMaxDownloadRate()
+    {
+        return getLongProperty(
+            MavenConstants.PROPERTY_MAX_DOWNLOAD_RATE, MavenConstants.PROPERTY_MAX_DOWNLOAD_RATE_DEFAULT
+        );
+    }
+
+    /**
+     * @see ResolverConfiguration#getSettingsCheckInterval()
+     */
+    public Long getSettingsCheckInterval()
+    {
+        return getLongProperty(
+            MavenConstants.PROPERTY_SETTINGS_CHECK_INTERVAL, MavenConstants.PROPERTY_SETTINGS_CHECK_INTERVAL_DEFAULT
+        );
+    }
+
+    /**
+     * Resolves a numeric property. If the property is not set or is not a valid number the default value is used.
+     *
+     * @param property     property name (without pid)
+     * @param defaultValue value to be used if property is not set or invalid
+     *
+     * @return property value
+     */
+    private Long getLongProperty( final String property, final long defaultValue )
+    {
+        if( !contains( m_pid + property ) ) {
+            String value = m_propertyResolver.get( m_pid + property );
+            Long longValue = defaultValue;
+            if( value != null && value.trim().length() > 0 ) {
+                try {
+                    longValue = Long.valueOf( value.trim() );
+                } catch( NumberFormatException e ) {
+                    LOGGER.warn( "Property [" + m_pid + property + "] has an invalid value [" + value
+                                 + "]. Using default [" + defaultValue + "]"
+                    );
+                }
+            }
+            return set( m_pid + property, longValue );
+        }
+        return get( m_pid + property );
+    }
+
 }
@@ -0,0 +1,331 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.maven.commons;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.ops4j.lang.NullArgumentException;
+import org.ops4j.util.property.PropertiesPropertyResolver;
+
+/**
+ * Immutable copy of a configuration, with all values read at creation. It can be shared by any number of threads
+ * without locking, and no value is parsed when used.<br/>
+ * Invalid repository urls are reported when the repositories are asked for, as by the configuration copied.
+ * Proxy settings are copied for the protocols of {@link #PROXY_PROTOCOLS}; no proxy is known for other protocols.
+ * The resolver configuration is copied as well, or set to its defaults if the configuration copied has none.
+ */
+public final class MavenConfigurationSnapshot
+    implements MavenConfiguration, ResolverConfiguration
+{
+
+    /**
+     * Protocols whose proxy settings are copied.
+     */
+    static final String[] PROXY_PROTOCOLS = { "http", "https" };
+    /**
+     * Pid of the empty configuration the defaults of the resolver configuration are read from.
+     */
+    private static final String DEFAULTS_PID = "defaults";
+
+    private final Boolean m_certificateCheck;
+    private final URL m_settingsFileUrl;
+    private final List<MavenRepositoryURL> m_defaultRepositories;
+    private final List<MavenRepositoryURL> m_repositories;
+    /**
+     * Problem reading the repositories. Null if there was none.
+     */
+    private final MalformedURLException m_repositoriesProblem;
+    private final MavenRepositoryURL m_localRepository;
+    private final Boolean m_useFallbackRepositories;
+    private final Map<String, Map<String, String>> m_proxySettings;
+    /**
+     * Proxy settings of the protocols of {@link #PROXY_PROTOCOLS}, by protocol.
+     */
+    private final Map<String, Map<String, Map<String, String>>> m_protocolProxySettings;
+    private final Map<String, Map<String, String>> m_mirrors;
+    private final Integer m_resolvedCacheSize;
+    private final Long m_resolvedCacheTTL;
+    private final Integer m_resolverThreads;
+    private final Long m_negativeCacheTTL;
+    private final Map<String, List<String>> m_routes;
+    private final Integer m_maxConnectionsPerHost;
+    private final Integer m_maxConnections;
+    private final Integer m_connectTimeout;
+    private final Integer m_readTimeout;
+    private final Boolean m_streaming;
+    private final Integer m_circuitBreakerFailures;
+    private final Long m_circuitBreakerTimeout;
+    private final Boolean m_offline;
+    private final Boolean m_localFirst;
+    private final Long m_rangeDownloadThreshold;
+    private final Integer m_rangeDownloadParts;
+    private final Integer m_maxDownloadsPerHost;
+    private final Long m_maxDownloadRate;
+    private final Long m_settingsCheckInterval;
+
+    /**
+     * Creates a snapshot of a configuration. The configuration must not be used concurrently while copied.
+     *
+     * @param source configuration to copy; mandatory
+     */
+    public MavenConfigurationSnapshot( final MavenConfiguration source )
+    {
+        NullArgumentException.validateNotNull( source, "Configuration" );
+        m_certificateCheck = source.getCertificateCheck();
+        m_settingsFileUrl = source.getSettingsFileUrl();
+        List<MavenRepositoryURL> defaultRepositories = null;
+        List<MavenRepositoryURL> repositories = null;
+        MalformedURLException repositoriesProblem = null;
+        try {
+            defaultRepositories = copy( source.getDefaultRepositories() );
+            repositories = copy( source.getRepositories() );
+        } catch( MalformedURLException e ) {
+            repositoriesProblem = e;
+        }
+        m_defaultRepositories = defaultRepositories;
+        m_repositories = repositories;
+        m_repositoriesProblem = repositoriesProblem;
+        m_localRepository = source.getLocalRepository();
+        m_useFallbackRepositories = source.useFallbackRepositories();
+        m_proxySettings = copyMaps( source.getProxySettings() );
+        final Map<String, Map<String, Map<String, String>>> protocolProxySettings =
+            new HashMap<String, Map<String, Map<String, String>>>();
+        for( String protocol : PROXY_PROTOCOLS ) {
+            protocolProxySettings.put( protocol, copyMaps( source.getProxySettings( protocol ) ) );
+        }
+        m_protocolProxySettings = Collections.unmodifiableMap( protocolProxySettings );
+        m_mirrors = copyMaps( source.getMirrors() );
+        final ResolverConfiguration resolver = source instanceof ResolverConfiguration
+                                               ? (ResolverConfiguration) source
+                                               : new MavenConfigurationImpl(
+                                                   new PropertiesPropertyResolver( new Properties() ), DEFAULTS_PID
+                                               );
+        m_resolvedCacheSize = resolver.getResolvedCacheSize();
+        m_resolvedCacheTTL = resolver.getResolvedCacheTTL();
+        m_resolverThreads = resolver.getResolverThreads();
+        m_negativeCacheTTL = resolver.getNegativeCacheTTL();
+        m_routes = resolver.getRoutes();
+        m_maxConnectionsPerHost = resolver.getMaxConnectionsPerHost();
+        m_maxConnections = resolver.getMaxConnections();
+        m_connectTimeout = resolver.getConnectTimeout();
+        m_readTimeout = resolver.getReadTimeout();
+        m_streaming = resolver.getStreaming();
+        m_circuitBreakerFailures = resolver.getCircuitBreakerFailures();
+        m_circuitBreakerTimeout = resolver.getCircuitBreakerTimeout();
+        m_offline = resolver.getOffline();
+        m_localFirst = resolver.getLocalFirst();
+        m_rangeDownloadThreshold = resolver.getRangeDownloadThreshold();
+        m_rangeDownloadParts = resolver.getRangeDownloadParts();
+        m_maxDownloadsPerHost = resolver.getMaxDownloadsPerHost();
+        m_maxDownloadRate = resolver.getMaxDownloadRate();
+        m_settingsCheckInterval = resolver.getSettingsCheckInterval();
+    }
+
+    public Boolean getCertificateCheck()
+    {
+        return m_certificateCheck;
+    }
+
+    public URL getSettingsFileUrl()
+    {
+        return m_settingsFileUrl;
+    }
+
+    public List<MavenRepositoryURL> getDefaultRepositories()
+        throws MalformedURLException
+    {
+        if( m_repositoriesProblem != null ) {
+            throw m_repositoriesProblem;
+        }
+        return m_defaultRepositories;
+    }
+
+    public List<MavenRepositoryURL> getRepositories()
+        throws MalformedURLException
+    {
+        if( m_repositoriesProblem != null ) {
+            throw m_repositoriesProblem;
+        }
+        return m_repositories;
+    }
+
+    public MavenRepositoryURL getLocalRepository()
+    {
+        return m_localRepository;
+    }
+
+    public Boolean useFallbackRepositories()
+    {
+        return m_useFallbackRepositories;
+    }
+
+    /**
+     * Sets the proxy of the protocol of the url, as copied, as the proxy of the JVM.
+     *
+     * @see MavenConfiguration#enableProxy(URL)
+     */
+    public void enableProxy( final URL url )
+    {
+        final String protocol = url.getProtocol();
+        final Map<String, String> proxyDetails = getProxySettings( protocol ).get( protocol );
+        if( proxyDetails != null ) {
+            MavenConfigurationImpl.enableProxy( protocol, proxyDetails );
+        }
+    }
+
+    /**
+     * Returns the proxy settings read at creation. For given protocols, the settings are the ones copied for the
+     * first of them the configuration copied supported a proxy for.
+     *
+     * @see MavenConfiguration#getProxySettings(String...)
+     */
+    public Map<String, Map<String, String>> getProxySettings( final String... protocols )
+    {
+        if( protocols.length == 0 ) {
+            return m_proxySettings;
+        }
+        for( String protocol : protocols ) {
+            final Map<String, Map<String, String>> proxySettings = m_protocolProxySettings.get( protocol );
+            if( proxySettings != null && !proxySettings.isEmpty() ) {
+                return proxySettings;
+            }
+        }
+        return Collections.emptyMap();
+    }
+
+    public Map<String, Map<String, String>> getMirrors()
+    {
+        return m_mirrors;
+    }
+
+    public Integer getResolvedCacheSize()
+    {
+        return m_resolvedCacheSize;
+    }
+
+    public Long getResolvedCacheTTL()
+    {
+        return m_resolvedCacheTTL;
+    }
+
+    public Integer getResolverThreads()
+    {
+        return m_resolverThreads;
+    }
+
+    public Long getNegativeCacheTTL()
+    {
+        return m_negativeCacheTTL;
+    }
+
+    public Map<String, List<String>> getRoutes()
+    {
+        return m_routes;
+    }
+
+    public Integer getMaxConnectionsPerHost()
+    {
+        return m_maxConnectionsPerHost;
+    }
+
+    public Integer getMaxConnections()
+    {
+        return m_maxConnections;
+    }
+
+    public Integer getConnectTimeout()
+    {
+        return m_connectTimeout;
+    }
+
+    public Integer getReadTimeout()
+    {
+        return m_readTimeout;
+    }
+
+    public Boolean getStreaming()
+    {
+        return m_streaming;
+    }
+
+    public Integer getCircuitBreakerFailures()
+    {
+        return m_circuitBreakerFailures;
+    }
+
+    public Long getCircuitBreakerTimeout()
+    {
+        return m_circuitBreakerTimeout;
+    }
+
+    public Boolean getOffline()
+    {
+        return m_offline;
+    }
+
+    public Boolean getLocalFirst()
+    {
+        return m_localFirst;
+    }
+
+    public Long getRangeDownloadThreshold()
+    {
+        return m_rangeDownloadThreshold;
+    }
+
+    public Integer getRangeDownloadParts()
+    {
+        return m_rangeDownloadParts;
+    }
+
+    public Integer getMaxDownloadsPerHost()
+    {
+        return m_maxDownloadsPerHost;
+    }
+
+    public Long getMaxDownloadRate()
+    {
+        return m_maxDownloadRate;
+    }
+
+    public Long getSettingsCheckInterval()
+    {
+        return m_settingsCheckInterval;
+    }
+
+    private static List<MavenRepositoryURL> copy( final List<MavenRepositoryURL> list )
+    {
+        return list == null ? null : Collections.unmodifiableList( new ArrayList<MavenRepositoryURL>( list ) );
+    }
+
+    private static Map<String, Map<String, String>> copyMaps( final Map<String, Map<String, String>> maps )
+    {
+        final Map<String, Map<String, String>> copy = new LinkedHashMap<String, Map<String, String>>();
+        for( Map.Entry<String, Map<String, String>> entry : maps.entrySet() ) {
+            copy.put( entry.getKey(), Collections.unmodifiableMap( new HashMap<String, String>( entry.getValue() ) ) );
+        }
+        return Collections.unmodifiableMap( copy );
+    }
+
+}
@@ -93,4 +93,168 @@ public interface MavenConstants {
      * segment in repository spec that gives the name of the repo. Crucial for Aether handler.
      */
     static final String OPTION_ID = "id";
-}
\ No newline at end of file
+    /**
+     * segment in repository spec that gives how often the metadata of the repo is checked for updates:
+     * always, daily, interval:N (every N minutes) or never.
+     */
+    static final String OPTION_UPDATE = "update";
+    /**
+     * Update policies that can be set with OPTION_UPDATE.
+     */
+    static final String UPDATE_POLICY_ALWAYS = "always";
+    static final String UPDATE_POLICY_DAILY = "daily";
+    static final String UPDATE_POLICY_INTERVAL = "interval";
+    static final String UPDATE_POLICY_NEVER = "never";
+    /**
+     * segment in repository spec that gives how checksums of artifacts downloaded from the repo are verified:
+     * fail (on mismatch), warn (on mismatch) or ignore (checksums are not downloaded at all).
+     */
+    static final String OPTION_CHECKSUM = "checksum";
+    /**
+     * Checksum policies that can be set with OPTION_CHECKSUM.
+     */
+    static final String CHECKSUM_POLICY_FAIL = "fail";
+    static final String CHECKSUM_POLICY_WARN = "warn";
+    static final String CHECKSUM_POLICY_IGNORE = "ignore";
+    /**
+     * Maximum number of resolved artifacts kept in memory. 0 disables the cache.
+     */
+    static final String PROPERTY_RESOLVED_CACHE_SIZE = ".resolvedCacheSize";
+    /**
+     * Default maximum number of resolved artifacts kept in memory.
+     */
+    static final int PROPERTY_RESOLVED_CACHE_SIZE_DEFAULT = 1000;
+    /**
+     * Time in milliseconds a resolved SNAPSHOT or LATEST artifact is kept in memory. 0 disables caching of them.
+     */
+    static final String PROPERTY_RESOLVED_CACHE_TTL = ".resolvedCacheTTL";
+    /**
+     * Default time in milliseconds a resolved SNAPSHOT or LATEST artifact is kept in memory.
+     */
+    static final long PROPERTY_RESOLVED_CACHE_TTL_DEFAULT = 60000;
+    /**
+     * Number of threads used to resolve artifacts in parallel.
+     */
+    static final String PROPERTY_RESOLVER_THREADS = ".resolverThreads";
+    /**
+     * Default number of threads used to resolve artifacts in parallel.
+     */
+    static final int PROPERTY_RESOLVER_THREADS_DEFAULT = 8;
+    /**
+     * Time in milliseconds an artifact found missing from a remote repository is not looked up again in that
+     * repository. 0 disables the negative cache.
+     */
+    static final String PROPERTY_NEGATIVE_CACHE_TTL = ".negativeCacheTTL";
+    /**
+     * Default time in milliseconds an artifact found missing from a remote repository is remembered.
+     */
+    static final long PROPERTY_NEGATIVE_CACHE_TTL_DEFAULT = 3600000;
+    /**
+     * Routing of artifacts to repositories by group id.
+     * Expected layout: com.ourcorp.*=internal;org.apache.*=central,apache-snapshots
+     */
+    static final String PROPERTY_ROUTES = ".routes";
+    /**
+     * Maximum number of http connections kept open to one host.
+     */
+    static final String PROPERTY_MAX_CONNECTIONS_PER_HOST = ".maxConnectionsPerHost";
+    /**
+     * Default maximum number of http connections kept open to one host.
+     */
+    static final int PROPERTY_MAX_CONNECTIONS_PER_HOST_DEFAULT = 8;
+    /**
+     * Maximum number of http connections kept open to all hosts.
+     */
+    static final String PROPERTY_MAX_CONNECTIONS = ".maxConnections";
+    /**
+     * Default maximum number of http connections kept open to all hosts.
+     */
+    static final int PROPERTY_MAX_CONNECTIONS_DEFAULT = 32;
+    /**
+     * Time in milliseconds to wait for a connection to a remote repository to be established.
+     */
+    static final String PROPERTY_CONNECT_TIMEOUT = ".connectTimeout";
+    /**
+     * Default connection timeout in milliseconds.
+     */
+    static final int PROPERTY_CONNECT_TIMEOUT_DEFAULT = 10000;
+    /**
+     * Time in milliseconds to wait for data from a remote repository.
+     */
+    static final String PROPERTY_READ_TIMEOUT = ".readTimeout";
+    /**
+     * Default read timeout in milliseconds.
+     */
+    static final int PROPERTY_READ_TIMEOUT_DEFAULT = 60000;
+    /**
+     * If artifacts downloaded from remote repositories should be streamed to the caller while they are downloaded.
+     */
+    static final String PROPERTY_STREAMING = ".streaming";
+    /**
+     * Number of consecutive failures after which a remote repository is skipped for a while. 0 never skips.
+     */
+    static final String PROPERTY_CIRCUIT_BREAKER_FAILURES = ".circuitBreakerFailures";
+    /**
+     * Default number of consecutive failures after which a remote repository is skipped.
+     */
+    static final int PROPERTY_CIRCUIT_BREAKER_FAILURES_DEFAULT = 3;
+    /**
+     * Time in milliseconds a failing remote repository is skipped.
+     */
+    static final String PROPERTY_CIRCUIT_BREAKER_TIMEOUT = ".circuitBreakerTimeout";
+    /**
+     * Default time in milliseconds a failing remote repository is skipped.
+     */
+    static final long PROPERTY_CIRCUIT_BREAKER_TIMEOUT_DEFAULT = 60000;
+    /**
+     * If artifacts should only be resolved from the local repository, without any access to remote repositories.
+     */
+    static final String PROPERTY_OFFLINE = ".offline";
+    /**
+     * If released artifacts present in the local repository should be used without setting up any remote access.
+     */
+    static final String PROPERTY_LOCAL_FIRST = ".localFirst";
+    /**
+     * Size in bytes from which artifacts are downloaded as several ranges in parallel, if the server accepts ranges.
+     * 0 disables parallel downloads.
+     */
+    static final String PROPERTY_RANGE_DOWNLOAD_THRESHOLD = ".rangeDownloadThreshold";
+    /**
+     * Default size from which artifacts are downloaded in parallel ranges (disabled).
+     */
+    static final long PROPERTY_RANGE_DOWNLOAD_THRESHOLD_DEFAULT = 0;
+    /**
+     * Number of ranges downloaded in parallel.
+     */
+    static final String PROPERTY_RANGE_DOWNLOAD_PARTS = ".rangeDownloadParts";
+    /**
+     * Default number of ranges downloaded in parallel.
+     */
+    static final int PROPERTY_RANGE_DOWNLOAD_PARTS_DEFAULT = 4;
+    /**
+     * Maximum number of downloads running at the same time from one host. Downloads over the limit wait, interactive
+     * ones before background ones. 0 uses the maximum number of connections per host.
+     */
+    static final String PROPERTY_MAX_DOWNLOADS_PER_HOST = ".maxDownloadsPerHost";
+    /**
+     * Default maximum number of downloads from one host (maximum number of connections per host).
+     */
+    static final int PROPERTY_MAX_DOWNLOADS_PER_HOST_DEFAULT = 0;
+    /**
+     * Maximum download rate in bytes per second, shared by all downloads. 0 means no limit.
+     */
+    static final String PROPERTY_MAX_DOWNLOAD_RATE = ".maxDownloadRate";
+    /**
+     * Default maximum download rate (no limit).
+     */
+    static final long PROPERTY_MAX_DOWNLOAD_RATE_DEFAULT = 0;
+    /**
+     * Interval in milliseconds between checks of settings.xml and the local repository for changes. 0 disables the
+     * checks.
+     */
+    static final String PROPERTY_SETTINGS_CHECK_INTERVAL = ".settingsCheckInterval";
+    /**
+     * Default interval between checks of settings.xml (10 seconds).
+     */
+    static final long PROPERTY_SETTINGS_CHECK_INTERVAL_DEFAULT = 10000;
+}
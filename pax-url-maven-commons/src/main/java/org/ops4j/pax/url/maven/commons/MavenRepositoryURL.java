@@ -60,10 +60,19 @@ public class MavenRepositoryURL
     private final boolean m_releasesEnabled;
 
     private final boolean m_multi;
+    /**
+     * How often the repository is checked for updated metadata. Null if not set.
+     */
+    private final String m_updatePolicy;
+    /**
+     * How checksums of downloaded artifacts are verified. Null if not set.
+     */
+    private final String m_checksumPolicy;
 
     /**
      * Creates a maven repository URL bases on a string spec. The path can be marked with @snapshots and/or @noreleases
-     * (not case sensitive).
+     * (not case sensitive). The update policy of the repository metadata can be set with @update=always, daily,
+     * interval:N (minutes) or never and the checksum policy with @checksum=fail, warn or ignore.
      *
      * @param repositorySpec url spec of repository
      *
@@ -80,6 +89,8 @@ public class MavenRepositoryURL
         boolean snapshotEnabled = false;
         boolean releasesEnabled = true;
         boolean multi = false;
+        String updatePolicy = null;
+        String checksumPolicy = null;
 
         String name = null;
 
@@ -106,6 +117,26 @@ public class MavenRepositoryURL
                     LOG.warn( "Problem with segment " + segments[i] + " in " + repositorySpec );
                 }
             }
+            else if( segment.startsWith( MavenConstants.OPTION_UPDATE + "=" ) )
+            {
+                updatePolicy = segment.substring( MavenConstants.OPTION_UPDATE.length() + 1 ).trim();
+                if( !isValidUpdatePolicy( updatePolicy ) )
+                {
+                    LOG.warn( "Unknown update policy " + updatePolicy + " in " + repositorySpec + " (ignored)" );
+                    updatePolicy = null;
+                }
+            }
+            else if( segment.startsWith( MavenConstants.OPTION_CHECKSUM + "=" ) )
+            {
+                checksumPolicy = segment.substring( MavenConstants.OPTION_CHECKSUM.length() + 1 ).trim();
+                if( !checksumPolicy.equals( MavenConstants.CHECKSUM_POLICY_FAIL )
+                    && !checksumPolicy.equals( MavenConstants.CHECKSUM_POLICY_WARN )
+                    && !checksumPolicy.equals( MavenConstants.CHECKSUM_POLICY_IGNORE ) )
+                {
+                    LOG.warn( "Unknown checksum policy " + checksumPolicy + " in " + repositorySpec + " (ignored)" );
+                    checksumPolicy = null;
+                }
+            }
             else
             {
                 if( i > 0 )
@@ -120,6 +151,8 @@ public class MavenRepositoryURL
         m_snapshotsEnabled = snapshotEnabled;
         m_releasesEnabled = releasesEnabled;
         m_multi = multi;
+        m_updatePolicy = updatePolicy;
+        m_checksumPolicy = checksumPolicy;
         if (name == null) {
             String warn = "Repository spec " + spec + " does not contain an identifier. This is deprecated & discouraged & just evil.";
             LOG.warn( warn );
@@ -151,6 +184,28 @@ public class MavenRepositoryURL
         }
     }
 
+    private static boolean isValidUpdatePolicy( final String policy )
+    {
+        if( policy.equals( MavenConstants.UPDATE_POLICY_ALWAYS )
+            || policy.equals( MavenConstants.UPDATE_POLICY_DAILY )
+            || policy.equals( MavenConstants.UPDATE_POLICY_NEVER ) )
+        {
+            return true;
+        }
+        if( policy.startsWith( MavenConstants.UPDATE_POLICY_INTERVAL + ":" ) )
+        {
+            try
+            {
+                return Integer.parseInt( policy.substring( MavenConstants.UPDATE_POLICY_INTERVAL.length() + 1 ) ) >= 0;
+            }
+            catch( NumberFormatException e )
+            {
+                return false;
+            }
+        }
+        return false;
+    }
+
     private String buildSpec( StringBuilder urlBuilder )
     {
         String spec = urlBuilder.toString().trim();
@@ -221,6 +276,26 @@ public class MavenRepositoryURL
         return m_multi;
     }
 
+    /**
+     * Getter.
+     *
+     * @return update policy of the repository metadata (always, daily, interval:N or never) or null if not set
+     */
+    public String getUpdatePolicy()
+    {
+        return m_updatePolicy;
+    }
+
+    /**
+     * Getter.
+     *
+     * @return checksum policy of downloaded artifacts (fail, warn or ignore) or null if not set
+     */
+    public String getChecksumPolicy()
+    {
+        return m_checksumPolicy;
+    }
+
     /**
      * Getter.
      *
@@ -30,17 +30,12 @@ import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
 
-import javax.xml.parsers.ParserConfigurationException;
-
-import org.ops4j.util.xml.XmlUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.xml.sax.SAXException;
 
 /**
- * Default implementation of Settings. It actually parses a given settings.xml file.
+ * Default implementation of Settings. It actually parses a given settings.xml file.<br/>
+ * The file is read through {@link SettingsModel}, so instances for the same unchanged file share one parse.
  *
  * @author Alin Dreghiciu
  * @see MavenSettings
@@ -55,40 +50,10 @@ public class MavenSettingsImpl
      */
     private static final Logger LOGGER = LoggerFactory.getLogger( MavenSettingsImpl.class );
     /**
-     * Path of local repository tag.
-     */
-    private static final String LOCAL_REPOSITORY_TAG = "localRepository";
-    /**
-     * Path to server tag.
-     */
-    private static final String SERVER_TAG = "servers/server";
-
-    /**
-     * Path to profiles tag.
-     */
-    private static final String PROFILE_TAG = "profiles/profile";
-
-    /**
-     * Path to repository tag.
+     * Path to repository tag (inside a profile).
      */
     private static final String REPOSITORY_TAG = "repositories/repository";
 
-    /**
-     * Path to activeProfiles tag.
-     */
-    private static final String ACTIVE_PROFILES_TAG = "activeProfiles/activeProfile";
-
-    /**
-     * Path to proxy tag.
-     */
-    private static final String PROXY_TAG = "proxies/proxy";
-   
-    
-    /**
-     * Path to mirror tag.
-     */
-    private static final String MIRROR_TAG = "mirrors/mirror";
-   
     /**
      * Fallback Maven repositories.
      */
@@ -96,9 +61,9 @@ public class MavenSettingsImpl
         "http://repo1.maven.org/maven2@id=central";
 
     /**
-     * The settings.xml DOM Document. Null if there is no settings.xml.
+     * The settings.xml model. Null if there is no settings.xml.
      */
-    private Document m_document;
+    private SettingsModel m_model;
     /**
      * The settings.xml file url. Can be null if no settings.xml was resolved.
      */
@@ -185,13 +150,9 @@ public class MavenSettingsImpl
         if( m_localRepository == null )
         {
             readSettings();
-            if( m_document != null )
+            if( m_model != null )
             {
-                Element settingsElement = XmlUtils.getElement( m_document, LOCAL_REPOSITORY_TAG );
-                if( settingsElement != null )
-                {
-                    m_localRepository = XmlUtils.getTextContent( settingsElement );
-                }
+                m_localRepository = m_model.getLocalRepository();
             }
             if( m_localRepository == null || m_localRepository.trim().length() == 0 )
             {
@@ -218,81 +179,79 @@ public class MavenSettingsImpl
         if( m_repositories == null )
         {
             readSettings();
-            if( m_document != null )
+            if( m_model != null )
             {
-                Set<String> activeProfiles = getActiveProfiles();
+                Set<String> activeProfiles = new HashSet<String>( m_model.getActiveProfiles() );
                 Map<String, String> repositories = null;
                 List<String> order = null;
-                List<Element> profiles = XmlUtils.getElements( m_document, PROFILE_TAG );
+                List<SettingsModel.Record> profiles = m_model.getProfiles();
                 // first look for profiles
-                if( profiles != null )
+                if( !profiles.isEmpty() )
                 {
-                    for( Element profile : profiles )
+                    for( SettingsModel.Record profile : profiles )
                     {
-                        Element profileIdElement = XmlUtils.getElement( profile, "id" );
-                        if( profileIdElement != null )
+                        String profileId = profile.get( "id" );
+                        if( profileId != null )
                         {
-                            String profileId = XmlUtils.getTextContent( profileIdElement );
-                            if( profileId != null )
+                            if( activeProfiles.contains( profileId ) )
                             {
-                                if( activeProfiles.contains( profileId ) )
+                                for( SettingsModel.Record repo : profile.getRecords( REPOSITORY_TAG ) )
                                 {
-                                    List<Element> repos = XmlUtils.getElements( profile, REPOSITORY_TAG );
-                                    if( repos != null )
+                                    String id = repo.get( "id" );
+                                    if( id != null )
                                     {
-                                        for( Element repo : repos )
+                                        String layout = repo.get( "layout" );
+                                        // take only repositories with a default layout (skip legacy ones)
+                                        if( layout == null || "default".equals( layout ) )
                                         {
-                                            Element element = XmlUtils.getElement( repo, "id" );
-                                            if( element != null )
+                                            String snapshots = repo.get( "snapshots/enabled" );
+                                            String releases = repo.get( "releases/enabled" );
+                                            String updatePolicy = repo.get( "snapshots/updatePolicy" );
+                                            if( updatePolicy == null )
+                                            {
+                                                updatePolicy = repo.get( "releases/updatePolicy" );
+                                            }
+                                            String checksumPolicy = repo.get( "releases/checksumPolicy" );
+                                            if( checksumPolicy == null )
+                                            {
+                                                checksumPolicy = repo.get( "snapshots/checksumPolicy" );
+                                            }
+                                            String url = repo.get( "url" );
+                                            if( url != null )
                                             {
-                                                String id = XmlUtils.getTextContent( element );
-                                                element = XmlUtils.getElement( repo, "layout" );
-                                                String layout = null;
-                                                if( element != null )
+                                                if( repositories == null )
                                                 {
-                                                    layout = XmlUtils.getTextContent( element );
+                                                    repositories = new HashMap<String, String>();
+                                                    order = new ArrayList<String>();
                                                 }
-                                                // take only repositories with a default layout (skip legacy ones)
-                                                if( layout == null || "default".equals( layout ) )
+                                                if( snapshots != null && Boolean.valueOf( snapshots ) )
                                                 {
-                                                    String snapshots =
-                                                        XmlUtils.getTextContentOfElement( repo, "snapshots/enabled" );
-                                                    String releases =
-                                                        XmlUtils.getTextContentOfElement( repo, "releases/enabled" );
-                                                    element = XmlUtils.getElement( repo, "url" );
-                                                    if( element != null )
-                                                    {
-                                                        String url = XmlUtils.getTextContent( element );
-                                                        if( url != null )
-                                                        {
-                                                            if( repositories == null )
-                                                            {
-                                                                repositories = new HashMap<String, String>();
-                                                                order = new ArrayList<String>();
-                                                            }
-                                                            if( snapshots != null && Boolean.valueOf( snapshots ) )
-                                                            {
-                                                                url += MavenConstants.SEPARATOR_OPTIONS + MavenConstants.OPTION_ALLOW_SNAPSHOTS;
-                                                            }
-                                                            if( releases != null && !Boolean.valueOf( releases ) )
-                                                            {
-                                                                url += MavenConstants.SEPARATOR_OPTIONS + MavenConstants.OPTION_DISALLOW_RELEASES;
-                                                            }
-                                                            url += MavenConstants.SEPARATOR_OPTIONS + MavenConstants.OPTION_ID + "=" + id;
-
-                                                            repositories.put( id, url );
-                                                            order.add( id );
-                                                        }
-                                                    }
+                                                    url += MavenConstants.SEPARATOR_OPTIONS + MavenConstants.OPTION_ALLOW_SNAPSHOTS;
+                                                }
+                                                if( releases != null && !Boolean.valueOf( releases ) )
+                                                {
+                                                    url += MavenConstants.SEPARATOR_OPTIONS + MavenConstants.OPTION_DISALLOW_RELEASES;
+                                                }
+                                                if( updatePolicy != null )
+                                                {
+                                                    url += MavenConstants.SEPARATOR_OPTIONS + MavenConstants.OPTION_UPDATE + "=" + updatePolicy.trim();
+                                                }
+                                                if( checksumPolicy != null )
+                                                {
+                                                    url += MavenConstants.SEPARATOR_OPTIONS + MavenConstants.OPTION_CHECKSUM + "=" + checksumPolicy.trim();
                                                 }
+                                                url += MavenConstants.SEPARATOR_OPTIONS + MavenConstants.OPTION_ID + "=" + id;
+
+                                                repositories.put( id, url );
+                                                order.add( id );
                                             }
                                         }
                                     }
                                 }
-                                else
-                                {
-                                    LOGGER.debug( "Profile " + "[" + profileId + "] is inactive (ignored)." );
-                                }
+                            }
+                            else
+                            {
+                                LOGGER.debug( "Profile " + "[" + profileId + "] is inactive (ignored)." );
                             }
                         }
                     }
@@ -300,42 +259,29 @@ public class MavenSettingsImpl
                     // then look for user / passwords but only if we have repositories
                     if( repositories != null )
                     {
-                        List<Element> servers = XmlUtils.getElements( m_document, SERVER_TAG );
-                        if( servers != null )
+                        for( SettingsModel.Record server : m_model.getServers() )
                         {
-                            for( Element server : servers )
+                            String id = server.get( "id" );
+                            if( id != null )
                             {
-                                Element element = XmlUtils.getElement( server, "id" );
-                                if( element != null )
+                                // if we do not find a corresponding repository don't go furter
+                                String repository = repositories.get( id );
+                                if( repository != null && repository.contains( "://" ) )
                                 {
-                                    String id = XmlUtils.getTextContent( element );
-                                    // if we do not find a corresponding repository don't go furter
-                                    String repository = repositories.get( id );
-                                    if( repository != null && repository.contains( "://" ) )
+                                    String username = server.get( "username" );
+                                    // if there is no username stop the search
+                                    if( username != null )
                                     {
-                                        element = XmlUtils.getElement( server, "username" );
-                                        if( element != null )
+                                        String password = server.get( "password" );
+                                        if( password != null )
                                         {
-                                            String username = XmlUtils.getTextContent( element );
-                                            // if there is no username stop the search
-                                            if( username != null )
-                                            {
-                                                element = XmlUtils.getElement( server, "password" );
-                                                if( element != null )
-                                                {
-                                                    String password = XmlUtils.getTextContent( element );
-                                                    if( password != null )
-                                                    {
-                                                        username = username + ":" + password;
-                                                    }
-                                                }
-                                                // PAXURL-86: treat string as
-                                                // literal
-                                                String repo = "://" + username + "@";
-                                                repo = Matcher.quoteReplacement(repo);
-                                                repositories.put(id, repository.replaceFirst("://", repo));
-                                            }
+                                            username = username + ":" + password;
                                         }
+                                        // PAXURL-86: treat string as
+                                        // literal
+                                        String repo = "://" + username + "@";
+                                        repo = Matcher.quoteReplacement(repo);
+                                        repositories.put(id, repository.replaceFirst("://", repo));
                                     }
                                 }
                             }
@@ -376,40 +322,17 @@ public class MavenSettingsImpl
         return m_repositories;
     }
 
-    private Set<String> getActiveProfiles()
-    {
-        Set<String> ret = new HashSet<String>();
-        List<Element> activeProfiles = XmlUtils.getElements( m_document, ACTIVE_PROFILES_TAG );
-        if( activeProfiles != null )
-        {
-            for( Element active : activeProfiles )
-            {
-                ret.add( XmlUtils.getTextContent( active ) );
-            }
-        }
-
-        return ret;
-    }
-
     /**
      * Reads the settings.xml file. All exceptions raised during acces or parsing are rethrown as RuntimeException.
      */
 
     private void readSettings()
     {
-        if( m_document == null && m_settingsURL != null )
+        if( m_model == null && m_settingsURL != null )
         {
             try
             {
-                m_document = XmlUtils.parseDoc( m_settingsURL.openStream() );
-            }
-            catch( ParserConfigurationException e )
-            {
-                throw new RuntimeException( "Could not parse settings [" + m_settingsURL + "]", e );
-            }
-            catch( SAXException e )
-            {
-                throw new RuntimeException( "Could not parse settings [" + m_settingsURL + "]", e );
+                m_model = SettingsModel.load( m_settingsURL );
             }
             catch( IOException e )
             {
@@ -447,16 +370,6 @@ public class MavenSettingsImpl
         return null;
     }
 
-    private String getSetting( Element element, String settingName, String defaultSetting )
-    {
-        final String setting = XmlUtils.getTextContentOfElement( element, settingName );
-        if( setting == null )
-        {
-            return defaultSetting;
-        }
-        return setting;
-    }
-
     /**
      * Returns the active proxy settings from settings.xml
      *
@@ -469,26 +382,26 @@ public class MavenSettingsImpl
             m_proxySettings = new HashMap<String, Map<String, String>>();
 
             readSettings();
-            if( m_document != null )
+            if( m_model != null )
             {
-                List<Element> proxies = XmlUtils.getElements( m_document, PROXY_TAG );
-                if( proxies != null )
+                List<SettingsModel.Record> proxies = m_model.getProxies();
+                if( !proxies.isEmpty() )
                 {
-                    for( Element proxy : proxies )
+                    for( SettingsModel.Record proxy : proxies )
                     {
-                        String active = getSetting( proxy, "active", "false" );
-                        String protocol = getSetting( proxy, "protocol", "http" );
+                        String active = proxy.get( "active", "false" );
+                        String protocol = proxy.get( "protocol", "http" );
 
                         if( !m_proxySettings.containsKey( protocol ) || "true".equalsIgnoreCase( active ) )
                         {
                             Map<String, String> proxyDetails = new HashMap<String, String>();
 
-                            proxyDetails.put( "user", getSetting( proxy, "username", null ) );
-                            proxyDetails.put( "pass", getSetting( proxy, "password", null ) );
-                            proxyDetails.put( "host", getSetting( proxy, "host", "127.0.0.1" ) );
-                            proxyDetails.put( "port", getSetting( proxy, "port", "80" ) );
+                            proxyDetails.put( "user", proxy.get( "username", null ) );
+                            proxyDetails.put( "pass", proxy.get( "password", null ) );
+                            proxyDetails.put( "host", proxy.get( "host", "127.0.0.1" ) );
+                            proxyDetails.put( "port", proxy.get( "port", "80" ) );
 
-                            proxyDetails.put( "nonProxyHosts", getSetting( proxy, "nonProxyHosts", "" ) );
+                            proxyDetails.put( "nonProxyHosts", proxy.get( "nonProxyHosts", "" ) );
                             proxyDetails.put( "protocol", protocol);
                             
                             m_proxySettings.put( protocol, proxyDetails );
@@ -506,24 +419,24 @@ public class MavenSettingsImpl
     	{
     		m_mirrorsSettings = new HashMap<String, Map<String, String>>();
     		readSettings();
-            if( m_document != null )
+            if( m_model != null )
             {
             	
-            	List<Element> mirrors = XmlUtils.getElements( m_document, MIRROR_TAG );
-                if( mirrors != null )
+            	List<SettingsModel.Record> mirrors = m_model.getMirrors();
+                if( !mirrors.isEmpty() )
                 {
-                    for( Element mirror : mirrors )
+                    for( SettingsModel.Record mirror : mirrors )
                     {
-                    	String id = getSetting( mirror, "id", "" );
+                    	String id = mirror.get( "id", "" );
                         if (!m_mirrorsSettings.containsKey(id)) 
                         {
                         	Map<String, String> proxyDetails = new HashMap<String, String>();
 
                         	proxyDetails.put( "id", id );
-                            proxyDetails.put( "url", getSetting( mirror, "url", "" ) );
-                            proxyDetails.put( "mirrorOf", getSetting( mirror, "mirrorOf", "default" ) );
-                            proxyDetails.put( "layout", getSetting( mirror, "layout", "" ) );
-                            proxyDetails.put( "mirrorOfLayouts", getSetting( mirror, "mirrorOfLayouts", "" ) );
+                            proxyDetails.put( "url", mirror.get( "url", "" ) );
+                            proxyDetails.put( "mirrorOf", mirror.get( "mirrorOf", "default" ) );
+                            proxyDetails.put( "layout", mirror.get( "layout", "" ) );
+                            proxyDetails.put( "mirrorOfLayouts", mirror.get( "mirrorOfLayouts", "" ) );
                             m_mirrorsSettings.put(id, proxyDetails);
                         }
                     }
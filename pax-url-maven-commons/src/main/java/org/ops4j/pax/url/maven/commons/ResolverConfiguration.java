@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.maven.commons;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Configuration of the resolver of the aether based mvn: handler (caching, routing, connections, downloads, offline
+ * modes), besides the {@link MavenConfiguration} it is implemented with. Kept apart so implementations of
+ * {@link MavenConfiguration} used by other handlers do not have to provide it; a configuration that does not
+ * implement it gets the defaults of {@link MavenConstants}.
+ *
+ * @see MavenConfigurationImpl
+ * @see MavenConfigurationSnapshot
+ */
+public interface ResolverConfiguration
+{
+
+    /**
+     * Returns the maximum number of resolved artifacts to be kept in memory.
+     *
+     * @return maximum number of cached artifacts; 0 if caching is disabled
+     */
+    Integer getResolvedCacheSize();
+
+    /**
+     * Returns the time in milliseconds a resolved SNAPSHOT or LATEST artifact is kept in memory.
+     * Released artifacts do not expire.
+     *
+     * @return time to live of SNAPSHOT / LATEST artifacts; 0 if they should not be cached
+     */
+    Long getResolvedCacheTTL();
+
+    /**
+     * Returns the number of threads to be used when resolving many artifacts at once.
+     *
+     * @return number of resolver threads
+     */
+    Integer getResolverThreads();
+
+    /**
+     * Returns the time in milliseconds an artifact found missing from a remote repository is not looked up again in
+     * that repository.
+     *
+     * @return time to live of negative lookups; 0 if they should not be remembered
+     */
+    Long getNegativeCacheTTL();
+
+    /**
+     * Returns the routing of artifacts to repositories. The keys are group id patterns (a group id, optionally
+     * ending with .* to also match sub groups, or * to match any group) and the values are the ids of the
+     * repositories that can host artifacts of matching groups.
+     *
+     * @return map of group id pattern to repository ids, in configuration order. Empty if there are no routes.
+     */
+    Map<String, List<String>> getRoutes();
+
+    /**
+     * Returns the maximum number of http connections kept open to one host.
+     *
+     * @return maximum connections per host
+     */
+    Integer getMaxConnectionsPerHost();
+
+    /**
+     * Returns the maximum number of http connections kept open to all hosts.
+     *
+     * @return maximum connections
+     */
+    Integer getMaxConnections();
+
+    /**
+     * Returns the time in milliseconds to wait for a connection to a remote repository to be established.
+     *
+     * @return connect timeout; 0 means no timeout
+     */
+    Integer getConnectTimeout();
+
+    /**
+     * Returns the time in milliseconds to wait for data from a remote repository.
+     *
+     * @return read timeout; 0 means no timeout
+     */
+    Integer getReadTimeout();
+
+    /**
+     * Returns true if artifacts downloaded from remote repositories should be streamed to the caller while they are
+     * downloaded, instead of being returned once downloaded and verified.
+     *
+     * @return true if downloads should be streamed
+     */
+    Boolean getStreaming();
+
+    /**
+     * Returns the number of consecutive failures after which a remote repository is skipped for a while.
+     *
+     * @return failures opening the circuit of a repository; 0 if repositories should never be skipped
+     */
+    Integer getCircuitBreakerFailures();
+
+    /**
+     * Returns the time in milliseconds a failing remote repository is skipped.
+     *
+     * @return time a repository circuit stays open
+     */
+    Long getCircuitBreakerTimeout();
+
+    /**
+     * Returns true if artifacts should only be resolved from the local repository. Remote repositories are never
+     * accessed, so artifacts missing locally cannot be resolved.
+     *
+     * @return true if offline
+     */
+    Boolean getOffline();
+
+    /**
+     * Returns true if released artifacts present in the local repository should be used directly, remote
+     * repositories being only set up and asked for artifacts missing locally.
+     *
+     * @return true if the local repository is looked up first
+     */
+    Boolean getLocalFirst();
+
+    /**
+     * Returns the size in bytes from which artifacts are downloaded as several ranges in parallel, when the server
+     * accepts range requests.
+     *
+     * @return minimum size of artifacts downloaded in parallel ranges; 0 if parallel downloads are disabled
+     */
+    Long getRangeDownloadThreshold();
+
+    /**
+     * Returns the number of ranges an artifact is split into when downloaded in parallel.
+     *
+     * @return number of ranges downloaded in parallel
+     */
+    Integer getRangeDownloadParts();
+
+    /**
+     * Returns the maximum number of downloads running at the same time from one host.
+     *
+     * @return maximum number of downloads per host; 0 to use the maximum number of connections per host
+     */
+    Integer getMaxDownloadsPerHost();
+
+    /**
+     * Returns the maximum download rate, shared by all downloads.
+     *
+     * @return maximum download rate in bytes per second; 0 if not limited
+     */
+    Long getMaxDownloadRate();
+
+    /**
+     * Returns the interval between checks of settings.xml and the local repository for changes.
+     *
+     * @return interval in milliseconds; 0 if changes are not checked
+     */
+    Long getSettingsCheckInterval();
+
+}
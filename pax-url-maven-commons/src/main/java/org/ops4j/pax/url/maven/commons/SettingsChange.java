@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.maven.commons;
+
+/**
+ * Parts of the settings that changed between two checks of a {@link SettingsWatcher}, with the new settings.
+ */
+public final class SettingsChange
+{
+
+    private final MavenSettings m_settings;
+    private final boolean m_repositoriesChanged;
+    private final boolean m_mirrorsChanged;
+    private final boolean m_proxiesChanged;
+    private final boolean m_localRepositoryChanged;
+
+    SettingsChange( final MavenSettings settings, final boolean repositoriesChanged, final boolean mirrorsChanged,
+                    final boolean proxiesChanged, final boolean localRepositoryChanged )
+    {
+        m_settings = settings;
+        m_repositoriesChanged = repositoriesChanged;
+        m_mirrorsChanged = mirrorsChanged;
+        m_proxiesChanged = proxiesChanged;
+        m_localRepositoryChanged = localRepositoryChanged;
+    }
+
+    /**
+     * @return the new settings
+     */
+    public MavenSettings getSettings()
+    {
+        return m_settings;
+    }
+
+    /**
+     * @return true if the repositories of the active profiles changed
+     */
+    public boolean isRepositoriesChanged()
+    {
+        return m_repositoriesChanged;
+    }
+
+    /**
+     * @return true if mirrors changed
+     */
+    public boolean isMirrorsChanged()
+    {
+        return m_mirrorsChanged;
+    }
+
+    /**
+     * @return true if proxies (including their credentials) changed
+     */
+    public boolean isProxiesChanged()
+    {
+        return m_proxiesChanged;
+    }
+
+    /**
+     * @return true if the local repository moved, or its directory was created or removed
+     */
+    public boolean isLocalRepositoryChanged()
+    {
+        return m_localRepositoryChanged;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SettingsChange{repositories=" + m_repositoriesChanged + ", mirrors=" + m_mirrorsChanged
+               + ", proxies=" + m_proxiesChanged + ", localRepository=" + m_localRepositoryChanged + "}";
+    }
+
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.maven.commons;
+
+/**
+ * Listener notified by a {@link SettingsWatcher} when settings.xml or the local repository changed.
+ */
+public interface SettingsListener
+{
+
+    /**
+     * Called when the settings changed.
+     *
+     * @param change what changed, with the new settings
+     */
+    void settingsChanged( SettingsChange change );
+
+}
@@ -0,0 +1,392 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.maven.commons;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Immutable model of the parts of a settings.xml the handlers use, read in a single streaming pass.<br/>
+ * Models are cached process wide by settings url and reused as long as the file keeps the same last modification
+ * time and size, so handlers and configuration updates share one parse.
+ */
+final class SettingsModel
+{
+
+    /**
+     * Paths (relative to the root element) of the elements read as records.
+     */
+    private static final String PROFILE = "profiles/profile";
+    private static final String REPOSITORY = "repositories/repository";
+    private static final String SERVER = "servers/server";
+    private static final String PROXY = "proxies/proxy";
+    private static final String MIRROR = "mirrors/mirror";
+    private static final String ACTIVE_PROFILE = "activeProfiles/activeProfile";
+    private static final String LOCAL_REPOSITORY = "localRepository";
+
+    /**
+     * Parsed models by settings url.
+     */
+    private static final ConcurrentMap<String, SettingsModel> CACHE = new ConcurrentHashMap<String, SettingsModel>();
+
+    /**
+     * Last modification time of the settings when parsed.
+     */
+    private final long m_lastModified;
+    /**
+     * Size of the settings when parsed.
+     */
+    private final long m_size;
+    /**
+     * Content of localRepository; null if not set.
+     */
+    private final String m_localRepository;
+    private final List<String> m_activeProfiles;
+    private final List<Record> m_profiles;
+    private final List<Record> m_servers;
+    private final List<Record> m_proxies;
+    private final List<Record> m_mirrors;
+
+    private SettingsModel( final long lastModified, final long size, final Record root,
+                           final List<String> activeProfiles )
+    {
+        m_lastModified = lastModified;
+        m_size = size;
+        m_localRepository = root.get( LOCAL_REPOSITORY );
+        m_activeProfiles = Collections.unmodifiableList( activeProfiles );
+        m_profiles = root.getRecords( PROFILE );
+        m_servers = root.getRecords( SERVER );
+        m_proxies = root.getRecords( PROXY );
+        m_mirrors = root.getRecords( MIRROR );
+    }
+
+    /**
+     * Returns the model of a settings file, parsing it only if not parsed before or changed since.
+     *
+     * @param url settings url
+     *
+     * @return settings model
+     *
+     * @throws IOException if the settings cannot be read or parsed
+     */
+    static SettingsModel load( final URL url )
+        throws IOException
+    {
+        if( "file".equals( url.getProtocol() ) ) {
+            final long[] stamp = stamp( toFile( url ) );
+            final SettingsModel cached = getCached( url, stamp );
+            return cached != null ? cached : parse( url, url.openStream(), stamp );
+        }
+        // the stamp is taken from the response the settings are parsed from, so they are fetched once
+        final URLConnection connection = url.openConnection();
+        final InputStream in = connection.getInputStream();
+        final long[] stamp = new long[]{ connection.getLastModified(), connection.getContentLength() };
+        final SettingsModel cached = getCached( url, stamp );
+        if( cached != null ) {
+            in.close();
+            return cached;
+        }
+        return parse( url, in, stamp );
+    }
+
+    /**
+     * @return model parsed before from settings with the same stamp; null if none
+     */
+    private static SettingsModel getCached( final URL url, final long[] stamp )
+    {
+        final SettingsModel cached = CACHE.get( url.toExternalForm() );
+        if( cached != null && cached.m_lastModified == stamp[ 0 ] && cached.m_size == stamp[ 1 ] ) {
+            return cached;
+        }
+        return null;
+    }
+
+    /**
+     * @return content of localRepository; null if not set
+     */
+    String getLocalRepository()
+    {
+        return m_localRepository;
+    }
+
+    /**
+     * @return ids of active profiles, in order
+     */
+    List<String> getActiveProfiles()
+    {
+        return m_activeProfiles;
+    }
+
+    /**
+     * @return profiles, in order; each profile has the records of its repositories under "repositories/repository"
+     */
+    List<Record> getProfiles()
+    {
+        return m_profiles;
+    }
+
+    /**
+     * @return servers, in order
+     */
+    List<Record> getServers()
+    {
+        return m_servers;
+    }
+
+    /**
+     * @return proxies, in order
+     */
+    List<Record> getProxies()
+    {
+        return m_proxies;
+    }
+
+    /**
+     * @return mirrors, in order
+     */
+    List<Record> getMirrors()
+    {
+        return m_mirrors;
+    }
+
+    private static File toFile( final URL url )
+    {
+        try {
+            return new File( url.toURI() );
+        } catch( URISyntaxException e ) {
+            return new File( url.getPath() );
+        } catch( IllegalArgumentException e ) {
+            return new File( url.getPath() );
+        }
+    }
+
+    /**
+     * Returns the last modification time and size of a settings file.
+     */
+    private static long[] stamp( final File file )
+    {
+        return new long[]{ file.lastModified(), file.length() };
+    }
+
+    /**
+     * Parses the settings, caching the model if the settings have a known modification time and size.
+     *
+     * @param in content of the settings; closed when parsed
+     */
+    private static SettingsModel parse( final URL url, final InputStream in, final long[] stamp )
+        throws IOException
+    {
+        final SettingsModel model;
+        try {
+            final XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty( XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE );
+            final XMLStreamReader reader = factory.createXMLStreamReader( in );
+            try {
+                model = parse( reader, stamp );
+            } finally {
+                reader.close();
+            }
+        } catch( XMLStreamException e ) {
+            final IOException ioe = new IOException( "Could not parse settings [" + url + "]: " + e.getMessage() );
+            ioe.initCause( e );
+            throw ioe;
+        } finally {
+            in.close();
+        }
+        // settings with unknown modification time or size are parsed each time
+        if( stamp[ 0 ] > 0 && stamp[ 1 ] >= 0 ) {
+            CACHE.put( url.toExternalForm(), model );
+        }
+        return model;
+    }
+
+    /**
+     * Reads the document in one pass. The text of each leaf element is stored in the innermost enclosing record,
+     * under its path relative to the record.
+     */
+    private static SettingsModel parse( final XMLStreamReader reader, final long[] stamp )
+        throws XMLStreamException
+    {
+        final Record root = new Record();
+        final List<String> activeProfiles = new ArrayList<String>();
+        // open records with the path depth they start at
+        final LinkedList<Record> records = new LinkedList<Record>();
+        final LinkedList<Integer> recordDepths = new LinkedList<Integer>();
+        // path of current element relative to the root element
+        final List<String> path = new ArrayList<String>();
+        final StringBuilder text = new StringBuilder();
+        boolean leaf = false;
+        int depth = -1;
+
+        records.add( root );
+        recordDepths.add( 0 );
+        while( reader.hasNext() ) {
+            switch( reader.next() ) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    if( depth > 0 ) {
+                        path.add( reader.getLocalName() );
+                        final String relative = join( path, recordDepths.getLast() );
+                        if( isRecord( records.size(), relative ) ) {
+                            final Record record = new Record();
+                            records.getLast().addRecord( relative, record );
+                            records.add( record );
+                            recordDepths.add( path.size() );
+                        }
+                    }
+                    text.setLength( 0 );
+                    leaf = true;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if( leaf ) {
+                        text.append( reader.getText() );
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    if( depth > 0 ) {
+                        final int start = recordDepths.getLast();
+                        if( start == path.size() ) {
+                            records.removeLast();
+                            recordDepths.removeLast();
+                        }
+                        else if( leaf ) {
+                            final String relative = join( path, start );
+                            final String value = text.toString().trim();
+                            if( records.size() == 1 && ACTIVE_PROFILE.equals( relative ) ) {
+                                activeProfiles.add( value );
+                            }
+                            else {
+                                records.getLast().put( relative, value );
+                            }
+                        }
+                        path.remove( path.size() - 1 );
+                    }
+                    depth--;
+                    leaf = false;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return new SettingsModel( stamp[ 0 ], stamp[ 1 ], root, activeProfiles );
+    }
+
+    /**
+     * Profiles, servers, proxies and mirrors are records of the root; repositories are records of a profile.
+     */
+    private static boolean isRecord( final int level, final String relative )
+    {
+        if( level == 1 ) {
+            return PROFILE.equals( relative ) || SERVER.equals( relative ) || PROXY.equals( relative )
+                   || MIRROR.equals( relative );
+        }
+        return level == 2 && REPOSITORY.equals( relative );
+    }
+
+    private static String join( final List<String> path, final int from )
+    {
+        final StringBuilder builder = new StringBuilder();
+        for( int i = from; i < path.size(); i++ ) {
+            if( builder.length() > 0 ) {
+                builder.append( '/' );
+            }
+            builder.append( path.get( i ) );
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Values of an element of settings.xml (profile, repository, server, proxy, mirror) by path relative to the
+     * element, e.g. "id" or "snapshots/enabled". Only the first occurrence of a path is kept.
+     */
+    static final class Record
+    {
+
+        private final Map<String, String> m_values = new HashMap<String, String>();
+        private final Map<String, List<Record>> m_records = new HashMap<String, List<Record>>();
+
+        /**
+         * @param path path relative to the element
+         *
+         * @return trimmed text of the element at path; null if there is no such element
+         */
+        String get( final String path )
+        {
+            return m_values.get( path );
+        }
+
+        /**
+         * @param path    path relative to the element
+         * @param nothing value returned if there is no such element
+         *
+         * @return trimmed text of the element at path
+         */
+        String get( final String path, final String nothing )
+        {
+            final String value = m_values.get( path );
+            return value == null ? nothing : value;
+        }
+
+        /**
+         * @param path path relative to the element
+         *
+         * @return nested records at path, in order
+         */
+        List<Record> getRecords( final String path )
+        {
+            final List<Record> records = m_records.get( path );
+            return records == null ? Collections.<Record>emptyList() : Collections.unmodifiableList( records );
+        }
+
+        private void put( final String path, final String value )
+        {
+            if( !m_values.containsKey( path ) ) {
+                m_values.put( path, value );
+            }
+        }
+
+        private void addRecord( final String path, final Record record )
+        {
+            List<Record> records = m_records.get( path );
+            if( records == null ) {
+                records = new ArrayList<Record>();
+                m_records.put( path, records );
+            }
+            records.add( record );
+        }
+
+    }
+
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.maven.commons;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.ops4j.lang.NullArgumentException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches settings.xml and the local repository directory for changes, and notifies a listener of the parts that
+ * changed (repositories, mirrors, proxies, local repository) so users of the settings only drop what depends on
+ * them.<br/>
+ * Changes are found by polling: settings.xml is read again at each check, which only parses it if its last
+ * modification time or size changed. Settings that cannot be parsed (e.g. while being written) are ignored until
+ * the next check.
+ */
+public class SettingsWatcher
+{
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger( SettingsWatcher.class );
+
+    /**
+     * Prefered settings.xml; null to use the default locations (see {@link MavenSettingsImpl}).
+     */
+    private final URL m_settingsURL;
+    /**
+     * If fallback repositories should be used instead of default repositories.
+     */
+    private final boolean m_useFallbackRepositories;
+    /**
+     * Listener of changes. Cannot be null.
+     */
+    private final SettingsListener m_listener;
+    /**
+     * Settings at last check.
+     */
+    private volatile MavenSettings m_settings;
+    /**
+     * Values of settings at last check. Null if they could not be read.
+     */
+    private Snapshot m_current;
+    /**
+     * Timer running the checks. Null if not started.
+     */
+    private Timer m_timer;
+
+    /**
+     * Creates a watcher. Settings are read at once and checked for changes only once started.
+     *
+     * @param settingsURL             prefered settings.xml file; can be null
+     * @param useFallbackRepositories if fallback repositories should be used instead of default repositories
+     * @param listener                listener of changes; mandatory
+     */
+    public SettingsWatcher( final URL settingsURL, final boolean useFallbackRepositories,
+                            final SettingsListener listener )
+    {
+        NullArgumentException.validateNotNull( listener, "Settings listener" );
+        m_settingsURL = settingsURL;
+        m_useFallbackRepositories = useFallbackRepositories;
+        m_listener = listener;
+        m_settings = new MavenSettingsImpl( settingsURL, useFallbackRepositories );
+        try {
+            m_current = new Snapshot( m_settings );
+        } catch( RuntimeException e ) {
+            // reported by the users of the settings
+            m_current = null;
+        }
+    }
+
+    /**
+     * @return settings at last check
+     */
+    public MavenSettings getSettings()
+    {
+        return m_settings;
+    }
+
+    /**
+     * Starts checking for changes periodically, from a daemon thread.
+     *
+     * @param interval interval between checks in milliseconds; nothing is checked if 0 or less
+     */
+    public synchronized void start( final long interval )
+    {
+        if( m_timer != null || interval <= 0 ) {
+            return;
+        }
+        m_timer = new Timer( "pax-url-mvn-settings", true );
+        m_timer.schedule(
+            new TimerTask()
+            {
+
+                @Override
+                public void run()
+                {
+                    check();
+                }
+
+            },
+            interval, interval
+        );
+    }
+
+    /**
+     * Stops checking for changes.
+     */
+    public synchronized void stop()
+    {
+        if( m_timer != null ) {
+            m_timer.cancel();
+            m_timer = null;
+        }
+    }
+
+    /**
+     * Checks settings for changes and notifies the listener of them.
+     *
+     * @return what changed; null if nothing changed or the settings could not be read
+     */
+    public synchronized SettingsChange check()
+    {
+        final Snapshot previous = m_current;
+        final Snapshot current;
+        try {
+            current = new Snapshot( new MavenSettingsImpl( m_settingsURL, m_useFallbackRepositories ) );
+        } catch( RuntimeException e ) {
+            LOGGER.warn( "Settings cannot be read and are ignored until changed again: " + e.getMessage() );
+            return null;
+        }
+        final SettingsChange change;
+        if( previous == null ) {
+            // settings could not be read before, anything may have changed
+            change = new SettingsChange( current.m_settings, true, true, true, true );
+        }
+        else {
+            change = new SettingsChange(
+                current.m_settings,
+                !equal( previous.m_repositories, current.m_repositories ),
+                !previous.m_mirrors.equals( current.m_mirrors ),
+                !previous.m_proxies.equals( current.m_proxies ),
+                !previous.m_localRepository.equals( current.m_localRepository )
+                || previous.m_localRepositoryExists != current.m_localRepositoryExists
+            );
+        }
+        if( !change.isRepositoriesChanged() && !change.isMirrorsChanged() && !change.isProxiesChanged()
+            && !change.isLocalRepositoryChanged() ) {
+            return null;
+        }
+        m_current = current;
+        m_settings = current.m_settings;
+        LOGGER.debug( "Settings changed: " + change );
+        try {
+            m_listener.settingsChanged( change );
+        } catch( RuntimeException e ) {
+            LOGGER.warn( "Settings change could not be applied", e );
+        }
+        return change;
+    }
+
+    private static boolean equal( final String a, final String b )
+    {
+        return a == null ? b == null : a.equals( b );
+    }
+
+    /**
+     * Values of settings at one check. Reading them all at once also forces the settings to be read.
+     */
+    private static class Snapshot
+    {
+
+        private final MavenSettings m_settings;
+        private final String m_repositories;
+        private final Map<String, Map<String, String>> m_mirrors;
+        private final Map<String, Map<String, String>> m_proxies;
+        private final String m_localRepository;
+        private final boolean m_localRepositoryExists;
+
+        Snapshot( final MavenSettings settings )
+        {
+            m_settings = settings;
+            m_repositories = settings.getRepositories();
+            m_mirrors = settings.getMirrorSettings();
+            m_proxies = settings.getProxySettings();
+            m_localRepository = settings.getLocalRepository();
+            m_localRepositoryExists = new File( m_localRepository ).isDirectory();
+        }
+
+    }
+
+}
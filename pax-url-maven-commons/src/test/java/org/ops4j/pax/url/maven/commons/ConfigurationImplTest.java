@@ -30,7 +30,9 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.Test;
 import org.ops4j.io.FileUtils;
@@ -508,4 +510,136 @@ public class ConfigurationImplTest
         verify( propertyResolver );
     }
 
+    @Test
+    public void getResolvedCacheSize()
+    {
+        PropertyResolver propertyResolver = createMock( PropertyResolver.class );
+        expect( propertyResolver.get( "test.pid.resolvedCacheSize" ) ).andReturn( "25" );
+        replay( propertyResolver );
+        ResolverConfiguration config = new MavenConfigurationImpl( propertyResolver, PID );
+        assertEquals( "Resolved cache size", Integer.valueOf( 25 ), config.getResolvedCacheSize() );
+        verify( propertyResolver );
+    }
+
+    @Test
+    public void getConnectTimeout()
+    {
+        PropertyResolver propertyResolver = createMock( PropertyResolver.class );
+        expect( propertyResolver.get( "test.pid.connectTimeout" ) ).andReturn( "5000" );
+        replay( propertyResolver );
+        ResolverConfiguration config = new MavenConfigurationImpl( propertyResolver, PID );
+        assertEquals( "Connect timeout", Integer.valueOf( 5000 ), config.getConnectTimeout() );
+        verify( propertyResolver );
+    }
+
+    @Test
+    public void getMaxConnectionsPerHostWithoutPropertySet()
+    {
+        PropertyResolver propertyResolver = createMock( PropertyResolver.class );
+        expect( propertyResolver.get( "test.pid.maxConnectionsPerHost" ) ).andReturn( null );
+        replay( propertyResolver );
+        ResolverConfiguration config = new MavenConfigurationImpl( propertyResolver, PID );
+        assertEquals( "Max connections per host",
+                      Integer.valueOf( MavenConstants.PROPERTY_MAX_CONNECTIONS_PER_HOST_DEFAULT ),
+                      config.getMaxConnectionsPerHost()
+        );
+        verify( propertyResolver );
+    }
+
+    @Test
+    public void getOffline()
+    {
+        PropertyResolver propertyResolver = createMock( PropertyResolver.class );
+        expect( propertyResolver.get( "test.pid.offline" ) ).andReturn( "true" );
+        replay( propertyResolver );
+        ResolverConfiguration config = new MavenConfigurationImpl( propertyResolver, PID );
+        assertEquals( "Offline", true, config.getOffline() );
+        verify( propertyResolver );
+    }
+
+    @Test
+    public void getDefaultLocalFirst()
+    {
+        PropertyResolver propertyResolver = createMock( PropertyResolver.class );
+        expect( propertyResolver.get( "test.pid.localFirst" ) ).andReturn( null );
+        replay( propertyResolver );
+        ResolverConfiguration config = new MavenConfigurationImpl( propertyResolver, PID );
+        assertEquals( "Local first", false, config.getLocalFirst() );
+        verify( propertyResolver );
+    }
+
+    @Test
+    public void getRangeDownloadParts()
+    {
+        PropertyResolver propertyResolver = createMock( PropertyResolver.class );
+        expect( propertyResolver.get( "test.pid.rangeDownloadParts" ) ).andReturn( "8" );
+        replay( propertyResolver );
+        ResolverConfiguration config = new MavenConfigurationImpl( propertyResolver, PID );
+        assertEquals( "Range download parts", Integer.valueOf( 8 ), config.getRangeDownloadParts() );
+        verify( propertyResolver );
+    }
+
+    @Test
+    public void getDefaultRangeDownloadThreshold()
+    {
+        PropertyResolver propertyResolver = createMock( PropertyResolver.class );
+        expect( propertyResolver.get( "test.pid.rangeDownloadThreshold" ) ).andReturn( null );
+        replay( propertyResolver );
+        ResolverConfiguration config = new MavenConfigurationImpl( propertyResolver, PID );
+        assertEquals( "Range download threshold", Long.valueOf( 0 ), config.getRangeDownloadThreshold() );
+        verify( propertyResolver );
+    }
+
+    @Test
+    public void getDefaultSettingsCheckInterval()
+    {
+        PropertyResolver propertyResolver = createMock( PropertyResolver.class );
+        expect( propertyResolver.get( "test.pid.settingsCheckInterval" ) ).andReturn( null );
+        replay( propertyResolver );
+        ResolverConfiguration config = new MavenConfigurationImpl( propertyResolver, PID );
+        assertEquals( "Settings check interval", Long.valueOf( 10000 ), config.getSettingsCheckInterval() );
+        verify( propertyResolver );
+    }
+
+    @Test
+    public void getInvalidResolvedCacheTTL()
+    {
+        PropertyResolver propertyResolver = createMock( PropertyResolver.class );
+        expect( propertyResolver.get( "test.pid.resolvedCacheTTL" ) ).andReturn( "soon" );
+        replay( propertyResolver );
+        ResolverConfiguration config = new MavenConfigurationImpl( propertyResolver, PID );
+        assertEquals( "Resolved cache TTL",
+                      Long.valueOf( MavenConstants.PROPERTY_RESOLVED_CACHE_TTL_DEFAULT ),
+                      config.getResolvedCacheTTL()
+        );
+        verify( propertyResolver );
+    }
+
+    @Test
+    public void getRoutes()
+    {
+        PropertyResolver propertyResolver = createMock( PropertyResolver.class );
+        expect( propertyResolver.get( "test.pid.routes" ) ).andReturn(
+            "com.ourcorp.*=internal; org.apache.*=central,apache-snapshots;invalid"
+        );
+        replay( propertyResolver );
+        ResolverConfiguration config = new MavenConfigurationImpl( propertyResolver, PID );
+        Map<String, List<String>> routes = config.getRoutes();
+        assertEquals( "Routes size", 2, routes.size() );
+        assertEquals( "Internal route", Arrays.asList( "internal" ), routes.get( "com.ourcorp.*" ) );
+        assertEquals( "Apache route", Arrays.asList( "central", "apache-snapshots" ), routes.get( "org.apache.*" ) );
+        verify( propertyResolver );
+    }
+
+    @Test
+    public void getRoutesWithoutPropertySet()
+    {
+        PropertyResolver propertyResolver = createMock( PropertyResolver.class );
+        expect( propertyResolver.get( "test.pid.routes" ) ).andReturn( null );
+        replay( propertyResolver );
+        ResolverConfiguration config = new MavenConfigurationImpl( propertyResolver, PID );
+        assertTrue( "Routes", config.getRoutes().isEmpty() );
+        verify( propertyResolver );
+    }
+
 }
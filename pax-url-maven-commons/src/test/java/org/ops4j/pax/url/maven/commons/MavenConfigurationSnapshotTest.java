@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.maven.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.net.MalformedURLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.ops4j.util.property.PropertyResolver;
+
+public class MavenConfigurationSnapshotTest
+{
+
+    private static final String PID = "test.pid";
+
+    @Test
+    public void valuesAreReadOnceAtCreation()
+        throws MalformedURLException
+    {
+        CountingPropertyResolver propertyResolver = new CountingPropertyResolver();
+        propertyResolver.m_properties.put( PID + MavenConstants.PROPERTY_REPOSITORIES, "http://repository1@id=r1" );
+        propertyResolver.m_properties.put( PID + MavenConstants.PROPERTY_RESOLVED_CACHE_SIZE, "10" );
+        MavenConfigurationSnapshot config =
+            new MavenConfigurationSnapshot( new MavenConfigurationImpl( propertyResolver, PID ) );
+        int reads = propertyResolver.m_reads;
+
+        assertEquals( "Repositories", 1, config.getRepositories().size() );
+        assertEquals( "Repository id", "r1", config.getRepositories().get( 0 ).getId() );
+        assertEquals( "Resolved cache size", Integer.valueOf( 10 ), config.getResolvedCacheSize() );
+        config.getProxySettings();
+        config.getMirrors();
+        config.getRoutes();
+        config.getLocalRepository();
+        assertEquals( "Properties read after creation", reads, propertyResolver.m_reads );
+    }
+
+    @Test
+    public void proxySettingsOfProtocolsAreCopied()
+    {
+        CountingPropertyResolver propertyResolver = new CountingPropertyResolver();
+        propertyResolver.m_properties.put( PID + MavenConstants.PROPERTY_PROXIES, "http:host=proxy1,port=8080" );
+        MavenConfiguration config =
+            new MavenConfigurationSnapshot( new MavenConfigurationImpl( propertyResolver, PID ) );
+        propertyResolver.m_properties.put( PID + MavenConstants.PROPERTY_PROXIES, "http:host=proxy2,port=8080" );
+
+        assertEquals( "Proxy host", "proxy1", config.getProxySettings( "http" ).get( "http" ).get( "host" ) );
+        assertEquals( "Proxy host", "proxy1", config.getProxySettings().get( "http" ).get( "host" ) );
+    }
+
+    @Test
+    public void malformedRepositoriesAreReportedWhenUsed()
+    {
+        CountingPropertyResolver propertyResolver = new CountingPropertyResolver();
+        propertyResolver.m_properties.put( PID + MavenConstants.PROPERTY_REPOSITORIES, "unknown:repository" );
+        MavenConfiguration config =
+            new MavenConfigurationSnapshot( new MavenConfigurationImpl( propertyResolver, PID ) );
+        try {
+            config.getRepositories();
+            fail( "Expected a MalformedURLException" );
+        } catch( MalformedURLException expected ) {
+            // expected
+        }
+    }
+
+    private static class CountingPropertyResolver
+        implements PropertyResolver
+    {
+
+        private final Map<String, String> m_properties = new HashMap<String, String>();
+        private int m_reads;
+
+        public String get( final String propertyName )
+        {
+            m_reads++;
+            return m_properties.get( propertyName );
+        }
+
+    }
+
+}
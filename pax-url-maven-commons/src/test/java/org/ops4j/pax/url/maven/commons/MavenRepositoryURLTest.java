@@ -56,4 +56,31 @@ public class MavenRepositoryURLTest {
 		
 	}
 
+	@Test
+	public void testUpdatePolicy() throws MalformedURLException {
+		MavenRepositoryURL mavenRepo = new MavenRepositoryURL("http://repo1.maven.org/maven2@id=central@update=interval:30");
+		assertEquals("interval:30", mavenRepo.getUpdatePolicy());
+		assertEquals(new URL("http://repo1.maven.org/maven2/"), mavenRepo.getURL());
+
+		mavenRepo = new MavenRepositoryURL("http://repo1.maven.org/maven2@id=central@update=never");
+		assertEquals("never", mavenRepo.getUpdatePolicy());
+
+		mavenRepo = new MavenRepositoryURL("http://repo1.maven.org/maven2@id=central@update=sometimes");
+		assertNull(mavenRepo.getUpdatePolicy());
+
+		mavenRepo = new MavenRepositoryURL("http://repo1.maven.org/maven2@id=central");
+		assertNull(mavenRepo.getUpdatePolicy());
+	}
+
+	@Test
+	public void testChecksumPolicy() throws MalformedURLException {
+		MavenRepositoryURL mavenRepo = new MavenRepositoryURL("http://nexus/content@id=internal@checksum=ignore@update=never");
+		assertEquals("ignore", mavenRepo.getChecksumPolicy());
+		assertEquals("never", mavenRepo.getUpdatePolicy());
+		assertEquals(new URL("http://nexus/content/"), mavenRepo.getURL());
+
+		mavenRepo = new MavenRepositoryURL("http://nexus/content@id=internal@checksum=maybe");
+		assertNull(mavenRepo.getChecksumPolicy());
+	}
+
 }
@@ -18,7 +18,9 @@
 package org.ops4j.pax.url.maven.commons;
 
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.net.MalformedURLException;
+import java.net.URL;
 import static org.junit.Assert.*;
 import org.junit.Test;
 import org.ops4j.io.FileUtils;
@@ -131,6 +133,14 @@ public class SettingsImplTest
         );
     }
 
+    @Test
+    public void settingsAreParsedOnceWhileUnchanged()
+        throws IOException
+    {
+        URL url = FileUtils.getFileFromClasspath( "settings/settingsWithRepositories.xml" ).toURI().toURL();
+        assertSame( "Settings model", SettingsModel.load( url ), SettingsModel.load( url ) );
+    }
+
     //@Test
     public void getExistingRepositoriesWithFallback()
         throws MalformedURLException, FileNotFoundException
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2012 OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.url.maven.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SettingsWatcherTest
+{
+
+    @Test
+    public void onlyChangedPartsAreReported()
+        throws IOException
+    {
+        File file = File.createTempFile( "settings", ".xml" );
+        file.deleteOnExit();
+        write( file, "http://mirror1", "repository" );
+        final List<SettingsChange> changes = new ArrayList<SettingsChange>();
+        SettingsWatcher watcher = new SettingsWatcher( file.toURI().toURL(), false, new SettingsListener()
+        {
+
+            public void settingsChanged( final SettingsChange change )
+            {
+                changes.add( change );
+            }
+
+        }
+        );
+        assertNull( "Unchanged settings", watcher.check() );
+
+        write( file, "http://mirror2", "repository" );
+        // the modification time may have a resolution of seconds
+        file.setLastModified( file.lastModified() + 2000 );
+        SettingsChange change = watcher.check();
+        assertNotNull( "Changed settings", change );
+        assertTrue( "Mirrors changed", change.isMirrorsChanged() );
+        assertFalse( "Proxies changed", change.isProxiesChanged() );
+        assertFalse( "Repositories changed", change.isRepositoriesChanged() );
+        assertFalse( "Local repository changed", change.isLocalRepositoryChanged() );
+        assertEquals( "Mirror url", "http://mirror2", watcher.getSettings().getMirrorSettings().get( "m" ).get( "url" ) );
+        assertEquals( "Notifications", 1, changes.size() );
+        assertNull( "Unchanged settings", watcher.check() );
+    }
+
+    private static void write( final File file, final String mirror, final String localRepository )
+        throws IOException
+    {
+        Writer writer = new FileWriter( file );
+        try {
+            writer.write( "<settings><localRepository>" + localRepository + "</localRepository>"
+                          + "<mirrors><mirror><id>m</id><url>" + mirror + "</url><mirrorOf>*</mirrorOf></mirror>"
+                          + "</mirrors></settings>"
+            );
+        } finally {
+            writer.close();
+        }
+    }
+
+}